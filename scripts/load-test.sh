@@ -0,0 +1,51 @@
+#!/bin/bash
+# Opens CONCURRENCY assistant streams at the same time and reports how long they
+# take to complete. Run it once with VIRTUAL_THREADS_ENABLED=false and once with
+# VIRTUAL_THREADS_ENABLED=true (Java 21 image) to compare the stream capacity.
+#
+# Usage: TOKEN=<jwt> ./scripts/load-test.sh [concurrency] [model]
+
+BASE_URL=${BASE_URL:-http://localhost:8080/myaichat}
+CONCURRENCY=${1:-50}
+MODEL=${2:-gpt-4o-mini}
+PROMPT=${PROMPT:-"Write a haiku about the sea."}
+
+if [ -z "$TOKEN" ]; then
+  echo "Error: TOKEN environment variable is not set"
+  exit 1
+fi
+
+RESULTS=$(mktemp)
+trap 'rm -f "$RESULTS"' EXIT
+
+run_stream() {
+  local chat_id
+  chat_id=$(curl -s -X POST "$BASE_URL/api/chat/send-user-message" \
+    -H "Authorization: Bearer $TOKEN" \
+    -F "content=$PROMPT" -F "model=$MODEL" -F "maxOutputTokens=1000" |
+    sed -n 's/.*"chatId":"\([^"]*\)".*/\1/p')
+  if [ -z "$chat_id" ]; then
+    echo "error 0"
+    return
+  fi
+  curl -s -N -o /dev/null -w "%{http_code} %{time_total}\n" \
+    -H "Authorization: Bearer $TOKEN" \
+    "$BASE_URL/api/chat/assistant-message/$chat_id"
+}
+export -f run_stream
+export BASE_URL TOKEN MODEL PROMPT
+
+echo "Opening $CONCURRENCY concurrent streams against $BASE_URL ($MODEL)"
+START=$(date +%s.%N)
+seq "$CONCURRENCY" | xargs -P "$CONCURRENCY" -I{} bash -c run_stream >>"$RESULTS"
+END=$(date +%s.%N)
+
+OK=$(awk '$1 == 200' "$RESULTS" | wc -l)
+FAILED=$((CONCURRENCY - OK))
+echo "Completed: $OK, failed: $FAILED, wall time: $(echo "$END - $START" | bc)s"
+awk '$1 == 200 { print $2 }' "$RESULTS" | sort -n | awk '
+  { times[NR] = $1 }
+  END {
+    if (NR == 0) exit
+    printf "Stream time p50: %.2fs p95: %.2fs max: %.2fs\n", times[int(NR * 0.5) + (NR % 2 != 0)], times[int(NR * 0.95) > 0 ? int(NR * 0.95) : 1], times[NR]
+  }'
@@ -11,6 +11,9 @@ import org.springframework.context.annotation.Bean;
 public class MyaichatApplication {
 
 	public static void main(String[] args) {
+		// Reactor reads this flag once, before the context (or a tool call) touches Schedulers.boundedElastic()
+		if (Boolean.parseBoolean(System.getenv("VIRTUAL_THREADS_ENABLED")))
+			System.setProperty("reactor.schedulers.defaultBoundedElasticOnVirtualThreads", "true");
 		SpringApplication.run(MyaichatApplication.class, args);
 	}
 
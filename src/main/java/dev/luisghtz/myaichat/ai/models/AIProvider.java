@@ -0,0 +1,14 @@
+package dev.luisghtz.myaichat.ai.models;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum AIProvider {
+  OPENAI("openai"),
+  GEMINI("gemini");
+
+  // Used in configuration keys and metric tags
+  private final String key;
+}
@@ -9,9 +9,16 @@ import dev.luisghtz.myaichat.chat.entities.Chat;
 import reactor.core.publisher.Flux;
 
 public interface AIProviderService {
+  AIProvider getProvider();
+
   Flux<ChatResponse> getAssistantMessage(List<AppMessage> messages, Chat chat);
 
   ChatResponse sendNewMessage(List<AppMessage> messages, Chat chat);
 
   String generateTitle(String userMessage, String assistantMessage);
+
+  /** One title per request, in the same order, with a single call. */
+  List<String> generateTitles(List<TitleRequest> requests);
+
+  String summarizeHistory(String currentSummary, List<AppMessage> newMessages);
 }
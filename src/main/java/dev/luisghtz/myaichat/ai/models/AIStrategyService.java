@@ -14,4 +14,6 @@ public interface AIStrategyService {
   ChatResponse sendNewMessage(List<AppMessage> messages, Chat chat);
 
   String generateTitle(Chat chat, String userMessage, String assistantMessage);
+
+  String summarizeHistory(Chat chat, String currentSummary, List<AppMessage> newMessages);
 }
@@ -9,4 +9,11 @@ public class AppModel {
   private String key;
   private int maxTokens;
   private double temperature = 0;
+  // Prompt budget (in tokens) used when building the conversation history
+  private int maxContextTokens;
+  // Longest image side (px) worth sending: OpenAI downsizes anything above 2048,
+  // Gemini bills larger images per 768px tile
+  private int maxImageDimension;
+  private AIProvider provider;
+  private ModelCapabilities capabilities;
 }
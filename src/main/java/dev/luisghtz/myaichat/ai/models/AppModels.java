@@ -2,20 +2,42 @@ package dev.luisghtz.myaichat.ai.models;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 public class AppModels {
-  public static final AppModel GPT_4O_MINI = new AppModel("gpt-4o-mini", 5_000, 0.5);
-  public static final AppModel GPT_4O = new AppModel("gpt-4o", 10_000, 1);
-  public static final AppModel GPT_4_1 = new AppModel("gpt-4.1-2025-04-14", 10_000, 0.5);
-  public static final AppModel GPT_4_1_MINI = new AppModel("gpt-4.1-mini-2025-04-14", 10_000, 0.5);
-  public static final AppModel O4_MINI = new AppModel("o4-mini", 10_000, 1);
-  public static final AppModel GEMINI_FLASH_2_0_LITE = new AppModel("gemini-2.0-flash-lite", 5_000, 1);
-  public static final AppModel GEMINI_FLASH_2_0 = new AppModel("gemini-2.0-flash", 8_000, 1);
-  public static final AppModel GEMINI_FLASH_2_5_FLASH = new AppModel("gemini-2.5-flash", 10_000, 1);
-  public static final AppModel GEMINI_FLASH_2_5_PRO = new AppModel("gemini-2.5-pro", 10_000, 1);
+  public static final AppModel GPT_4O_MINI = new AppModel("gpt-4o-mini", 5_000, 0.5, 16_000, 2_048,
+      AIProvider.OPENAI, ModelCapabilities.ALL);
+  public static final AppModel GPT_4O = new AppModel("gpt-4o", 10_000, 1, 16_000, 2_048,
+      AIProvider.OPENAI, ModelCapabilities.ALL);
+  public static final AppModel GPT_4_1 = new AppModel("gpt-4.1-2025-04-14", 10_000, 0.5, 32_000, 2_048,
+      AIProvider.OPENAI, ModelCapabilities.ALL);
+  public static final AppModel GPT_4_1_MINI = new AppModel("gpt-4.1-mini-2025-04-14", 10_000, 0.5, 32_000, 2_048,
+      AIProvider.OPENAI, ModelCapabilities.ALL);
+  public static final AppModel O4_MINI = new AppModel("o4-mini", 10_000, 1, 16_000, 2_048,
+      AIProvider.OPENAI, ModelCapabilities.REASONING);
+  public static final AppModel GEMINI_FLASH_2_0_LITE = new AppModel("gemini-2.0-flash-lite", 5_000, 1, 16_000, 1_536,
+      AIProvider.GEMINI, ModelCapabilities.ALL);
+  public static final AppModel GEMINI_FLASH_2_0 = new AppModel("gemini-2.0-flash", 8_000, 1, 32_000, 1_536,
+      AIProvider.GEMINI, ModelCapabilities.ALL);
+  public static final AppModel GEMINI_FLASH_2_5_FLASH = new AppModel("gemini-2.5-flash", 10_000, 1, 32_000, 1_536,
+      AIProvider.GEMINI, ModelCapabilities.ALL);
+  public static final AppModel GEMINI_FLASH_2_5_PRO = new AppModel("gemini-2.5-pro", 10_000, 1, 32_000, 1_536,
+      AIProvider.GEMINI, ModelCapabilities.ALL);
+
+  private static final List<AppModel> ALL = List.of(
+      GPT_4O_MINI,
+      GPT_4O,
+      GPT_4_1,
+      GPT_4_1_MINI,
+      O4_MINI,
+      GEMINI_FLASH_2_0_LITE,
+      GEMINI_FLASH_2_0,
+      GEMINI_FLASH_2_5_FLASH,
+      GEMINI_FLASH_2_5_PRO);
 
   private static final Map<String, Integer> MODEL_MAX_TOKENS = Map.of(
       GPT_4O_MINI.getKey(), GPT_4O_MINI.getMaxTokens(),
@@ -39,9 +61,53 @@ public class AppModels {
       GEMINI_FLASH_2_5_FLASH.getKey(), GEMINI_FLASH_2_5_FLASH.getTemperature(),
       GEMINI_FLASH_2_5_PRO.getKey(), GEMINI_FLASH_2_5_PRO.getTemperature());
 
+  private static final Map<String, Integer> MODEL_MAX_CONTEXT_TOKENS = Map.of(
+      GPT_4O_MINI.getKey(), GPT_4O_MINI.getMaxContextTokens(),
+      GPT_4O.getKey(), GPT_4O.getMaxContextTokens(),
+      GPT_4_1.getKey(), GPT_4_1.getMaxContextTokens(),
+      GPT_4_1_MINI.getKey(), GPT_4_1_MINI.getMaxContextTokens(),
+      O4_MINI.getKey(), O4_MINI.getMaxContextTokens(),
+      GEMINI_FLASH_2_0_LITE.getKey(), GEMINI_FLASH_2_0_LITE.getMaxContextTokens(),
+      GEMINI_FLASH_2_0.getKey(), GEMINI_FLASH_2_0.getMaxContextTokens(),
+      GEMINI_FLASH_2_5_FLASH.getKey(), GEMINI_FLASH_2_5_FLASH.getMaxContextTokens(),
+      GEMINI_FLASH_2_5_PRO.getKey(), GEMINI_FLASH_2_5_PRO.getMaxContextTokens());
+
+  private static final Map<String, Integer> MODEL_MAX_IMAGE_DIMENSIONS = Map.of(
+      GPT_4O_MINI.getKey(), GPT_4O_MINI.getMaxImageDimension(),
+      GPT_4O.getKey(), GPT_4O.getMaxImageDimension(),
+      GPT_4_1.getKey(), GPT_4_1.getMaxImageDimension(),
+      GPT_4_1_MINI.getKey(), GPT_4_1_MINI.getMaxImageDimension(),
+      O4_MINI.getKey(), O4_MINI.getMaxImageDimension(),
+      GEMINI_FLASH_2_0_LITE.getKey(), GEMINI_FLASH_2_0_LITE.getMaxImageDimension(),
+      GEMINI_FLASH_2_0.getKey(), GEMINI_FLASH_2_0.getMaxImageDimension(),
+      GEMINI_FLASH_2_5_FLASH.getKey(), GEMINI_FLASH_2_5_FLASH.getMaxImageDimension(),
+      GEMINI_FLASH_2_5_PRO.getKey(), GEMINI_FLASH_2_5_PRO.getMaxImageDimension());
+
+  private static final Map<String, ModelCapabilities> MODEL_CAPABILITIES = ALL.stream()
+      .collect(Collectors.toUnmodifiableMap(AppModel::getKey, AppModel::getCapabilities));
+
+  // Closest model of the other provider, used when the provider of a model is down
+  private static final Map<String, String> MODEL_FALLBACKS = Map.of(
+      GPT_4O_MINI.getKey(), GEMINI_FLASH_2_0.getKey(),
+      GPT_4O.getKey(), GEMINI_FLASH_2_5_FLASH.getKey(),
+      GPT_4_1.getKey(), GEMINI_FLASH_2_5_PRO.getKey(),
+      GPT_4_1_MINI.getKey(), GEMINI_FLASH_2_5_FLASH.getKey(),
+      O4_MINI.getKey(), GEMINI_FLASH_2_5_FLASH.getKey(),
+      GEMINI_FLASH_2_0_LITE.getKey(), GPT_4O_MINI.getKey(),
+      GEMINI_FLASH_2_0.getKey(), GPT_4O_MINI.getKey(),
+      GEMINI_FLASH_2_5_FLASH.getKey(), GPT_4_1_MINI.getKey(),
+      GEMINI_FLASH_2_5_PRO.getKey(), GPT_4_1.getKey());
+
+  private static final int DEFAULT_MAX_CONTEXT_TOKENS = 16_000;
+  private static final int DEFAULT_MAX_IMAGE_DIMENSION = 2_048;
+
   private AppModels() {
   }
 
+  public static List<AppModel> all() {
+    return ALL;
+  }
+
   public static final List<String> allStringValues() {
     return List.of(
         GPT_4O_MINI.getKey(),
@@ -67,4 +133,22 @@ public class AppModels {
     return temperature;
   }
 
+  public static int getMaxContextTokens(String model) {
+    return MODEL_MAX_CONTEXT_TOKENS.getOrDefault(model, DEFAULT_MAX_CONTEXT_TOKENS);
+  }
+
+  public static ModelCapabilities getCapabilities(String model) {
+    return MODEL_CAPABILITIES.getOrDefault(model, ModelCapabilities.ALL);
+  }
+
+  public static Optional<String> getFallbackModel(String model) {
+    return Optional.ofNullable(MODEL_FALLBACKS.get(model));
+  }
+
+  public static int getMaxImageDimension(String model) {
+    if (model == null)
+      return DEFAULT_MAX_IMAGE_DIMENSION;
+    return MODEL_MAX_IMAGE_DIMENSIONS.getOrDefault(model, DEFAULT_MAX_IMAGE_DIMENSION);
+  }
+
 }
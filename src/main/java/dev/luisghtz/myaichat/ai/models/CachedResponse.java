@@ -0,0 +1,7 @@
+package dev.luisghtz.myaichat.ai.models;
+
+/**
+ * Complete answer of a provider stream kept to replay it for the same prompt.
+ */
+public record CachedResponse(String content, Integer promptTokens, Integer completionTokens, Integer totalTokens) {
+}
@@ -0,0 +1,123 @@
+package dev.luisghtz.myaichat.ai.models;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker. It opens when the failure rate or the slow
+ * call rate of the last {@code windowSize} calls reaches its threshold,
+ * rejects calls while open and lets a few trial calls through once
+ * {@code openDurationNanos} have passed to decide whether to close again.
+ */
+public class CircuitBreaker {
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private enum Outcome {
+    SUCCESS, SLOW, FAILURE
+  }
+
+  private final int minimumCalls;
+  private final double failureRateThreshold;
+  private final double slowCallRateThreshold;
+  private final long openDurationNanos;
+  private final int halfOpenCalls;
+  private final LongSupplier nanoClock;
+
+  private final Outcome[] window;
+  private int windowIndex;
+  private int recordedCalls;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, double slowCallRateThreshold,
+      long openDurationNanos, int halfOpenCalls, LongSupplier nanoClock) {
+    this.window = new Outcome[windowSize];
+    this.minimumCalls = minimumCalls;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openDurationNanos = openDurationNanos;
+    this.halfOpenCalls = halfOpenCalls;
+    this.nanoClock = nanoClock;
+  }
+
+  /** Whether a call can go through, trial calls are counted while half open. */
+  public synchronized boolean tryAcquire() {
+    if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openDurationNanos) {
+      state = State.HALF_OPEN;
+      halfOpenPermits = halfOpenCalls;
+      halfOpenSuccesses = 0;
+    }
+    if (state == State.CLOSED)
+      return true;
+    if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+      halfOpenPermits--;
+      return true;
+    }
+    return false;
+  }
+
+  public void onSuccess() {
+    record(Outcome.SUCCESS);
+  }
+
+  public void onSlowCall() {
+    record(Outcome.SLOW);
+  }
+
+  public void onFailure() {
+    record(Outcome.FAILURE);
+  }
+
+  /** Gives back a trial call that ended without telling anything about the provider. */
+  public synchronized void onIgnored() {
+    if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses)
+      halfOpenPermits++;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  private synchronized void record(Outcome outcome) {
+    if (state == State.HALF_OPEN) {
+      if (outcome == Outcome.FAILURE)
+        open();
+      else if (++halfOpenSuccesses >= halfOpenCalls)
+        close();
+      return;
+    }
+    if (state == State.OPEN)
+      return;
+
+    window[windowIndex] = outcome;
+    windowIndex = (windowIndex + 1) % window.length;
+    recordedCalls = Math.min(recordedCalls + 1, window.length);
+    if (recordedCalls < minimumCalls)
+      return;
+
+    int failures = 0;
+    int slowCalls = 0;
+    for (int i = 0; i < recordedCalls; i++) {
+      if (window[i] == Outcome.FAILURE)
+        failures++;
+      else if (window[i] == Outcome.SLOW)
+        slowCalls++;
+    }
+    if (failures >= failureRateThreshold * recordedCalls || slowCalls >= slowCallRateThreshold * recordedCalls)
+      open();
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAt = nanoClock.getAsLong();
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    recordedCalls = 0;
+    windowIndex = 0;
+  }
+}
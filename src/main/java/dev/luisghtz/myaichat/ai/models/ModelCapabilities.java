@@ -0,0 +1,10 @@
+package dev.luisghtz.myaichat.ai.models;
+
+/**
+ * Request options a model accepts, the requests leave out the ones it doesn't.
+ */
+public record ModelCapabilities(boolean temperature) {
+  public static final ModelCapabilities ALL = new ModelCapabilities(true);
+  // Reasoning models only accept the default temperature
+  public static final ModelCapabilities REASONING = new ModelCapabilities(false);
+}
@@ -0,0 +1,8 @@
+package dev.luisghtz.myaichat.ai.models;
+
+/**
+ * Where the requests of a model go and what the model supports.
+ */
+public record ModelRoute(String model, AIProvider provider, ModelCapabilities capabilities,
+    AIProviderService service) {
+}
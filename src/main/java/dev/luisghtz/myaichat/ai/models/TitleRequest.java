@@ -0,0 +1,7 @@
+package dev.luisghtz.myaichat.ai.models;
+
+/**
+ * First exchange of a chat, already shortened, sent to name it.
+ */
+public record TitleRequest(String userMessage, String assistantMessage) {
+}
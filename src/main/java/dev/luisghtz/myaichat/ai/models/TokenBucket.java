@@ -0,0 +1,57 @@
+package dev.luisghtz.myaichat.ai.models;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled continuously up to its capacity. Reservations are
+ * taken ahead of time: the bucket can go negative and the caller waits until
+ * the debt is refilled, so bursts are spread instead of rejected.
+ */
+public class TokenBucket {
+  private final long capacity;
+  private final double tokensPerNano;
+  private final LongSupplier nanoClock;
+  private double available;
+  private long lastRefill;
+
+  public TokenBucket(long capacityPerMinute, LongSupplier nanoClock) {
+    this.capacity = capacityPerMinute;
+    this.tokensPerNano = capacityPerMinute / 60_000_000_000d;
+    this.nanoClock = nanoClock;
+    this.available = capacityPerMinute;
+    this.lastRefill = nanoClock.getAsLong();
+  }
+
+  /**
+   * Takes the tokens and returns the nanoseconds the caller must wait before
+   * using them, or -1 without taking anything when the wait would exceed
+   * {@code maxWaitNanos}. Requests above the capacity are clamped to it.
+   */
+  public synchronized long reserve(long tokens, long maxWaitNanos) {
+    refill();
+    var amount = Math.min(tokens, capacity);
+    var missing = amount - available;
+    var waitNanos = missing > 0 ? (long) Math.ceil(missing / tokensPerNano) : 0;
+    if (waitNanos > maxWaitNanos)
+      return -1;
+    available -= amount;
+    return waitNanos;
+  }
+
+  /** Gives back unused tokens (positive) or charges extra usage (negative). */
+  public synchronized void adjust(long tokens) {
+    refill();
+    available = Math.min(capacity, available + tokens);
+  }
+
+  public synchronized double getAvailable() {
+    refill();
+    return available;
+  }
+
+  private void refill() {
+    var now = nanoClock.getAsLong();
+    available = Math.min(capacity, available + (now - lastRefill) * tokensPerNano);
+    lastRefill = now;
+  }
+}
@@ -1,13 +1,23 @@
 package dev.luisghtz.myaichat.ai.services;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
 import dev.luisghtz.myaichat.ai.models.AIStrategyService;
+import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.ModelRoute;
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.ai.utils.TokenEstimatorUtil;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Flux;
@@ -16,43 +26,105 @@ import reactor.core.publisher.Flux;
 @RequiredArgsConstructor
 @Log4j2
 public class AIService implements AIStrategyService {
-  private final OpenAIService openAIService;
-  private final VertexGeminiService vertexGeminiService;
+  private final ModelRoutingRegistry modelRoutingRegistry;
+  private final ProviderRateLimiter providerRateLimiter;
+  private final ProviderCircuitBreakers providerCircuitBreakers;
+  private final StreamHedger streamHedger;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.ai.fallback.enabled:false}")
+  private boolean fallbackEnabled;
+  @Value("${app.ai.hedging.sibling-provider:false}")
+  private boolean hedgeWithSiblingProvider;
 
   @Override
   public Flux<ChatResponse> getAssistantMessage(List<AppMessage> messages, Chat chat) {
-    if (chat.getModel().startsWith("gpt-") || chat.getModel().matches("^o\\d.*")) {
-      log.info("Sending message to OpenAI");
-      return openAIService.getAssistantMessage(messages, chat);
-    } else if (chat.getModel().startsWith("gemini-")) {
-      log.info("Sending message to Vertex Gemini");
-      return vertexGeminiService.getAssistantMessage(messages, chat);
-    } else {
-      throw new UnsupportedOperationException("Unsupported model for messages: " + chat.getModel());
-    }
+    var route = modelRoutingRegistry.route(chat.getModel());
+    return Flux.defer(() -> {
+      var emitted = new AtomicBoolean();
+      return streamHedger.hedge(chat.getModel(),
+          () -> stream(route, messages, chat),
+          () -> hedgeStream(route, messages, chat))
+          .doOnNext(chatResponse -> emitted.set(true))
+          // Nothing was sent to the client yet, so another model can answer instead
+          .onErrorResume(error -> !emitted.get() && canFallback(error),
+              error -> fallback(route, messages, chat, error));
+    });
+  }
+
+  private Flux<ChatResponse> stream(ModelRoute route, List<AppMessage> messages, Chat chat) {
+    log.info("Sending message to {}", route.provider());
+    // The breaker is inside so its clock starts after the bucket wait and each 429 retry is judged alone
+    return providerRateLimiter.limit(route.provider().getKey(), chat.getModel(),
+        estimateRequestTokens(messages, chat),
+        () -> providerCircuitBreakers.protect(route.provider(),
+            () -> route.service().getAssistantMessage(messages, chat)));
+  }
+
+  // The same model again, or its equivalent of the other provider
+  private Flux<ChatResponse> hedgeStream(ModelRoute route, List<AppMessage> messages, Chat chat) {
+    var siblingModel = hedgeWithSiblingProvider ? AppModels.getFallbackModel(chat.getModel()) : Optional.<String>empty();
+    if (siblingModel.isEmpty())
+      return stream(route, messages, chat);
+    return stream(modelRoutingRegistry.route(siblingModel.get()), messages, withModel(chat, siblingModel.get()));
+  }
+
+  private Flux<ChatResponse> fallback(ModelRoute route, List<AppMessage> messages, Chat chat, Throwable error) {
+    var fallbackModel = AppModels.getFallbackModel(chat.getModel());
+    if (fallbackModel.isEmpty())
+      return Flux.error(error);
+    log.warn("{} failed before the first chunk ({}), answering chat {} with {}", chat.getModel(),
+        error.getMessage(), chat.getId(), fallbackModel.get());
+    meterRegistry.counter("myaichat.ai.fallback", "from", chat.getModel(), "to", fallbackModel.get()).increment();
+    return stream(modelRoutingRegistry.route(fallbackModel.get()), messages, withModel(chat, fallbackModel.get()));
+  }
+
+  // A copy, the chat keeps its model
+  private Chat withModel(Chat chat, String model) {
+    var maxOutputTokens = chat.getMaxOutputTokens() != null
+        ? (short) Math.min(chat.getMaxOutputTokens(), AppModels.getMaxTokens(model))
+        : null;
+    return chat.toBuilder().model(model).maxOutputTokens(maxOutputTokens).build();
+  }
+
+  private boolean canFallback(Throwable error) {
+    if (!fallbackEnabled)
+      return false;
+    // Requests rejected for their content would fail with any model
+    return !(error instanceof ResponseStatusException statusError
+        && statusError.getStatusCode().is4xxClientError()
+        && statusError.getStatusCode().value() != HttpStatus.TOO_MANY_REQUESTS.value());
   }
 
   @Override
   public ChatResponse sendNewMessage(List<AppMessage> messages, Chat chat) {
-    if (chat.getModel().startsWith("gpt-") || chat.getModel().matches("^o\\d.*")) {
-      log.info("Sending new message to OpenAI");
-      return openAIService.sendNewMessage(messages, chat);
-    } else if (chat.getModel().startsWith("gemini-")) {
-      log.info("Sending new message to Vertex Gemini");
-      return vertexGeminiService.sendNewMessage(messages, chat);
-    } else {
-      throw new UnsupportedOperationException("Unsupported model for sendNewMessage: " + chat.getModel());
-    }
+    var route = modelRoutingRegistry.route(chat.getModel());
+    log.info("Sending new message to {}", route.provider());
+    return route.service().sendNewMessage(messages, chat);
+  }
+
+  /** Provider name of the model, used to apply limits per provider. */
+  public String getProvider(String model) {
+    return modelRoutingRegistry.route(model).provider().getKey();
   }
 
   public String generateTitle(Chat chat, String userMessage, String assistantMessage) {
-    if (chat.getModel().startsWith("gpt-") || chat.getModel().matches("^o\\d.*")) {
-      return openAIService.generateTitle(userMessage, assistantMessage);
-    } else if (chat.getModel().startsWith("gemini-")) {
-      return vertexGeminiService.generateTitle(userMessage, assistantMessage);
-    } else {
-      throw new UnsupportedOperationException("Unsupported model for title generation: " + chat.getModel());
-    }
+    return modelRoutingRegistry.route(chat.getModel()).service().generateTitle(userMessage, assistantMessage);
+  }
+
+  /** Titles of several chats with one call to the title model of the provider of {@code model}. */
+  public List<String> generateTitles(String model, List<TitleRequest> requests) {
+    return modelRoutingRegistry.route(model).service().generateTitles(requests);
   }
 
-}
\ No newline at end of file
+  @Override
+  public String summarizeHistory(Chat chat, String currentSummary, List<AppMessage> newMessages) {
+    return modelRoutingRegistry.route(chat.getModel()).service().summarizeHistory(currentSummary, newMessages);
+  }
+
+  // Tokens reserved against the provider quota: the prompt plus the longest answer allowed
+  private long estimateRequestTokens(List<AppMessage> messages, Chat chat) {
+    long maxOutputTokens = chat.getMaxOutputTokens() != null ? chat.getMaxOutputTokens() : 0;
+    return TokenEstimatorUtil.estimateTokens(messages) + maxOutputTokens;
+  }
+}
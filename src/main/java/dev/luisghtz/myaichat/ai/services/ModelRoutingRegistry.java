@@ -0,0 +1,70 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import dev.luisghtz.myaichat.ai.models.AIProvider;
+import dev.luisghtz.myaichat.ai.models.AIProviderService;
+import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.ModelCapabilities;
+import dev.luisghtz.myaichat.ai.models.ModelRoute;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Routes every model of {@link AppModels} to the provider service that
+ * handles it. The table is built once at startup, so a request only needs a
+ * map lookup. Adding a provider means adding its {@link AIProvider}, its
+ * models and an {@link AIProviderService} bean.
+ */
+@Component
+@Log4j2
+public class ModelRoutingRegistry {
+  // Chats created with models that are no longer offered still need to be answered
+  private static final Pattern OPENAI_LEGACY_MODEL = Pattern.compile("^(gpt-|o\\d).*");
+  private static final Pattern GEMINI_LEGACY_MODEL = Pattern.compile("^gemini-.*");
+
+  private final Map<AIProvider, AIProviderService> services;
+  private final Map<String, ModelRoute> routes;
+  private final Map<String, ModelRoute> legacyRoutes = new ConcurrentHashMap<>();
+
+  public ModelRoutingRegistry(List<AIProviderService> providerServices) {
+    Map<AIProvider, AIProviderService> servicesByProvider = new EnumMap<>(AIProvider.class);
+    providerServices.forEach(service -> servicesByProvider.put(service.getProvider(), service));
+    this.services = servicesByProvider;
+
+    Map<String, ModelRoute> routesByModel = new HashMap<>();
+    for (var appModel : AppModels.all()) {
+      var service = servicesByProvider.get(appModel.getProvider());
+      if (service == null)
+        throw new IllegalStateException("No provider service for " + appModel.getProvider() + " models");
+      routesByModel.put(appModel.getKey(), new ModelRoute(appModel.getKey(), appModel.getProvider(),
+          appModel.getCapabilities(), service));
+    }
+    this.routes = Map.copyOf(routesByModel);
+    log.info("Model routing table built with {} models", routes.size());
+  }
+
+  public ModelRoute route(String model) {
+    var route = routes.get(model);
+    if (route != null)
+      return route;
+    return legacyRoutes.computeIfAbsent(model, this::legacyRoute);
+  }
+
+  private ModelRoute legacyRoute(String model) {
+    AIProvider provider;
+    if (OPENAI_LEGACY_MODEL.matcher(model).matches())
+      provider = AIProvider.OPENAI;
+    else if (GEMINI_LEGACY_MODEL.matcher(model).matches())
+      provider = AIProvider.GEMINI;
+    else
+      throw new UnsupportedOperationException("Unsupported model: " + model);
+    return new ModelRoute(model, provider, ModelCapabilities.ALL, services.get(provider));
+  }
+}
@@ -18,8 +18,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 
+import dev.luisghtz.myaichat.ai.models.AIProvider;
 import dev.luisghtz.myaichat.ai.models.AIProviderService;
 import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
 import dev.luisghtz.myaichat.ai.utils.ChatClientToolsUtil;
 import dev.luisghtz.myaichat.ai.utils.MessagesUtil;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
@@ -37,8 +39,20 @@ public class OpenAIService implements AIProviderService {
   private final String TITLE_PROMPT = "Generate a concise title of no more than 5 words that summarizes this conversation, "
       + "avoid to use markdown styles, title should be only text. "
       + "The title should be in the same language as the conversation.";
+  private final String TITLES_PROMPT = "Generate a concise title of no more than 5 words for each of the numbered "
+      + "conversations, avoid to use markdown styles, titles should be only text. Each title should be in the same "
+      + "language as its conversation. Answer only with one line per conversation in the format '<number>. <title>'.";
+  private final String SUMMARY_PROMPT = "You keep a running summary of a conversation between a user and an assistant. "
+      + "Update the current summary with the new messages, keep facts, decisions, names and open questions, "
+      + "drop greetings and small talk. Answer only with the updated summary in no more than 250 words, "
+      + "in the same language as the conversation.";
   private final ChatClientToolsUtil chatClientUtil;
 
+  @Override
+  public AIProvider getProvider() {
+    return AIProvider.OPENAI;
+  }
+
   public Flux<ChatResponse> getAssistantMessage(List<AppMessage> messages, Chat chat) {
     List<Message> modelMessages = new ArrayList<>();
     MessagesUtil.addSystemMessage(chat, modelMessages);
@@ -51,7 +65,10 @@ public class OpenAIService implements AIProviderService {
       return generateUserMessage(message);
     }).collect(Collectors.toList());
     modelMessages.addAll(convertedMessages);
-    var temperature = AppModels.getTemperature(chat.getModel());
+    // Reasoning models reject any temperature other than the default
+    Double temperature = AppModels.getCapabilities(chat.getModel()).temperature()
+        ? AppModels.getTemperature(chat.getModel())
+        : null;
 
     OpenAiChatOptions options = OpenAiChatOptions.builder()
         .model(chat.getModel())
@@ -91,6 +108,44 @@ public class OpenAIService implements AIProviderService {
     return titleResponse.getResult().getOutput().getText();
   }
 
+  @Override
+  public List<String> generateTitles(List<TitleRequest> requests) {
+    if (requests.size() == 1)
+      return List.of(generateTitle(requests.get(0).userMessage(), requests.get(0).assistantMessage()));
+    var MAX_COMPLETION_TOKENS_PER_TITLE = 20;
+    List<Message> titleMessages = new ArrayList<>();
+    titleMessages.add(new SystemMessage(TITLES_PROMPT));
+    titleMessages.add(new UserMessage(MessagesUtil.buildTitlesRequest(requests)));
+
+    OpenAiChatOptions titleOptions = OpenAiChatOptions.builder()
+        .model(OpenAiApi.ChatModel.GPT_4_O_MINI)
+        .maxCompletionTokens(MAX_COMPLETION_TOKENS_PER_TITLE * requests.size())
+        .build();
+
+    ChatResponse titlesResponse = openAIChatClient.prompt().messages(titleMessages)
+        .options(titleOptions).call().chatResponse();
+
+    return MessagesUtil.parseTitles(titlesResponse.getResult().getOutput().getText(), requests.size());
+  }
+
+  @Override
+  public String summarizeHistory(String currentSummary, List<AppMessage> newMessages) {
+    var MAX_COMPLETION_TOKENS = 400;
+    List<Message> summaryMessages = new ArrayList<>();
+    summaryMessages.add(new SystemMessage(SUMMARY_PROMPT));
+    summaryMessages.add(new UserMessage(MessagesUtil.buildHistorySummaryRequest(currentSummary, newMessages)));
+
+    OpenAiChatOptions summaryOptions = OpenAiChatOptions.builder()
+        .model(OpenAiApi.ChatModel.GPT_4_O_MINI)
+        .maxCompletionTokens(MAX_COMPLETION_TOKENS)
+        .build();
+
+    ChatResponse summaryResponse = openAIChatClient.prompt().messages(summaryMessages)
+        .options(summaryOptions).call().chatResponse();
+
+    return summaryResponse.getResult().getOutput().getText();
+  }
+
   private Message generateUserMessage(AppMessage message) {
     if (message.getFileUrl() != null) {
       try {
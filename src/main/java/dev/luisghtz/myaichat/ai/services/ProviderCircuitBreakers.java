@@ -0,0 +1,141 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.luisghtz.myaichat.ai.models.AIProvider;
+import dev.luisghtz.myaichat.ai.models.CircuitBreaker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * One circuit breaker per provider around the assistant streams. A call
+ * fails when the provider errors, other than a 4xx such as its 429, or
+ * doesn't send the first chunk in time, and it is slow when the first chunk
+ * takes longer than {@code slow-call-ms}. While a breaker is open the calls
+ * are rejected right away with 503 instead of waiting for the provider to
+ * time out. The states are reported in the actuator health endpoint.
+ */
+@Component
+@Log4j2
+public class ProviderCircuitBreakers implements HealthIndicator, MeterBinder {
+  private static final Pattern CLIENT_ERROR_MESSAGE = Pattern.compile("4\\d\\d - ");
+
+  private final long slowCallMs;
+  private final long firstChunkTimeoutMs;
+  private final Map<AIProvider, CircuitBreaker> breakers = new EnumMap<>(AIProvider.class);
+
+  public ProviderCircuitBreakers(@Value("${app.ai.circuit-breaker.window-size:20}") int windowSize,
+      @Value("${app.ai.circuit-breaker.minimum-calls:10}") int minimumCalls,
+      @Value("${app.ai.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+      @Value("${app.ai.circuit-breaker.slow-call-rate-threshold:0.8}") double slowCallRateThreshold,
+      @Value("${app.ai.circuit-breaker.slow-call-ms:10000}") long slowCallMs,
+      @Value("${app.ai.circuit-breaker.first-chunk-timeout-ms:30000}") long firstChunkTimeoutMs,
+      @Value("${app.ai.circuit-breaker.open-seconds:30}") long openSeconds,
+      @Value("${app.ai.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+    this.slowCallMs = slowCallMs;
+    this.firstChunkTimeoutMs = firstChunkTimeoutMs;
+    for (var provider : AIProvider.values())
+      breakers.put(provider, new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+          slowCallRateThreshold, TimeUnit.SECONDS.toNanos(openSeconds), halfOpenCalls, System::nanoTime));
+  }
+
+  public <T> Flux<T> protect(AIProvider provider, Supplier<Flux<T>> call) {
+    return Flux.defer(() -> {
+      var breaker = breakers.get(provider);
+      if (!breaker.tryAcquire())
+        return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+            "The " + provider.getKey() + " models are not available right now, try again later"));
+
+      var startedAt = System.nanoTime();
+      var recorded = new AtomicBoolean();
+      return Flux.defer(call)
+          .timeout(Mono.delay(Duration.ofMillis(firstChunkTimeoutMs)), chunk -> Mono.never())
+          .doOnNext(chunk -> {
+            if (!recorded.compareAndSet(false, true))
+              return;
+            if (System.nanoTime() - startedAt > TimeUnit.MILLISECONDS.toNanos(slowCallMs))
+              breaker.onSlowCall();
+            else
+              breaker.onSuccess();
+          })
+          .doOnError(error -> {
+            if (isProviderFailure(error) && recorded.compareAndSet(false, true))
+              breaker.onFailure();
+          })
+          .doOnComplete(() -> {
+            if (recorded.compareAndSet(false, true))
+              breaker.onSuccess();
+          })
+          .doFinally(signal -> {
+            // Cancelled or rejected by our own limits, the provider wasn't judged
+            if (recorded.compareAndSet(false, true))
+              breaker.onIgnored();
+            if (breaker.getState() == CircuitBreaker.State.OPEN)
+              log.warn("Circuit breaker for {} is open", provider.getKey());
+          });
+    });
+  }
+
+  public CircuitBreaker.State getState(AIProvider provider) {
+    return breakers.get(provider).getState();
+  }
+
+  @Override
+  public Health health() {
+    var health = Health.up();
+    breakers.forEach((provider, breaker) -> health.withDetail(provider.getKey(), breaker.getState()));
+    return health.build();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (var provider : AIProvider.values())
+      Gauge.builder("myaichat.ai.circuit.state", this, breakers -> breakers.getState(provider).ordinal())
+          .description("Circuit breaker state of the provider: 0 closed, 1 open, 2 half open")
+          .tag("provider", provider.getKey())
+          .register(registry);
+  }
+
+  // Rejections of our own limits and the client errors of the provider, its quota included, say nothing about
+  // its health. A quota burst would otherwise open the breaker and move every request to the other provider
+  private boolean isProviderFailure(Throwable error) {
+    if (ProviderRateLimiter.isRateLimited(error))
+      return false;
+    for (var cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ResponseStatusException statusError && statusError.getStatusCode().is4xxClientError())
+        return false;
+      if (cause instanceof WebClientResponseException webClientError
+          && webClientError.getStatusCode().is4xxClientError())
+        return false;
+      if (cause instanceof RestClientResponseException restClientError
+          && restClientError.getStatusCode().is4xxClientError())
+        return false;
+      // Spring AI reports the provider errors as "<status> - <body>"
+      var message = cause.getMessage();
+      if (message != null && CLIENT_ERROR_MESSAGE.matcher(message).lookingAt())
+        return false;
+      if (cause.getCause() == cause)
+        break;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,158 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.luisghtz.myaichat.ai.models.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Keeps the provider requests under their per minute quotas with a token
+ * bucket for the tokens and another for the requests of every model. The
+ * estimated tokens are reserved before every attempt, the difference with
+ * the real usage is settled when the stream ends, and a 429 from the provider
+ * is retried with jittered backoff as long as no chunk was emitted. The
+ * retries take their own reservation, so they slow down with the quota.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ProviderRateLimiter {
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.ai.rate-limit.enabled:true}")
+  private boolean enabled;
+  @Value("${app.ai.rate-limit.openai.tokens-per-minute:200000}")
+  private long openAiTokensPerMinute;
+  @Value("${app.ai.rate-limit.openai.requests-per-minute:500}")
+  private long openAiRequestsPerMinute;
+  @Value("${app.ai.rate-limit.gemini.tokens-per-minute:1000000}")
+  private long geminiTokensPerMinute;
+  @Value("${app.ai.rate-limit.gemini.requests-per-minute:1000}")
+  private long geminiRequestsPerMinute;
+  @Value("${app.ai.rate-limit.max-wait-ms:10000}")
+  private long maxWaitMs;
+  @Value("${app.ai.rate-limit.retry.max-attempts:3}")
+  private int maxRetries;
+  @Value("${app.ai.rate-limit.retry.base-backoff-ms:500}")
+  private long baseBackoffMs;
+  @Value("${app.ai.rate-limit.retry.max-backoff-ms:8000}")
+  private long maxBackoffMs;
+
+  private final Map<String, ModelBuckets> buckets = new ConcurrentHashMap<>();
+
+  public Flux<ChatResponse> limit(String provider, String model, long estimatedTokens,
+      Supplier<Flux<ChatResponse>> request) {
+    if (!enabled)
+      return request.get();
+    return Flux.defer(() -> {
+      var modelBuckets = getBuckets(provider, model);
+      var emitted = new AtomicBoolean();
+      var usedTokens = new AtomicLong(-1);
+
+      // Every attempt, the 429 retries included, takes its own reservation and waits for it
+      Flux<ChatResponse> attempt = Flux.defer(() -> {
+        var waitNanos = reserve(provider, modelBuckets, estimatedTokens);
+        var response = Flux.defer(request)
+            .doOnNext(chatResponse -> {
+              emitted.set(true);
+              var total = totalTokens(chatResponse);
+              if (total > 0)
+                usedTokens.set(total);
+            });
+        return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)).thenMany(response) : response;
+      });
+
+      return attempt
+          .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(baseBackoffMs))
+              .maxBackoff(Duration.ofMillis(maxBackoffMs))
+              .jitter(0.5)
+              // Our own rejection is final, the quota won't free up within the wait
+              .filter(error -> !emitted.get() && !(error instanceof ResponseStatusException) && isRateLimited(error))
+              .doBeforeRetry(signal -> {
+                meterRegistry.counter("myaichat.ai.ratelimit.retries", "provider", provider).increment();
+                log.warn("Provider {} rate limited the request for {}, retry {}", provider, model,
+                    signal.totalRetries() + 1);
+              })
+              .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+          .doFinally(signal -> {
+            // Without usage (failed or cancelled) the reservations are kept, the provider may have counted them
+            if (usedTokens.get() >= 0)
+              modelBuckets.tokens().adjust(estimatedTokens - usedTokens.get());
+          });
+    });
+  }
+
+  private long reserve(String provider, ModelBuckets modelBuckets, long estimatedTokens) {
+    var maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    var tokensWait = modelBuckets.tokens().reserve(estimatedTokens, maxWaitNanos);
+    var requestWait = tokensWait >= 0 ? modelBuckets.requests().reserve(1, maxWaitNanos) : -1;
+    if (requestWait < 0) {
+      if (tokensWait >= 0)
+        modelBuckets.tokens().adjust(estimatedTokens);
+      meterRegistry.counter("myaichat.ai.ratelimit.rejected", "provider", provider).increment();
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+          "The model is receiving too many requests, try again later");
+    }
+    var waitNanos = Math.max(tokensWait, requestWait);
+    meterRegistry.timer("myaichat.ai.ratelimit.wait", "provider", provider)
+        .record(waitNanos, TimeUnit.NANOSECONDS);
+    return waitNanos;
+  }
+
+  private ModelBuckets getBuckets(String provider, String model) {
+    return buckets.computeIfAbsent(model, key -> "gemini".equals(provider)
+        ? new ModelBuckets(new TokenBucket(geminiTokensPerMinute, System::nanoTime),
+            new TokenBucket(geminiRequestsPerMinute, System::nanoTime))
+        : new ModelBuckets(new TokenBucket(openAiTokensPerMinute, System::nanoTime),
+            new TokenBucket(openAiRequestsPerMinute, System::nanoTime)));
+  }
+
+  private long totalTokens(ChatResponse chatResponse) {
+    if (chatResponse.getMetadata() == null || chatResponse.getMetadata().getUsage() == null)
+      return -1;
+    var total = chatResponse.getMetadata().getUsage().getTotalTokens();
+    return total != null ? total : -1;
+  }
+
+  static boolean isRateLimited(Throwable error) {
+    for (var cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof WebClientResponseException webClientError
+          && webClientError.getStatusCode().value() == 429)
+        return true;
+      if (cause instanceof RestClientResponseException restClientError
+          && restClientError.getStatusCode().value() == 429)
+        return true;
+      if (cause instanceof ResponseStatusException statusError && statusError.getStatusCode().value() == 429)
+        return true;
+      // Spring AI reports the provider errors as "<status> - <body>", Vertex AI as RESOURCE_EXHAUSTED
+      var message = cause.getMessage();
+      if (message != null && (message.startsWith("429") || message.contains("RESOURCE_EXHAUSTED")))
+        return true;
+      if (cause.getCause() == cause)
+        break;
+    }
+    return false;
+  }
+
+  private record ModelBuckets(TokenBucket tokens, TokenBucket requests) {
+  }
+}
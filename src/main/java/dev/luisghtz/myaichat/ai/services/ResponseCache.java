@@ -0,0 +1,190 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import dev.luisghtz.myaichat.ai.models.CachedResponse;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+
+/**
+ * Answers of the provider streams cached by prompt. The key is a hash of the
+ * model, the output limit, the custom prompt, the history summary and the
+ * conversation, with the whitespace collapsed, so the same first question
+ * asked with the same prompt and model is answered from memory. The case is
+ * kept, "US" and "us" are not the same question. The cache is bounded by the
+ * total characters of the answers. A hit is replayed as a chunked stream with the usage of the
+ * original answer in the last chunk, it was billed once, so callers must not
+ * count it again. Web search chats are never cached, their answers depend on
+ * the current results.
+ */
+@Component
+@Log4j2
+public class ResponseCache implements MeterBinder {
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final char SEPARATOR = '\u0000';
+
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final int maxAnswerChars;
+  private final int chunkChars;
+  private final Cache<String, CachedResponse> responses;
+
+  public ResponseCache(MeterRegistry meterRegistry,
+      @Value("${app.ai.response-cache.enabled:false}") boolean enabled,
+      @Value("${app.ai.response-cache.max-total-chars:2000000}") long maxTotalChars,
+      @Value("${app.ai.response-cache.ttl-minutes:60}") long ttlMinutes,
+      @Value("${app.ai.response-cache.max-answer-chars:20000}") int maxAnswerChars,
+      @Value("${app.ai.response-cache.chunk-chars:64}") int chunkChars) {
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.maxAnswerChars = maxAnswerChars;
+    this.chunkChars = chunkChars;
+    this.responses = Caffeine.newBuilder()
+        .maximumWeight(maxTotalChars)
+        .weigher((String key, CachedResponse response) -> response.content().length())
+        .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+        .recordStats()
+        .build();
+  }
+
+  /** Whether answers of the chat can be cached, it can't be answered from the cache otherwise. */
+  public boolean isCacheable(Chat chat) {
+    return enabled && !Boolean.TRUE.equals(chat.getIsWebSearchMode());
+  }
+
+  /**
+   * The cached answer of the prompt replayed as a stream, or empty when it
+   * isn't cached. Looked up before a provider stream is requested, a hit
+   * doesn't need one.
+   */
+  public Optional<Flux<ChatResponse>> lookup(List<AppMessage> messages, Chat chat) {
+    if (!isCacheable(chat))
+      return Optional.empty();
+    var cachedResponse = responses.getIfPresent(key(messages, chat));
+    if (cachedResponse == null)
+      return Optional.empty();
+    log.info("Answering chat {} from the response cache", chat.getId());
+    if (cachedResponse.totalTokens() != null)
+      meterRegistry.counter("myaichat.ai.response-cache.tokens.saved", "model", String.valueOf(chat.getModel()))
+          .increment(cachedResponse.totalTokens());
+    return Optional.of(replay(cachedResponse));
+  }
+
+  /** Streams the provider answer and caches it once it completes with its usage. */
+  public Flux<ChatResponse> record(List<AppMessage> messages, Chat chat, Flux<ChatResponse> response) {
+    if (!isCacheable(chat))
+      return response;
+    return record(key(messages, chat), response);
+  }
+
+  String key(List<AppMessage> messages, Chat chat) {
+    var key = new StringBuilder()
+        .append(chat.getModel()).append(SEPARATOR)
+        .append(chat.getMaxOutputTokens()).append(SEPARATOR)
+        .append(normalize(chat.getHistorySummary())).append(SEPARATOR);
+    var customPrompt = chat.getCustomPrompt();
+    if (customPrompt != null) {
+      key.append(normalize(customPrompt.getContent())).append(SEPARATOR);
+      if (customPrompt.getMessages() != null)
+        customPrompt.getMessages().forEach(message -> key.append(message.getRole()).append(':')
+            .append(normalize(message.getContent())).append(SEPARATOR));
+    }
+    key.append(SEPARATOR);
+    messages.forEach(message -> key.append(message.getRole()).append(':')
+        .append(message.getFileUrl()).append(':')
+        .append(normalize(message.getContent())).append(SEPARATOR));
+    return sha256(key.toString());
+  }
+
+  private Flux<ChatResponse> record(String key, Flux<ChatResponse> response) {
+    var content = new StringBuilder();
+    var usage = new AtomicReference<Usage>();
+    return response
+        .doOnNext(chatResponse -> {
+          if (chatResponse.getResult() != null && chatResponse.getResult().getOutput().getText() != null
+              && content.length() <= maxAnswerChars)
+            content.append(chatResponse.getResult().getOutput().getText());
+          var chunkUsage = chatResponse.getMetadata().getUsage();
+          if (chunkUsage != null && chunkUsage.getTotalTokens() != null && chunkUsage.getTotalTokens() > 0)
+            usage.set(chunkUsage);
+        })
+        .doOnComplete(() -> {
+          // Answers cut by an error never complete, the long ones aren't worth the memory
+          var completeUsage = usage.get();
+          if (completeUsage == null || content.isEmpty() || content.length() > maxAnswerChars)
+            return;
+          responses.put(key, new CachedResponse(content.toString(), completeUsage.getPromptTokens(),
+              completeUsage.getCompletionTokens(), completeUsage.getTotalTokens()));
+        });
+  }
+
+  private Flux<ChatResponse> replay(CachedResponse cachedResponse) {
+    var usage = new DefaultUsage(cachedResponse.promptTokens(), cachedResponse.completionTokens(),
+        cachedResponse.totalTokens());
+    var lastChunk = new ChatResponse(List.of(new Generation(new AssistantMessage(""))),
+        ChatResponseMetadata.builder().usage(usage).build());
+    return Flux.fromIterable(split(cachedResponse.content()))
+        .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))))
+        .concatWith(Flux.just(lastChunk));
+  }
+
+  private List<String> split(String content) {
+    List<String> chunks = new ArrayList<>(content.length() / chunkChars + 1);
+    int start = 0;
+    while (start < content.length()) {
+      int end = Math.min(start + chunkChars, content.length());
+      // Don't split a surrogate pair between two chunks
+      if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1)))
+        end++;
+      chunks.add(content.substring(start, end));
+      start = end;
+    }
+    return chunks;
+  }
+
+  private String normalize(String text) {
+    if (text == null)
+      return "";
+    return WHITESPACE.matcher(text.strip()).replaceAll(" ");
+  }
+
+  private String sha256(String text) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, responses, "ai.responses");
+  }
+}
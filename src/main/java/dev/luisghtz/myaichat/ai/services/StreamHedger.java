@@ -0,0 +1,113 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Hedged assistant streams: when the first chunk of a request takes longer
+ * than {@code delay-ms} (around the provider p95), a second request is sent
+ * and the client gets whichever answers first, the other one is cancelled.
+ * Each request adds {@code max-ratio} to the budget and every hedge takes one
+ * from it, so the extra requests stay under that share of the traffic.
+ */
+@Component
+@Log4j2
+public class StreamHedger {
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final long delayMs;
+  private final Set<String> hedgedModels;
+  private final double maxRatio;
+  private final double maxBurst;
+
+  private double budget;
+
+  public StreamHedger(MeterRegistry meterRegistry,
+      @Value("${app.ai.hedging.enabled:false}") boolean enabled,
+      @Value("${app.ai.hedging.delay-ms:3000}") long delayMs,
+      @Value("${app.ai.hedging.models:}") String models,
+      @Value("${app.ai.hedging.max-ratio:0.1}") double maxRatio,
+      @Value("${app.ai.hedging.max-burst:10}") double maxBurst) {
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.delayMs = delayMs;
+    this.hedgedModels = Arrays.stream(models.split(","))
+        .map(String::trim)
+        .filter(model -> !model.isEmpty())
+        .collect(Collectors.toUnmodifiableSet());
+    this.maxRatio = maxRatio;
+    this.maxBurst = maxBurst;
+  }
+
+  public boolean isEnabled(String model) {
+    return enabled && (hedgedModels.isEmpty() || hedgedModels.contains(model));
+  }
+
+  /**
+   * Streams {@code primary} and, when it hasn't sent anything after the delay
+   * and the budget allows it, races it against {@code hedge}. The errors of
+   * the hedge are dropped so the primary request keeps deciding the outcome.
+   */
+  public <T> Flux<T> hedge(String model, Supplier<Flux<T>> primary, Supplier<Flux<T>> hedge) {
+    if (!isEnabled(model))
+      return Flux.defer(primary);
+    return Flux.defer(() -> {
+      deposit();
+      var launched = new AtomicBoolean();
+      var decided = new AtomicBoolean();
+      var primaryStream = Flux.defer(primary)
+          .doOnNext(chunk -> {
+            if (decided.compareAndSet(false, true) && launched.get())
+              count(model, "lost");
+          });
+      var hedgeStream = Mono.delay(Duration.ofMillis(delayMs))
+          .flatMapMany(tick -> {
+            if (!withdraw()) {
+              count(model, "skipped");
+              return Flux.<T>never();
+            }
+            launched.set(true);
+            count(model, "launched");
+            log.info("No chunk from {} after {} ms, sending a hedged request", model, delayMs);
+            return Flux.defer(hedge)
+                .doOnNext(chunk -> {
+                  if (decided.compareAndSet(false, true))
+                    count(model, "won");
+                })
+                .onErrorResume(error -> {
+                  log.warn("Hedged request for {} failed: {}", model, error.getMessage());
+                  return Flux.never();
+                });
+          });
+      // The first source with a signal wins and the other one is cancelled
+      return Flux.firstWithSignal(primaryStream, hedgeStream);
+    });
+  }
+
+  private synchronized void deposit() {
+    budget = Math.min(maxBurst, budget + maxRatio);
+  }
+
+  private synchronized boolean withdraw() {
+    if (budget < 1)
+      return false;
+    budget--;
+    return true;
+  }
+
+  private void count(String model, String outcome) {
+    meterRegistry.counter("myaichat.ai.hedge", "model", model, "outcome", outcome).increment();
+  }
+}
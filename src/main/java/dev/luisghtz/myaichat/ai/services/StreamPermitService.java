@@ -0,0 +1,213 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * Limits the provider streams running at the same time, globally, per user
+ * and per provider. Nothing blocks: a stream that can't start waits in a FIFO
+ * queue for a permit, and it is rejected with 429 when the queue is full, the
+ * user already has too many streams waiting or the wait takes too long.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class StreamPermitService implements MeterBinder {
+  private static final String SATURATED_MESSAGE = "Too many assistant responses in progress, try again later";
+
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.ai.concurrency.global-max:100}")
+  private int globalMax;
+  @Value("${app.ai.concurrency.per-user-max:3}")
+  private int perUserMax;
+  @Value("${app.ai.concurrency.per-provider-max:50}")
+  private int perProviderMax;
+  @Value("${app.ai.concurrency.max-queue-size:200}")
+  private int maxQueueSize;
+  @Value("${app.ai.concurrency.max-wait-ms:15000}")
+  private long maxWaitMs;
+
+  // All the state below is guarded by the lock, the critical sections only update counters
+  private final Object lock = new Object();
+  private final LinkedList<Waiter> queue = new LinkedList<>();
+  private final Map<String, Integer> activeByUser = new HashMap<>();
+  private final Map<String, Integer> activeByProvider = new HashMap<>();
+  private int active;
+
+  /**
+   * Runs the source while holding a permit. The source is only subscribed
+   * once the permit is granted and the permit is released when it
+   * terminates or is cancelled.
+   */
+  public <T> Flux<T> withPermit(String userId, String provider, Supplier<Flux<T>> source) {
+    return Flux.usingWhen(
+        acquire(userId, provider),
+        permit -> Flux.defer(source),
+        permit -> Mono.fromRunnable(permit::release));
+  }
+
+  /** Fails fast with 429 when a new stream would be rejected anyway. */
+  public void ensureCapacity(String userId, String provider) {
+    synchronized (lock) {
+      if (!canStart(userId, provider) && !canQueue(userId))
+        throw reject("saturated");
+    }
+  }
+
+  public Mono<Permit> acquire(String userId, String provider) {
+    Mono<Permit> permit = Mono.create(sink -> {
+      var waiter = new Waiter(userId, provider, sink, Timer.start(meterRegistry));
+      boolean granted = false;
+      synchronized (lock) {
+        if (canStart(userId, provider)) {
+          take(waiter);
+          granted = true;
+        } else if (canQueue(userId)) {
+          queue.add(waiter);
+        } else {
+          sink.error(reject("saturated"));
+          return;
+        }
+      }
+      sink.onCancel(() -> cancel(waiter));
+      if (granted)
+        grant(waiter);
+    });
+    return permit.timeout(Duration.ofMillis(maxWaitMs), Mono.error(() -> reject("timeout")));
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("myaichat.ai.permits.queue.depth", this, service -> service.queueDepth())
+        .description("Provider streams waiting for a permit")
+        .register(registry);
+    Gauge.builder("myaichat.ai.permits.active", this, service -> service.activePermits())
+        .description("Provider streams holding a permit")
+        .register(registry);
+  }
+
+  public int queueDepth() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  public int activePermits() {
+    synchronized (lock) {
+      return active;
+    }
+  }
+
+  private void release(Waiter holder) {
+    List<Waiter> granted = new ArrayList<>();
+    synchronized (lock) {
+      active--;
+      activeByUser.computeIfPresent(holder.userId, (key, count) -> count > 1 ? count - 1 : null);
+      activeByProvider.computeIfPresent(holder.provider, (key, count) -> count > 1 ? count - 1 : null);
+      // Oldest first, waiters blocked by their own user or provider limit don't hold back the rest
+      for (Iterator<Waiter> iterator = queue.iterator(); iterator.hasNext() && active < globalMax;) {
+        var waiter = iterator.next();
+        if (canStart(waiter.userId, waiter.provider)) {
+          iterator.remove();
+          take(waiter);
+          granted.add(waiter);
+        }
+      }
+    }
+    granted.forEach(this::grant);
+  }
+
+  private void cancel(Waiter waiter) {
+    synchronized (lock) {
+      if (queue.remove(waiter))
+        return;
+    }
+    // Cancelled while the permit was being granted
+    waiter.permit.release();
+  }
+
+  private void take(Waiter waiter) {
+    active++;
+    activeByUser.merge(waiter.userId, 1, Integer::sum);
+    activeByProvider.merge(waiter.provider, 1, Integer::sum);
+  }
+
+  private void grant(Waiter waiter) {
+    waiter.sample.stop(meterRegistry.timer("myaichat.ai.permits.wait"));
+    waiter.sink.success(waiter.permit);
+  }
+
+  private boolean canStart(String userId, String provider) {
+    return active < globalMax
+        && activeByUser.getOrDefault(userId, 0) < perUserMax
+        && activeByProvider.getOrDefault(provider, 0) < perProviderMax;
+  }
+
+  private boolean canQueue(String userId) {
+    if (queue.size() >= maxQueueSize)
+      return false;
+    // A user can't fill the queue with streams it couldn't run anyway
+    long queuedByUser = queue.stream().filter(waiter -> waiter.userId.equals(userId)).count();
+    return queuedByUser < perUserMax;
+  }
+
+  private ResponseStatusException reject(String reason) {
+    meterRegistry.counter("myaichat.ai.permits.rejected", "reason", reason).increment();
+    log.warn("Rejected provider stream: {}", reason);
+    return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, SATURATED_MESSAGE);
+  }
+
+  /** A granted permit, releasing it more than once has no effect. */
+  public final class Permit {
+    private final Waiter holder;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(Waiter holder) {
+      this.holder = holder;
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true))
+        StreamPermitService.this.release(holder);
+    }
+  }
+
+  private final class Waiter {
+    private final String userId;
+    private final String provider;
+    private final MonoSink<Permit> sink;
+    private final Timer.Sample sample;
+    private final Permit permit;
+
+    private Waiter(String userId, String provider, MonoSink<Permit> sink, Timer.Sample sample) {
+      this.userId = userId;
+      this.provider = provider;
+      this.sink = sink;
+      this.sample = sample;
+      this.permit = new Permit(this);
+    }
+  }
+}
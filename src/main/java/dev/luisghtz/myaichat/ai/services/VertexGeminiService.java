@@ -17,8 +17,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.MimeType;
 import org.springframework.util.MimeTypeUtils;
 
+import dev.luisghtz.myaichat.ai.models.AIProvider;
 import dev.luisghtz.myaichat.ai.models.AIProviderService;
 import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
 import dev.luisghtz.myaichat.ai.utils.ChatClientToolsUtil;
 import dev.luisghtz.myaichat.ai.utils.MessagesUtil;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
@@ -36,8 +38,20 @@ public class VertexGeminiService implements AIProviderService {
   private final String TITLE_PROMPT = "Generate a concise title of no more than 5 words that summarizes this conversation, "
       + "avoid to use markdown styles, title should be only text. "
       + "The title should be in the same language as the conversation.";
+  private final String TITLES_PROMPT = "Generate a concise title of no more than 5 words for each of the numbered "
+      + "conversations, avoid to use markdown styles, titles should be only text. Each title should be in the same "
+      + "language as its conversation. Answer only with one line per conversation in the format '<number>. <title>'.";
+  private final String SUMMARY_PROMPT = "You keep a running summary of a conversation between a user and an assistant. "
+      + "Update the current summary with the new messages, keep facts, decisions, names and open questions, "
+      + "drop greetings and small talk. Answer only with the updated summary in no more than 250 words, "
+      + "in the same language as the conversation.";
   private final ChatClientToolsUtil chatClientUtil;
 
+  @Override
+  public AIProvider getProvider() {
+    return AIProvider.GEMINI;
+  }
+
   @Override
   public Flux<ChatResponse> getAssistantMessage(List<AppMessage> messages, Chat chat) {
     List<Message> modelMessages = new ArrayList<>();
@@ -90,6 +104,46 @@ public class VertexGeminiService implements AIProviderService {
     return title;
   }
 
+  @Override
+  public List<String> generateTitles(List<TitleRequest> requests) {
+    if (requests.size() == 1)
+      return List.of(generateTitle(requests.get(0).userMessage(), requests.get(0).assistantMessage()));
+    final int MAX_TOKENS_PER_TITLE = 20;
+    List<Message> titleMessages = new ArrayList<>();
+    titleMessages.add(new UserMessage(MessagesUtil.buildTitlesRequest(requests)));
+    titleMessages.add(new UserMessage(TITLES_PROMPT));
+
+    VertexAiGeminiChatOptions titleOptions = VertexAiGeminiChatOptions.builder()
+        .model(AppModels.GEMINI_FLASH_2_0_LITE.getKey())
+        .maxOutputTokens(MAX_TOKENS_PER_TITLE * requests.size())
+        .build();
+
+    ChatResponse titlesResponse = vertextAIChatClient.prompt()
+        .messages(titleMessages).options(titleOptions).call().chatResponse();
+    String titles = titlesResponse.getResult().getOutput().getText();
+    log.debug("Titles response: {}", titles);
+    return MessagesUtil.parseTitles(titles, requests.size());
+  }
+
+  @Override
+  public String summarizeHistory(String currentSummary, List<AppMessage> newMessages) {
+    final int MAX_TOKENS = 400;
+    List<Message> summaryMessages = new ArrayList<>();
+    summaryMessages.add(new UserMessage(MessagesUtil.buildHistorySummaryRequest(currentSummary, newMessages)));
+    summaryMessages.add(new UserMessage(SUMMARY_PROMPT));
+
+    VertexAiGeminiChatOptions summaryOptions = VertexAiGeminiChatOptions.builder()
+        .model(AppModels.GEMINI_FLASH_2_0_LITE.getKey())
+        .maxOutputTokens(MAX_TOKENS)
+        .build();
+
+    ChatResponse summaryResponse = vertextAIChatClient.prompt()
+        .messages(summaryMessages).options(summaryOptions).call().chatResponse();
+    String summary = summaryResponse.getResult().getOutput().getText();
+    log.debug("History summary response length: {}", summary != null ? summary.length() : 0);
+    return summary;
+  }
+
   private Message generateUserMessage(AppMessage message) {
     if (message.getFileUrl() != null) {
       try {
@@ -1,26 +1,33 @@
 package dev.luisghtz.myaichat.ai.utils;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
 import dev.luisghtz.myaichat.prompts.entities.CustomPrompt;
 
 public class MessagesUtil {
+  private static final Pattern NUMBERED_TITLE = Pattern.compile("^\\s*(\\d+)\\s*[.):-]\\s*(.+)$");
+
   public static void addSystemMessage(Chat chat, List<Message> messages) {
     if (chat.getCustomPrompt() != null) {
       CustomPrompt customPrompt = chat.getCustomPrompt();
       var prompt = addWebSearchInstructionsIfApply(chat, customPrompt.getContent());
-      messages.add(new SystemMessage(prompt));
+      messages.add(new SystemMessage(addHistorySummaryIfApply(chat, prompt)));
       return;
     }
     var prompt = addWebSearchInstructionsIfApply(chat, "You are a helpful assistant.");
-    messages.add(new SystemMessage(prompt));
+    messages.add(new SystemMessage(addHistorySummaryIfApply(chat, prompt)));
   }
 
   public static void addInitialMessagesFromCustomPromptIfExist(Chat chat, List<Message> messages) {
@@ -37,6 +44,52 @@ public class MessagesUtil {
     }
   }
 
+  public static String buildHistorySummaryRequest(String currentSummary, List<AppMessage> newMessages) {
+    var transcript = new StringBuilder();
+    newMessages.forEach(message -> transcript
+        .append(message.getRole())
+        .append(": ")
+        .append(message.getContent())
+        .append("\n"));
+    return String.format(
+        """
+            Current summary:
+            %s
+
+            New messages:
+            %s""",
+        currentSummary == null || currentSummary.isBlank() ? "None" : currentSummary,
+        transcript);
+  }
+
+  public static String buildTitlesRequest(List<TitleRequest> requests) {
+    var request = new StringBuilder();
+    for (int i = 0; i < requests.size(); i++)
+      request.append("Conversation ").append(i + 1).append(":\n")
+          .append("User: ").append(requests.get(i).userMessage()).append("\n")
+          .append("Assistant: ").append(requests.get(i).assistantMessage()).append("\n\n");
+    return request.toString().strip();
+  }
+
+  /**
+   * Titles of a batched answer in the order of the requests, {@code null}
+   * for the conversations the model skipped.
+   */
+  public static List<String> parseTitles(String response, int count) {
+    var titles = new ArrayList<String>(Collections.nCopies(count, (String) null));
+    if (response == null)
+      return titles;
+    response.lines().forEach(line -> {
+      var matcher = NUMBERED_TITLE.matcher(line);
+      if (!matcher.matches())
+        return;
+      int index = Integer.parseInt(matcher.group(1)) - 1;
+      if (index >= 0 && index < count && titles.get(index) == null)
+        titles.set(index, matcher.group(2).strip());
+    });
+    return titles;
+  }
+
   private static String addWebSearchInstructionsIfApply(Chat chat, String prompt) {
     var currentDate = LocalDate.now();
     var year = currentDate.getYear();
@@ -55,4 +108,18 @@ public class MessagesUtil {
 
     return prompt;
   }
+
+  private static String addHistorySummaryIfApply(Chat chat, String prompt) {
+    if (chat.getHistorySummary() == null || chat.getHistorySummary().isBlank())
+      return prompt;
+
+    return prompt + String.format(
+        """
+
+            --- SUMMARY OF THE EARLIER CONVERSATION ---
+            The oldest messages of this conversation are no longer included, this is a summary of them:
+            %s
+            """,
+        chat.getHistorySummary());
+  }
 }
@@ -0,0 +1,47 @@
+package dev.luisghtz.myaichat.ai.utils;
+
+import java.util.List;
+
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+
+/**
+ * Local, provider-agnostic token estimation. It is intentionally cheap (no
+ * tokenizer vocabularies are loaded) and slightly pessimistic, so it can be used
+ * to decide how much history fits into a prompt before calling a provider.
+ */
+public class TokenEstimatorUtil {
+  // Roughly 4 characters per token for English/Spanish text on BPE tokenizers
+  private static final int CHARS_PER_TOKEN = 4;
+  // Role markers and separators added by the providers for every message
+  private static final int TOKENS_PER_MESSAGE = 4;
+  // High detail image cost on OpenAI (Gemini charges less, so this is an upper bound)
+  public static final int TOKENS_PER_IMAGE = 765;
+
+  private TokenEstimatorUtil() {
+  }
+
+  public static int estimateTokens(String text) {
+    if (text == null || text.isEmpty())
+      return 0;
+    return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+  }
+
+  public static int estimateTokens(AppMessage message) {
+    var tokens = TOKENS_PER_MESSAGE + estimateTokens(message.getContent());
+    if (message.getFileUrl() != null && !message.getFileUrl().isEmpty())
+      tokens += TOKENS_PER_IMAGE;
+    return tokens;
+  }
+
+  public static int estimateTokens(List<AppMessage> messages) {
+    return messages.stream().mapToInt(TokenEstimatorUtil::estimateTokens).sum();
+  }
+
+  public static int estimateChars(int tokens) {
+    return tokens * CHARS_PER_TOKEN;
+  }
+
+  public static int estimateMessageTokens(String text) {
+    return TOKENS_PER_MESSAGE + estimateTokens(text);
+  }
+}
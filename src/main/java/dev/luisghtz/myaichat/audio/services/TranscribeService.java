@@ -5,7 +5,7 @@ import org.springframework.ai.audio.transcription.AudioTranscriptionResponse;
 import org.springframework.ai.model.Model;
 import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
 import org.springframework.ai.openai.api.OpenAiAudioApi;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -29,13 +29,8 @@ public class TranscribeService {
 
   public TranscriptionResDto transcribe(MultipartFile audio) {
     try {
-      // Convert MultipartFile to Resource for Spring AI
-      ByteArrayResource audioResource = new ByteArrayResource(audio.getBytes()) {
-        @Override
-        public String getFilename() {
-          return audio.getOriginalFilename();
-        }
-      };
+      // The resource reads the multipart content lazily and keeps the original file name
+      Resource audioResource = audio.getResource();
 
       AudioTranscriptionPrompt transcriptionRequest = new AudioTranscriptionPrompt(audioResource,
           createDefaultOptions());
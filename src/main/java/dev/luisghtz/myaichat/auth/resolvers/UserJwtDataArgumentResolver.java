@@ -4,9 +4,12 @@ import org.springframework.core.MethodParameter;
 import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.NativeWebRequest;
 import org.springframework.web.method.support.ModelAndViewContainer;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
+
 import dev.luisghtz.myaichat.auth.annotation.UserJwtData;
 import dev.luisghtz.myaichat.auth.dtos.UserJwtDataDto;
 import dev.luisghtz.myaichat.auth.services.JwtService;
@@ -34,14 +37,19 @@ public class UserJwtDataArgumentResolver implements HandlerMethodArgumentResolve
     }
     String token = authHeader.replace("Bearer ", "");
     log.info("Extracted JWT token: {}", token);
-    if (!jwtService.validateToken(token)) {
+    // Already verified by the authentication filter in the same request
+    var decodedToken = (DecodedJWT) webRequest.getAttribute(JwtService.DECODED_TOKEN_ATTRIBUTE,
+        RequestAttributes.SCOPE_REQUEST);
+    if (decodedToken == null)
+      decodedToken = jwtService.decodeToken(token);
+    if (decodedToken == null) {
       log.warn("Invalid JWT token: {}", token);
       return null;
     }
     var dto = UserJwtDataDto.builder()
-        .id(jwtService.getUserIdFromToken(token))
-        .username(jwtService.getUsernameFromToken(token))
-        .email(jwtService.getEmailFromToken(token))
+        .id(decodedToken.getSubject())
+        .username(decodedToken.getClaim("username").asString())
+        .email(decodedToken.getClaim("email").asString())
         .build();
     // Add email and role extraction if needed
     return dto;
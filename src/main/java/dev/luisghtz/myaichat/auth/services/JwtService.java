@@ -5,27 +5,57 @@ import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.luisghtz.myaichat.auth.entities.User;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.UUID;
 
 @Service
 @Slf4j
 public class JwtService {
 
-  @Value("${app.jwt.secret}")
-  private String jwtSecret;
+  public static final String DECODED_TOKEN_ATTRIBUTE = JwtService.class.getName() + ".DECODED_TOKEN";
 
-  @Value("${app.jwt.expiration:86400000}") // 24 hours
-  private long jwtExpiration;
+  private final long jwtExpiration;
+  private final Clock clock;
+  private final Algorithm algorithm;
+  private final JWTVerifier verifier;
+  private final Cache<String, DecodedJWT> decodedTokens;
+
+  @Autowired
+  public JwtService(@Value("${app.jwt.secret}") String jwtSecret,
+      @Value("${app.jwt.expiration:86400000}") long jwtExpiration, // 24 hours
+      @Value("${app.jwt.cache.max-size:10000}") long cacheMaxSize,
+      @Value("${app.jwt.cache.ttl-seconds:300}") long cacheTtlSeconds) {
+    this(jwtSecret, jwtExpiration, cacheMaxSize, cacheTtlSeconds, Clock.systemUTC());
+  }
+
+  // The clock dates the tokens and checks their expiration, in the verifier too
+  JwtService(String jwtSecret, long jwtExpiration, long cacheMaxSize, long cacheTtlSeconds, Clock clock) {
+    this.jwtExpiration = jwtExpiration;
+    this.clock = clock;
+    this.algorithm = Algorithm.HMAC256(jwtSecret.getBytes(StandardCharsets.UTF_8));
+    this.verifier = ((JWTVerifier.BaseVerification) JWT.require(algorithm)).build(clock);
+    this.decodedTokens = Caffeine.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+        .build();
+  }
 
   public String generateToken(User user) {
-    long now = System.currentTimeMillis();
+    long now = clock.millis();
     // Add a random nonce to ensure uniqueness even for same user at same
     // millisecond
     String nonce = UUID.randomUUID().toString().substring(0, 8);
@@ -38,31 +68,43 @@ public class JwtService {
         .withClaim("nonce", nonce)
         .withIssuedAt(new Date(now))
         .withExpiresAt(new Date(now + jwtExpiration))
-        .sign(getAlgorithm());
+        .sign(algorithm);
   }
 
   public boolean validateToken(String token) {
+    return decodeToken(token) != null;
+  }
+
+  /**
+   * Verifies the token and returns its claims, or {@code null} when it isn't
+   * valid. Verified tokens are cached by their SHA-256 hash until the cache TTL
+   * or the token expiration, whichever comes first, so the several lookups done
+   * while serving a request (filter, argument resolver, controllers) verify the
+   * HMAC only once.
+   */
+  public DecodedJWT decodeToken(String token) {
+    if (token == null || token.isEmpty())
+      return null;
+    var key = hashToken(token);
+    var decodedJWT = decodedTokens.getIfPresent(key);
+    if (decodedJWT != null) {
+      if (!isExpired(decodedJWT))
+        return decodedJWT;
+      decodedTokens.invalidate(key);
+    }
     try {
-      Algorithm algorithm = Algorithm.HMAC256(jwtSecret);
-      JWTVerifier verifier = JWT.require(algorithm).build();
-      verifier.verify(token);
-      return true;
+      decodedJWT = verifier.verify(token);
+      decodedTokens.put(key, decodedJWT);
+      return decodedJWT;
     } catch (JWTVerificationException e) {
       log.error("Invalid JWT token: {}", e.getMessage());
-      return false;
+      return null;
     }
   }
 
   public String getUserIdFromToken(String token) {
-    try {
-      Algorithm algorithm = getAlgorithm();
-      JWTVerifier verifier = JWT.require(algorithm).build();
-      DecodedJWT decodedJWT = verifier.verify(token);
-      return decodedJWT.getSubject();
-    } catch (JWTVerificationException e) {
-      log.error("Error extracting user ID from token: {}", e.getMessage());
-      return null;
-    }
+    var decodedJWT = decodeToken(token);
+    return decodedJWT != null ? decodedJWT.getSubject() : null;
   }
 
   public String getUsernameFromToken(String token) {
@@ -73,19 +115,22 @@ public class JwtService {
     return getClaim(token, "email");
   }
 
-  private Algorithm getAlgorithm() {
-    return Algorithm.HMAC256(jwtSecret.getBytes(StandardCharsets.UTF_8));
+  private String getClaim(String token, String claim) {
+    var decodedJWT = decodeToken(token);
+    return decodedJWT != null ? decodedJWT.getClaim(claim).asString() : null;
   }
 
-  private String getClaim(String token, String claim) {
+  private boolean isExpired(DecodedJWT decodedJWT) {
+    var expiresAt = decodedJWT.getExpiresAtAsInstant();
+    return expiresAt != null && !expiresAt.isAfter(clock.instant());
+  }
+
+  private String hashToken(String token) {
     try {
-      Algorithm algorithm = getAlgorithm();
-      JWTVerifier verifier = JWT.require(algorithm).build();
-      DecodedJWT decodedJWT = verifier.verify(token);
-      return decodedJWT.getClaim(claim).asString();
-    } catch (JWTVerificationException e) {
-      log.error("Error extracting claim {} from token: {}", claim, e.getMessage());
-      return null;
+      var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
     }
   }
 }
@@ -5,22 +5,46 @@ import dev.luisghtz.myaichat.auth.entities.Role;
 import dev.luisghtz.myaichat.auth.entities.User;
 import dev.luisghtz.myaichat.auth.repositories.RoleRepository;
 import dev.luisghtz.myaichat.auth.repositories.UserRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
-public class UserService {
+public class UserService implements MeterBinder {
 
   private final UserRepository userRepository;
   private final RoleRepository roleRepository;
 
+  // Users (with their role) resolved by the authentication filter on every request
+  private final Cache<UUID, User> authUsers;
+
+  public UserService(UserRepository userRepository, RoleRepository roleRepository,
+      @Value("${app.auth.user-cache.max-size:1000}") long authUserCacheMaxSize,
+      @Value("${app.auth.user-cache.ttl-seconds:60}") long authUserCacheTtlSeconds) {
+    this.userRepository = userRepository;
+    this.roleRepository = roleRepository;
+    this.authUsers = Caffeine.newBuilder()
+        .maximumSize(authUserCacheMaxSize)
+        .expireAfterWrite(Duration.ofSeconds(authUserCacheTtlSeconds))
+        .recordStats()
+        .build();
+  }
+
   @Transactional
   public User createOrUpdateUserFromGitHub(Map<String, Object> githubUser) {
     String githubId = String.valueOf(githubUser.get("id"));
@@ -62,7 +86,49 @@ public class UserService {
       user.setRole(userRole);
     }
 
-    return userRepository.save(user);
+    var savedUser = userRepository.save(user);
+    invalidateAuthUser(savedUser.getId());
+    return savedUser;
+  }
+
+  /**
+   * Same as {@link #findById(String)} but served from a short lived cache, so
+   * the locked/disabled/role checks done on every authenticated request don't
+   * need a database round trip. Only meant for the authentication path.
+   */
+  public Optional<User> findAuthUserById(String userId) {
+    UUID id;
+    try {
+      id = UUID.fromString(userId);
+    } catch (IllegalArgumentException e) {
+      log.error("Invalid UUID format: {}", userId);
+      return Optional.empty();
+    }
+    var user = authUsers.getIfPresent(id);
+    if (user != null)
+      return Optional.of(user);
+    var found = userRepository.findById(id);
+    found.ifPresent(foundUser -> authUsers.put(id, foundUser));
+    return found;
+  }
+
+  public void invalidateAuthUser(UUID userId) {
+    if (userId == null)
+      return;
+    authUsers.invalidate(userId);
+    // A request running before the commit could cache the previous state again
+    if (TransactionSynchronizationManager.isSynchronizationActive())
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          authUsers.invalidate(userId);
+        }
+      });
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, authUsers, "auth.users");
   }
 
   public UserDto convertToDto(User user) {
@@ -1,5 +1,7 @@
 package dev.luisghtz.myaichat.auth.utils;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
+
 import dev.luisghtz.myaichat.auth.entities.User;
 import dev.luisghtz.myaichat.auth.services.JwtService;
 import dev.luisghtz.myaichat.auth.services.UserService;
@@ -42,13 +44,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     try {
       String token = authHeader.substring(7);
 
-      boolean valid = jwtService.validateToken(token);
+      // Decoded once per request, the argument resolver reads it from the request attributes
+      DecodedJWT decodedToken = jwtService.decodeToken(token);
+      boolean valid = decodedToken != null;
+      if (valid)
+        request.setAttribute(JwtService.DECODED_TOKEN_ATTRIBUTE, decodedToken);
 
       if (valid && SecurityContextHolder.getContext().getAuthentication() == null) {
-        String userId = jwtService.getUserIdFromToken(token);
+        String userId = decodedToken.getSubject();
 
         if (userId != null) {
-          User user = userService.findById(userId).orElse(null);
+          User user = userService.findAuthUserById(userId).orElse(null);
 
           if (user != null && !user.getLocked() && !user.getDisabled()) {
             List<SimpleGrantedAuthority> authorities = List.of(
@@ -34,6 +34,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 
 @RestController
 @RequestMapping("api/chat")
@@ -63,10 +64,16 @@ public class ChatController {
       @UserJwtData UserJwtDataDto user) {
     String fileName = null;
     if (firstMessageReqDto.getFile() != null) {
-      fileName = fileService.uploadFile(firstMessageReqDto.getFile());
+      fileName = fileService.uploadFile(firstMessageReqDto.getFile(), firstMessageReqDto.getModel());
+    }
+    try {
+      var response = messagesService.userMessage(firstMessageReqDto, user, fileName);
+      return ResponseEntity.ok(response);
+    } catch (RuntimeException e) {
+      if (fileName != null)
+        messagesService.releaseUploadedFile(fileName);
+      throw e;
     }
-    var response = messagesService.userMessage(firstMessageReqDto, user, fileName);
-    return ResponseEntity.ok(response);
   }
 
   @GetMapping("assistant-message/{id}")
@@ -76,6 +83,15 @@ public class ChatController {
     return messagesService.getAssistantMessage(id, user);
   }
 
+  @GetMapping("assistant-message/{id}/resume")
+  public Flux<AssistantMessageResponseDto> resumeMessage(
+      @PathVariable UUID id,
+      @RequestParam UUID generationId,
+      @RequestParam(defaultValue = "-1") long lastIndex,
+      @UserJwtData UserJwtDataDto user) {
+    return messagesService.resumeAssistantMessage(id, generationId, lastIndex, user);
+  }
+
   @DeleteMapping("{id}/delete")
   public ResponseEntity<Void> deleteChat(@PathVariable UUID id, @UserJwtData UserJwtDataDto user) {
     messagesService.deleteAllByChat(id, user);
@@ -14,6 +14,9 @@ import lombok.NoArgsConstructor;
 public class AssistantMessageResponseDto {
   private String content;
   private Boolean isLastChunk;
+  // Identify the chunk to resume the stream after a disconnection
+  private UUID generationId;
+  private Long index;
   
   // Properties only present in the last chunk
   private UUID chatId;
@@ -21,11 +21,16 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
+
+// Updates only write the changed columns, a stale chat can't overwrite the counters and titles set by queries
 @Entity
+@DynamicUpdate
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Chat {
   @Id
   @GeneratedValue(strategy = GenerationType.UUID)
@@ -45,4 +50,19 @@ public class Chat {
   private Boolean isWebSearchMode;
   @ManyToOne(fetch = FetchType.LAZY)
   private User user;
+  // Running summary of the messages that no longer fit into the context window
+  @Column(nullable = true, columnDefinition = "TEXT")
+  private String historySummary;
+  @Column(nullable = true)
+  private Date historySummarizedUntil;
+  // Running token counters, kept up to date when the assistant messages are saved. The default is set
+  // apart from the type, Hibernate reuses the column definition to cast the parameters of the increment
+  @Builder.Default
+  @ColumnDefault("0")
+  @Column(nullable = false)
+  private Long totalPromptTokens = 0L;
+  @Builder.Default
+  @ColumnDefault("0")
+  @Column(nullable = false)
+  private Long totalCompletionTokens = 0L;
 }
@@ -0,0 +1,44 @@
+package dev.luisghtz.myaichat.chat.models;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
+import lombok.Getter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * A running assistant answer. The provider stream is subscribed once and its
+ * chunks are kept in a bounded replay buffer, so clients can disconnect and
+ * resume without starting a new generation.
+ */
+@Getter
+public class AssistantGeneration {
+  private final UUID id = UUID.randomUUID();
+  private final UUID chatId;
+  private final String userId;
+  private final Sinks.Many<AssistantMessageResponseDto> chunks;
+  private final Flux<AssistantMessageResponseDto> source;
+  private final AtomicLong nextIndex = new AtomicLong();
+  private final AtomicBoolean started = new AtomicBoolean();
+  private final AtomicBoolean finished = new AtomicBoolean();
+  // Upper bound of the memory held by the replay buffer
+  private final AtomicLong bufferedBytes = new AtomicLong();
+  // Clients currently reading the chunks
+  private final AtomicInteger subscribers = new AtomicInteger();
+  // The subscription to the source, disposing it first cancels the source as soon as it starts
+  private final Disposable.Swap subscription = Disposables.swap();
+
+  public AssistantGeneration(UUID chatId, String userId, Flux<AssistantMessageResponseDto> source,
+      int maxBufferedChunks) {
+    this.chatId = chatId;
+    this.userId = userId;
+    this.source = source;
+    this.chunks = Sinks.many().replay().limit(maxBufferedChunks);
+  }
+}
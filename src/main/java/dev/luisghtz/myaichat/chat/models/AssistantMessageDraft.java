@@ -0,0 +1,65 @@
+package dev.luisghtz.myaichat.chat.models;
+
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The assistant answer while it is being streamed. The buffer is sized from
+ * the max output tokens of the chat, so it doesn't grow chunk by chunk, and
+ * the content is checkpointed into its {@link AppMessage} row so a crash
+ * mid-stream keeps the partial answer.
+ */
+public class AssistantMessageDraft {
+  // Upper bound of the preallocated buffer, longer answers still grow it
+  private static final int MAX_INITIAL_CAPACITY = 16_384;
+  private static final int DEFAULT_INITIAL_CAPACITY = 1_024;
+
+  private final StringBuilder content;
+  private int checkpointedLength;
+  private long lastCheckpointAt;
+
+  // Row of the answer, created by the first checkpoint. Only used by the persistence worker
+  @Getter
+  @Setter
+  private AppMessage message;
+
+  public AssistantMessageDraft(int expectedChars, long startedAt) {
+    var capacity = expectedChars > 0 ? Math.min(expectedChars, MAX_INITIAL_CAPACITY) : DEFAULT_INITIAL_CAPACITY;
+    this.content = new StringBuilder(capacity);
+    this.lastCheckpointAt = startedAt;
+  }
+
+  public void append(String text) {
+    content.append(text);
+  }
+
+  public String getContent() {
+    return content.toString();
+  }
+
+  public int capacity() {
+    return content.capacity();
+  }
+
+  /**
+   * Whether enough new content or time has passed since the last checkpoint.
+   * A non positive {@code everyChars} disables the checkpoints.
+   */
+  public boolean isCheckpointDue(int everyChars, long everyMs, long now) {
+    if (everyChars <= 0 || content.length() == checkpointedLength)
+      return false;
+    return content.length() - checkpointedLength >= everyChars || now - lastCheckpointAt >= everyMs;
+  }
+
+  /** Records a checkpoint and returns the content to persist. */
+  public String checkpoint(long now) {
+    checkpointedLength = content.length();
+    lastCheckpointAt = now;
+    return content.toString();
+  }
+
+  public boolean hasUncheckpointedContent() {
+    return content.length() > checkpointedLength;
+  }
+}
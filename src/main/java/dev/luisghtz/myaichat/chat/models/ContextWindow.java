@@ -0,0 +1,25 @@
+package dev.luisghtz.myaichat.chat.models;
+
+import java.util.Date;
+import java.util.List;
+
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ContextWindow {
+  // Messages sent to the model, oldest first
+  private List<AppMessage> messages;
+  private int budgetTokens;
+  private int estimatedTokens;
+  // Estimated tokens of the loaded messages that did not fit into the budget
+  private int droppedTokens;
+  // Creation date of the oldest message in the window, null when nothing was left out
+  private Date cutoff;
+}
@@ -0,0 +1,8 @@
+package dev.luisghtz.myaichat.chat.models;
+
+import dev.luisghtz.myaichat.chat.entities.Chat;
+
+/** Strategy that names a new chat from its first exchange. */
+public interface TitleGenerator {
+  String generateTitle(Chat chat, String userMessage, String assistantMessage);
+}
@@ -1,8 +1,11 @@
 package dev.luisghtz.myaichat.chat.repositories;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.data.jpa.repository.Modifying;
@@ -15,19 +18,52 @@ public interface ChatRepository extends JpaRepository<Chat, UUID> {
 
   List<Chat> findAllByUserIdOrderByCreatedAtAsc(@Param("userId") UUID userId);
 
+  // Everything the assistant stream reads from the chat (prompt, prompt messages) in one query
+  @EntityGraph(attributePaths = { "customPrompt", "customPrompt.messages", "customPrompt.user" })
+  Optional<Chat> findWithCustomPromptById(UUID id);
+
   @Modifying
   @Query("UPDATE Chat c SET c.title = :title WHERE c.id = :id")
   int renameChatTitleById(@Param("id") UUID id, @Param("title") String title);
 
+  // Leaves the title alone when it was renamed in the meantime
+  @Modifying
+  @Query("UPDATE Chat c SET c.title = :title WHERE c.id = :id AND c.title = :currentTitle")
+  int replaceChatTitleById(@Param("id") UUID id, @Param("currentTitle") String currentTitle,
+      @Param("title") String title);
+
+  boolean existsByIdAndUserId(UUID id, UUID userId);
+
+  // The mutations below only affect the chat when it belongs to the user, 0 rows means not found or not owned
+  @Modifying
+  @Query("UPDATE Chat c SET c.title = :title WHERE c.id = :id AND c.user.id = :userId")
+  int renameChatTitleByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId, @Param("title") String title);
+
+  @Modifying
+  @Query("UPDATE Chat c SET c.maxOutputTokens = :maxOutputTokens WHERE c.id = :id AND c.user.id = :userId")
+  int changeMaxTokensByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId,
+      @Param("maxOutputTokens") Short maxOutputTokens);
+
+  @Modifying
+  @Query("UPDATE Chat c SET c.isWebSearchMode = :isWebSearchMode WHERE c.id = :id AND c.user.id = :userId")
+  int changeWebSearchModeByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId,
+      @Param("isWebSearchMode") Boolean isWebSearchMode);
+
+  @Modifying
+  @Query("UPDATE Chat c SET c.fav = CASE WHEN c.fav = true THEN false ELSE true END WHERE c.id = :id AND c.user.id = :userId")
+  int toggleFavByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId);
+
   @Modifying
-  @Query("UPDATE Chat c SET c.maxOutputTokens = :maxOutputTokens WHERE c.id = :id")
-  int changeMaxTokens(@Param("id") UUID id, @Param("maxOutputTokens") Short maxOutputTokens);
+  @Query("DELETE FROM Chat c WHERE c.id = :id AND c.user.id = :userId")
+  int deleteByIdAndUserId(@Param("id") UUID id, @Param("userId") UUID userId);
 
   @Modifying
-  @Query("UPDATE Chat c SET c.isWebSearchMode = :isWebSearchMode WHERE c.id = :id")
-  int changeWebSearchMode(@Param("id") UUID id, @Param("isWebSearchMode") Boolean isWebSearchMode);
+  @Query("UPDATE Chat c SET c.totalPromptTokens = c.totalPromptTokens + :promptTokens, c.totalCompletionTokens = c.totalCompletionTokens + :completionTokens WHERE c.id = :id")
+  int incrementTokenUsage(@Param("id") UUID id, @Param("promptTokens") long promptTokens,
+      @Param("completionTokens") long completionTokens);
 
   @Modifying
-  @Query("UPDATE Chat c SET c.fav = :fav WHERE c.id = :id")
-  int setChatFav(@Param("id") UUID id, @Param("fav") Boolean fav);
+  @Query("UPDATE Chat c SET c.historySummary = :summary, c.historySummarizedUntil = :summarizedUntil WHERE c.id = :id")
+  int updateHistorySummary(@Param("id") UUID id, @Param("summary") String summary,
+      @Param("summarizedUntil") Date summarizedUntil);
 }
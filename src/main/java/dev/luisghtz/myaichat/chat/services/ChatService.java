@@ -60,6 +60,12 @@ public class ChatService {
             "Chat not found with ID: " + id));
   }
 
+  public Chat findChatWithCustomPromptById(UUID id) {
+    return chatRepository.findWithCustomPromptById(id)
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+            "Chat not found with ID: " + id));
+  }
+
   public void generateAndSetTitleForNewChat(Chat chat, NewMessageRequestDto newMessageRequestDto,
       AssistantMessageResponseDto res) {
   String generatedTitle = aiProviderService.generateTitle(chat, newMessageRequestDto.getContent(),
@@ -97,43 +103,45 @@ public class ChatService {
 
   @Transactional
   public void deleteChat(UUID id, UserJwtDataDto user) {
-    var chat = findChatById(id);
-    validateChatBelongsToUser(chat, user);
-    log.info("Deleting chat with Title: '{}'' and ID: '{}'", chat.getTitle(), id);
-    chatRepository.delete(chat);
+    log.info("Deleting chat with ID: '{}'", id);
+    var deleted = chatRepository.deleteByIdAndUserId(id, UUID.fromString(user.getId()));
+    throwIfNotUpdated(id, deleted);
   }
 
   @Transactional
   public int renameChatTitleById(UUID id, String title, UserJwtDataDto user) {
-    var chat = findChatById(id);
-    validateChatBelongsToUser(chat, user);
-    log.info("Renaming chat with Title: '{}' and ID: '{}'", chat.getTitle(), id);
-    return chatRepository.renameChatTitleById(id, title);
+    log.info("Renaming chat with ID: '{}'", id);
+    var updated = chatRepository.renameChatTitleByIdAndUserId(id, UUID.fromString(user.getId()), title);
+    throwIfNotUpdated(id, updated);
+    return updated;
   }
 
   @Transactional
   public int changeMaxOutputTokens(UUID id, Short maxOutputTokens, UserJwtDataDto user) {
-    var chat = findChatById(id);
-    validateChatBelongsToUser(chat, user);
     log.info("Changing max output tokens for chat with ID: '{}'", id);
-    return chatRepository.changeMaxTokens(id, maxOutputTokens);
+    var updated = chatRepository.changeMaxTokensByIdAndUserId(id, UUID.fromString(user.getId()), maxOutputTokens);
+    throwIfNotUpdated(id, updated);
+    return updated;
   }
 
   @Transactional
   public int changeIsWebSearchMode(UUID id, Boolean webSearchMode, UserJwtDataDto user) {
-    var chat = findChatById(id);
-    validateChatBelongsToUser(chat, user);
     log.info("Changing web search mode for chat with ID: '{}'", id);
-    return chatRepository.changeWebSearchMode(id, webSearchMode);
+    var updated = chatRepository.changeWebSearchModeByIdAndUserId(id, UUID.fromString(user.getId()), webSearchMode);
+    throwIfNotUpdated(id, updated);
+    return updated;
   }
 
   @Transactional
   public void toggleChatFav(UUID id, UserJwtDataDto user) {
-    var chat = findChatById(id);
-    validateChatBelongsToUser(chat, user);
     log.info("Toggling favorite status for chat with ID: '{}'", id);
-    chat.setFav(!chat.getFav());
-    chatRepository.setChatFav(id, chat.getFav());
+    var updated = chatRepository.toggleFavByIdAndUserId(id, UUID.fromString(user.getId()));
+    throwIfNotUpdated(id, updated);
+  }
+
+  public void validateChatBelongsToUser(UUID id, UserJwtDataDto user) {
+    if (!chatRepository.existsByIdAndUserId(id, UUID.fromString(user.getId())))
+      throwNotFoundOrForbidden(id);
   }
 
   @Transactional
@@ -142,10 +150,37 @@ public class ChatService {
     chatRepository.renameChatTitleById(chatId, title);
   }
 
-  private void validateChatBelongsToUser(Chat chat, UserJwtDataDto user) {
-    if (!chat.getUser().getId().equals(UUID.fromString(user.getId()))) {
-      throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this chat");
-    }
+  @Transactional
+  public boolean replaceChatTitle(UUID chatId, String currentTitle, String title) {
+    log.info("Replacing generated title for chat with ID: '{}'", chatId);
+    return chatRepository.replaceChatTitleById(chatId, currentTitle, title) > 0;
+  }
+
+  @Transactional
+  public void addTokenUsage(UUID chatId, Integer promptTokens, Integer completionTokens) {
+    long prompt = promptTokens != null ? promptTokens : 0;
+    long completion = completionTokens != null ? completionTokens : 0;
+    if (prompt == 0 && completion == 0)
+      return;
+    chatRepository.incrementTokenUsage(chatId, prompt, completion);
+  }
+
+  @Transactional
+  public void updateHistorySummary(UUID chatId, String summary, Date summarizedUntil) {
+    log.info("Updating history summary for chat with ID: '{}'", chatId);
+    chatRepository.updateHistorySummary(chatId, summary, summarizedUntil);
+  }
+
+  private void throwIfNotUpdated(UUID id, int affectedRows) {
+    if (affectedRows == 0)
+      throwNotFoundOrForbidden(id);
+  }
+
+  // Only reached on the failure path, so the happy path stays a single statement
+  private void throwNotFoundOrForbidden(UUID id) {
+    if (!chatRepository.existsById(id))
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Chat not found with ID: " + id);
+    throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this chat");
   }
 
   private void updateIsWebSearchModeIfApply(Chat chat, NewMessageRequestDto newMessageRequestDto) {
@@ -0,0 +1,70 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.models.TitleGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Titles of the new chats. With the {@code local} strategy the title is
+ * extracted from the first exchange, so the completion event doesn't wait
+ * for a provider, and the model can still replace it in the background. The
+ * {@code llm} strategy keeps asking the model before the event is sent.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ChatTitleService {
+  private final ExtractiveTitleGenerator extractiveTitleGenerator;
+  private final LlmTitleGenerator llmTitleGenerator;
+  private final ChatService chatService;
+  private final Scheduler blockingTaskScheduler;
+
+  @Value("${app.chat.title.strategy:local}")
+  private String strategy;
+  @Value("${app.chat.title.llm-refinement:true}")
+  private boolean llmRefinement;
+
+  /**
+   * Returns the title for the first exchange of the chat and saves it in the
+   * background, followed by the model refinement when enabled.
+   */
+  public String titleNewChat(Chat chat, String userMessage, String assistantMessage) {
+    var useLlm = "llm".equalsIgnoreCase(strategy);
+    TitleGenerator generator = useLlm ? llmTitleGenerator : extractiveTitleGenerator;
+    var title = generator.generateTitle(chat, userMessage, assistantMessage);
+    Mono.fromRunnable(() -> {
+      chatService.updateChatTitle(chat.getId(), title);
+      log.info("Title saved to database for chat: {}", chat.getId());
+    })
+        .subscribeOn(blockingTaskScheduler)
+        .then(Mono.defer(() -> !useLlm && llmRefinement
+            ? refine(chat, title, userMessage, assistantMessage)
+            : Mono.empty()))
+        .subscribe(null, error -> log.error("Error updating chat title in database: ", error));
+    return title;
+  }
+
+  // The model titles of the chats created around the same time are requested together
+  private Mono<Void> refine(Chat chat, String currentTitle, String userMessage, String assistantMessage) {
+    return llmTitleGenerator.requestTitle(chat, userMessage, assistantMessage)
+        .filter(refinedTitle -> !refinedTitle.equals(currentTitle))
+        .flatMap(refinedTitle -> Mono.fromCallable(() -> chatService.replaceChatTitle(chat.getId(), currentTitle,
+            refinedTitle)).subscribeOn(blockingTaskScheduler))
+        .doOnNext(replaced -> {
+          if (replaced)
+            log.info("Title refined by the model for chat: {}", chat.getId());
+        })
+        // The extracted title stays
+        .onErrorResume(error -> {
+          log.warn("Error refining title for chat {}: {}", chat.getId(), error.getMessage());
+          return Mono.empty();
+        })
+        .then();
+  }
+}
@@ -0,0 +1,96 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+
+/**
+ * Merges the provider tokens into bigger chunks before they are serialized
+ * and written to the SSE stream. A chunk is flushed every
+ * {@code flush-interval-ms} or once it reaches {@code max-chars}, whichever
+ * comes first. The first chunk and the one with the usage are never delayed.
+ */
+@Service
+@RequiredArgsConstructor
+public class ChunkCoalescingService {
+  // Marker emitted by the flush timer, compared by identity
+  private static final AssistantMessageResponseDto FLUSH = new AssistantMessageResponseDto();
+
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.chat.coalescing.enabled:true}")
+  private boolean enabled;
+  @Value("${app.chat.coalescing.flush-interval-ms:50}")
+  private long flushIntervalMs;
+  @Value("${app.chat.coalescing.max-chars:256}")
+  private int maxChars;
+
+  public Flux<AssistantMessageResponseDto> coalesce(Flux<AssistantMessageResponseDto> chunks, String model) {
+    return Flux.defer(() -> {
+      var received = new AtomicInteger();
+      var emitted = new AtomicInteger();
+      Flux<AssistantMessageResponseDto> counted = chunks.doOnNext(chunk -> received.incrementAndGet());
+      Flux<AssistantMessageResponseDto> output = enabled && flushIntervalMs > 0 ? merge(counted) : counted;
+      return output
+          .doOnNext(chunk -> emitted.incrementAndGet())
+          .doFinally(signal -> {
+            chunksSummary("provider", model).record(received.get());
+            chunksSummary("emitted", model).record(emitted.get());
+          });
+    });
+  }
+
+  private Flux<AssistantMessageResponseDto> merge(Flux<AssistantMessageResponseDto> chunks) {
+    var pendingChars = new AtomicInteger();
+    var firstChunk = new AtomicBoolean(true);
+    return chunks
+        .publish(shared -> Flux.merge(shared, Flux.interval(Duration.ofMillis(flushIntervalMs))
+            .map(tick -> FLUSH)
+            .takeUntilOther(shared.then())))
+        .bufferUntil(chunk -> {
+          if (chunk == FLUSH) {
+            pendingChars.set(0);
+            return true;
+          }
+          int chars = pendingChars.addAndGet(chunk.getContent() != null ? chunk.getContent().length() : 0);
+          boolean flush = firstChunk.getAndSet(false) || chars >= maxChars || chunk.getTotalTokens() != null;
+          if (flush)
+            pendingChars.set(0);
+          return flush;
+        })
+        .map(buffer -> buffer.stream().filter(chunk -> chunk != FLUSH).toList())
+        .filter(buffer -> !buffer.isEmpty())
+        .map(this::join);
+  }
+
+  private AssistantMessageResponseDto join(List<AssistantMessageResponseDto> buffer) {
+    // The usage is only in the last provider chunk, which always closes its buffer
+    var last = buffer.get(buffer.size() - 1);
+    if (buffer.size() == 1)
+      return last;
+    var content = new StringBuilder();
+    for (var chunk : buffer)
+      if (chunk.getContent() != null)
+        content.append(chunk.getContent());
+    last.setContent(content.toString());
+    return last;
+  }
+
+  private DistributionSummary chunksSummary(String stage, String model) {
+    return DistributionSummary.builder("myaichat.assistant.stream.chunks")
+        .description("Content chunks per assistant response, as received from the provider and as sent")
+        .tag("stage", stage)
+        .tag("model", String.valueOf(model))
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,95 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.utils.MessagesUtil;
+import dev.luisghtz.myaichat.ai.utils.TokenEstimatorUtil;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.models.ContextWindow;
+import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class ContextWindowService {
+  private final MessageRepository messageRepository;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.chat.context.max-messages:50}")
+  private int maxMessages;
+
+  /**
+   * Selects the most recent messages of the chat that fit into the prompt budget
+   * of the chat model. Only the newest {@code maxMessages} rows are loaded, the
+   * rest of the history is never read.
+   *
+   * @param chat the chat to build the context for
+   * @return the selected messages (oldest first) and the token estimations
+   */
+  public ContextWindow buildContextWindow(Chat chat) {
+    int budget = Math.max(0, AppModels.getMaxContextTokens(chat.getModel()) - estimatePromptPrefixTokens(chat));
+    var candidates = messageRepository.findAllByChatIdOrderByCreatedAtDesc(chat.getId(),
+        PageRequest.of(0, maxMessages));
+
+    List<AppMessage> selected = new ArrayList<>();
+    int usedTokens = 0;
+    int droppedTokens = 0;
+    boolean budgetExceeded = false;
+    // Newest first, the latest message is always kept even if it exceeds the budget
+    for (AppMessage message : candidates) {
+      int tokens = TokenEstimatorUtil.estimateTokens(message);
+      if (!budgetExceeded && (selected.isEmpty() || usedTokens + tokens <= budget)) {
+        selected.add(message);
+        usedTokens += tokens;
+      } else {
+        budgetExceeded = true;
+        droppedTokens += tokens;
+      }
+    }
+    Collections.reverse(selected);
+
+    // Conversations must start with a user turn after the system/custom prompt
+    while (selected.size() > 1 && !"User".equals(selected.get(0).getRole())) {
+      int tokens = TokenEstimatorUtil.estimateTokens(selected.remove(0));
+      usedTokens -= tokens;
+      droppedTokens += tokens;
+    }
+
+    // Older messages exist that are not part of the window (dropped or never loaded)
+    boolean truncated = droppedTokens > 0 || candidates.size() >= maxMessages;
+    Date cutoff = truncated && !selected.isEmpty() ? selected.get(0).getCreatedAt() : null;
+
+    log.debug("Context window for chat {}: {} of {} messages, {} tokens used, {} tokens dropped", chat.getId(),
+        selected.size(), candidates.size(), usedTokens, droppedTokens);
+    meterRegistry.summary("myaichat.context.prompt.tokens.saved", "model", String.valueOf(chat.getModel()))
+        .record(droppedTokens);
+
+    return ContextWindow.builder()
+        .messages(selected)
+        .budgetTokens(budget)
+        .estimatedTokens(usedTokens)
+        .droppedTokens(droppedTokens)
+        .cutoff(cutoff)
+        .build();
+  }
+
+  private int estimatePromptPrefixTokens(Chat chat) {
+    List<Message> prefix = new ArrayList<>();
+    MessagesUtil.addSystemMessage(chat, prefix);
+    MessagesUtil.addInitialMessagesFromCustomPromptIfExist(chat, prefix);
+    return prefix.stream().mapToInt(message -> TokenEstimatorUtil.estimateMessageTokens(message.getText())).sum();
+  }
+}
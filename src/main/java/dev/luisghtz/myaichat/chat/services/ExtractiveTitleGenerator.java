@@ -0,0 +1,180 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.models.TitleGenerator;
+
+/**
+ * Builds the title locally from the first exchange, no provider call. The
+ * first sentence of the user message is used when it is short once the
+ * greetings and request phrases ("can you", "por favor") are removed,
+ * otherwise the most frequent keywords of the question and the answer are
+ * joined. The stopwords are picked for English or Spanish.
+ */
+@Component
+public class ExtractiveTitleGenerator implements TitleGenerator {
+  private static final int MAX_WORDS = 6;
+  private static final int MAX_KEYWORDS = 4;
+  private static final int MAX_CHARS = 60;
+  // Only the start of the answer is scanned, it usually restates the topic
+  private static final int MAX_ANSWER_CHARS = 1500;
+
+  private static final Pattern CODE_BLOCK = Pattern.compile("```.*?(```|$)", Pattern.DOTALL);
+  private static final Pattern INLINE_CODE = Pattern.compile("`[^`]*`");
+  private static final Pattern URL = Pattern.compile("https?://\\S+");
+  private static final Pattern SENTENCE_END = Pattern.compile("[.!?;:\\n]+");
+  private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+(?:['’-][\\p{L}\\p{N}]+)*[+#]*");
+  private static final Pattern SPANISH_MARKS = Pattern.compile("[¿¡ñÑ]");
+
+  enum Language {
+    ENGLISH("New chat",
+        Set.of("a", "about", "above", "after", "again", "all", "also", "am", "an", "and", "any", "are", "as", "at",
+            "be", "because", "been", "before", "being", "but", "by", "can", "could", "did", "do", "does", "doing",
+            "for", "from", "get", "had", "has", "have", "having", "he", "her", "here", "him", "his", "how", "i",
+            "if", "in", "into", "is", "it", "its", "just", "me", "more", "most", "my", "no", "not", "now", "of",
+            "on", "one", "only", "or", "other", "our", "out", "over", "please", "same", "she", "should", "so",
+            "some", "such", "than", "that", "the", "their", "them", "then", "there", "these", "they", "this",
+            "those", "through", "to", "too", "under", "up", "use", "using", "very", "want", "was", "we", "were",
+            "what", "when", "where", "which", "while", "who", "why", "will", "with", "would", "you", "your",
+            "here's", "it's", "i'm", "let's", "sure", "example", "like", "need", "make", "way", "help",
+            "hi", "hello", "hey", "thanks"),
+        Set.of("hi", "hello", "hey", "please", "can", "could", "would", "will", "you", "u", "i", "i'd", "i'm",
+            "me", "help", "like", "want", "need", "to", "tell", "show", "give", "let's", "lets", "with", "about",
+            "some", "any", "ok", "okay", "thanks")),
+    SPANISH("Nueva conversación",
+        Set.of("a", "al", "algo", "algunos", "ante", "antes", "como", "con", "contra", "cual", "cuando", "de",
+            "del", "desde", "donde", "durante", "e", "el", "ella", "ellos", "en", "entre", "era", "es", "esa",
+            "ese", "eso", "esta", "está", "este", "esto", "estos", "fue", "ha", "hay", "la", "las", "le", "les",
+            "lo", "los", "más", "me", "mi", "mis", "mucho", "muy", "nada", "ni", "no", "nos", "o", "otra", "otro",
+            "para", "pero", "poco", "por", "porque", "puede", "puedes", "que", "qué", "quien", "se", "sea", "ser",
+            "si", "sí", "sin", "sobre", "son", "su", "sus", "también", "te", "tiene", "todo", "tu", "tus", "un",
+            "una", "uno", "unos", "y", "ya", "yo", "cómo", "cuál", "aquí", "ejemplo", "favor", "hola", "gracias",
+            "usar", "hacer", "quiero", "necesito", "claro", "forma", "puedo", "ayudar", "buenas"),
+        Set.of("hola", "buenas", "buenos", "días", "tardes", "noches", "por", "favor", "puedes", "podrías",
+            "podrias", "me", "ayudas", "ayudar", "ayúdame", "ayudame", "quiero", "quisiera", "necesito", "dime",
+            "muéstrame", "muestrame", "dame", "con", "sobre", "algo", "unos", "gracias", "oye"));
+
+    private final String defaultTitle;
+    private final Set<String> stopwords;
+    // Words that start a request without saying what it is about
+    private final Set<String> leadingFillers;
+
+    Language(String defaultTitle, Set<String> stopwords, Set<String> leadingFillers) {
+      this.defaultTitle = defaultTitle;
+      this.stopwords = stopwords;
+      this.leadingFillers = leadingFillers;
+    }
+  }
+
+  @Override
+  public String generateTitle(Chat chat, String userMessage, String assistantMessage) {
+    var question = clean(userMessage);
+    var answer = clean(truncate(assistantMessage, MAX_ANSWER_CHARS));
+    var language = detectLanguage(question + " " + answer);
+
+    var title = fromFirstSentence(question, language);
+    if (title.isEmpty())
+      title = fromKeywords(question, answer, language);
+    if (title.isEmpty())
+      return language.defaultTitle;
+    return capitalize(truncateAtWord(title, MAX_CHARS));
+  }
+
+  Language detectLanguage(String text) {
+    if (SPANISH_MARKS.matcher(text).find())
+      return Language.SPANISH;
+    int english = 0;
+    int spanish = 0;
+    for (var word : words(text)) {
+      var lower = word.toLowerCase(Locale.ROOT);
+      if (Language.ENGLISH.stopwords.contains(lower))
+        english++;
+      if (Language.SPANISH.stopwords.contains(lower))
+        spanish++;
+    }
+    return spanish > english ? Language.SPANISH : Language.ENGLISH;
+  }
+
+  private String fromFirstSentence(String question, Language language) {
+    for (var sentence : SENTENCE_END.split(question)) {
+      var words = words(sentence);
+      int start = 0;
+      while (start < words.size() && language.leadingFillers.contains(words.get(start).toLowerCase(Locale.ROOT)))
+        start++;
+      if (start == words.size())
+        continue; // Only a greeting, try the next sentence
+      var remaining = words.subList(start, words.size());
+      return remaining.size() <= MAX_WORDS ? String.join(" ", remaining) : "";
+    }
+    return "";
+  }
+
+  // Words of the question count twice, the title should describe what was asked
+  private String fromKeywords(String question, String answer, Language language) {
+    Map<String, Keyword> keywords = new LinkedHashMap<>();
+    addKeywords(keywords, question, 2, language);
+    addKeywords(keywords, answer, 1, language);
+    return keywords.values().stream()
+        .sorted(Comparator.comparingInt(Keyword::score).reversed().thenComparingInt(Keyword::position))
+        .limit(MAX_KEYWORDS)
+        .sorted(Comparator.comparingInt(Keyword::position))
+        .map(Keyword::text)
+        .collect(Collectors.joining(" "));
+  }
+
+  private void addKeywords(Map<String, Keyword> keywords, String text, int weight, Language language) {
+    for (var word : words(text)) {
+      var lower = word.toLowerCase(Locale.ROOT);
+      if (lower.length() < 3 || language.stopwords.contains(lower) || lower.chars().allMatch(Character::isDigit))
+        continue;
+      var position = keywords.size();
+      keywords.merge(lower, new Keyword(word, weight, position),
+          (current, added) -> new Keyword(current.text(), current.score() + weight, current.position()));
+    }
+  }
+
+  private record Keyword(String text, int score, int position) {
+  }
+
+  private List<String> words(String text) {
+    List<String> words = new ArrayList<>();
+    var matcher = WORD.matcher(text);
+    while (matcher.find())
+      words.add(matcher.group());
+    return words;
+  }
+
+  private String clean(String text) {
+    if (text == null)
+      return "";
+    text = CODE_BLOCK.matcher(text).replaceAll(" ");
+    text = INLINE_CODE.matcher(text).replaceAll(" ");
+    return URL.matcher(text).replaceAll(" ");
+  }
+
+  private String truncate(String text, int maxChars) {
+    return text != null && text.length() > maxChars ? text.substring(0, maxChars) : text;
+  }
+
+  private String truncateAtWord(String text, int maxChars) {
+    if (text.length() <= maxChars)
+      return text;
+    var cut = text.lastIndexOf(' ', maxChars);
+    return cut > 0 ? text.substring(0, cut) : text.substring(0, maxChars);
+  }
+
+  private String capitalize(String text) {
+    return text.substring(0, 1).toUpperCase(Locale.ROOT) + text.substring(1);
+  }
+}
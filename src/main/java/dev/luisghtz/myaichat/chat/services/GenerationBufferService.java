@@ -0,0 +1,187 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
+import dev.luisghtz.myaichat.chat.models.AssistantGeneration;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the running and recently finished assistant generations in memory.
+ * The provider stream is no longer tied to the HTTP connection: a client
+ * that disconnects can resume from the last chunk it received. The buffers
+ * are bounded by their total size and a finished generation only stays
+ * around for {@code completed-ttl-seconds}, long enough for a reconnect. A
+ * running generation that nobody reads is cancelled, once it is evicted or
+ * {@code idle-ttl-seconds} after its last client left, so the provider stream
+ * doesn't keep billing and holding its permit.
+ */
+@Service
+@Log4j2
+public class GenerationBufferService {
+  // Rough size of a buffered chunk without its text: the DTO, its ids and the replay node
+  private static final int CHUNK_OVERHEAD_BYTES = 200;
+
+  private final MeterRegistry meterRegistry;
+  private final Duration idleTtl;
+  private final int maxChunks;
+  private final Cache<UUID, AssistantGeneration> generations;
+
+  public GenerationBufferService(MeterRegistry meterRegistry,
+      @Value("${app.chat.generation-buffer.max-bytes:8388608}") long maxBytes,
+      @Value("${app.chat.generation-buffer.ttl-seconds:300}") long ttlSeconds,
+      @Value("${app.chat.generation-buffer.completed-ttl-seconds:30}") long completedTtlSeconds,
+      @Value("${app.chat.generation-buffer.idle-ttl-seconds:60}") long idleTtlSeconds,
+      @Value("${app.chat.generation-buffer.max-chunks:1000}") int maxChunks) {
+    this.meterRegistry = meterRegistry;
+    this.idleTtl = Duration.ofSeconds(idleTtlSeconds);
+    this.maxChunks = maxChunks;
+    this.generations = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((UUID id, AssistantGeneration generation) -> (int) Math.min(Integer.MAX_VALUE,
+            generation.getBufferedBytes().get()))
+        .expireAfter(new GenerationExpiry(Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(completedTtlSeconds)))
+        // Nobody can resume it anymore, the clients still reading keep it running
+        .removalListener((UUID id, AssistantGeneration generation, RemovalCause cause) -> {
+          if (generation != null && cause != RemovalCause.REPLACED && generation.getSubscribers().get() == 0)
+            cancel(generation);
+        })
+        .build();
+  }
+
+  /**
+   * Registers a generation for the source stream. The source is subscribed by
+   * the first client and then runs until it completes, even if every client
+   * disconnects, unless nobody resumes it within the idle ttl.
+   */
+  public AssistantGeneration register(UUID chatId, String userId, Flux<AssistantMessageResponseDto> source) {
+    var generation = new AssistantGeneration(chatId, userId, source, maxChunks);
+    generations.put(generation.getId(), generation);
+    return generation;
+  }
+
+  public Flux<AssistantMessageResponseDto> stream(AssistantGeneration generation) {
+    return generation.getChunks().asFlux()
+        .doOnSubscribe(subscription -> {
+          generation.getSubscribers().incrementAndGet();
+          start(generation);
+        })
+        .doFinally(signal -> {
+          if (generation.getSubscribers().decrementAndGet() == 0 && !generation.getFinished().get())
+            cancelWhenIdle(generation);
+        });
+  }
+
+  /**
+   * Replays the buffered chunks after {@code lastIndex} and continues with the
+   * live ones.
+   */
+  public Flux<AssistantMessageResponseDto> resume(UUID generationId, UUID chatId, String userId, long lastIndex) {
+    var generation = generations.getIfPresent(generationId);
+    if (generation == null || !generation.getChatId().equals(chatId))
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Generation not found or expired");
+    if (!generation.getUserId().equals(userId))
+      throw new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this chat");
+    meterRegistry.counter("myaichat.assistant.stream.resumed").increment();
+
+    return stream(generation)
+        .switchOnFirst((first, chunks) -> {
+          // The oldest chunks were dropped from the buffer, the client can't continue from its offset
+          if (first.hasValue() && first.get().getIndex() > lastIndex + 1)
+            return Flux.error(new ResponseStatusException(HttpStatus.GONE,
+                "The requested chunks are no longer buffered"));
+          return chunks;
+        })
+        .filter(chunk -> chunk.getIndex() > lastIndex);
+  }
+
+  private void start(AssistantGeneration generation) {
+    if (!generation.getStarted().compareAndSet(false, true))
+      return;
+    var sink = generation.getChunks();
+    generation.getSubscription().update(generation.getSource()
+        .map(chunk -> {
+          chunk.setGenerationId(generation.getId());
+          chunk.setIndex(generation.getNextIndex().getAndIncrement());
+          return chunk;
+        })
+        .subscribe(
+            chunk -> {
+              generation.getBufferedBytes().addAndGet(weight(chunk));
+              // Re-weighs the entry, unless it was already evicted
+              generations.asMap().replace(generation.getId(), generation);
+              sink.tryEmitNext(chunk);
+            },
+            error -> {
+              finish(generation);
+              sink.tryEmitError(error);
+            },
+            () -> {
+              finish(generation);
+              sink.tryEmitComplete();
+            }));
+  }
+
+  private void cancelWhenIdle(AssistantGeneration generation) {
+    Mono.delay(idleTtl).subscribe(tick -> {
+      if (generation.getSubscribers().get() > 0)
+        return;
+      // The removal listener cancels it, unless it was already evicted while a client was reading it
+      if (generations.asMap().remove(generation.getId()) == null)
+        cancel(generation);
+    });
+  }
+
+  private void cancel(AssistantGeneration generation) {
+    if (generation.getFinished().get() || generation.getSubscription().isDisposed())
+      return;
+    log.info("Cancelling generation {} of chat {}, no client is reading it", generation.getId(),
+        generation.getChatId());
+    meterRegistry.counter("myaichat.assistant.stream.abandoned").increment();
+    generation.getSubscription().dispose();
+  }
+
+  private void finish(AssistantGeneration generation) {
+    generation.getFinished().set(true);
+    generations.asMap().replace(generation.getId(), generation);
+  }
+
+  // Counts every chunk even when the replay buffer dropped it, so the weight is an upper bound
+  private long weight(AssistantMessageResponseDto chunk) {
+    var content = chunk.getContent();
+    return CHUNK_OVERHEAD_BYTES + (content != null ? content.length() * 2L : 0);
+  }
+
+  /** Running generations live for the ttl, finished ones only for the completed ttl. */
+  private record GenerationExpiry(Duration ttl, Duration completedTtl) implements Expiry<UUID, AssistantGeneration> {
+    @Override
+    public long expireAfterCreate(UUID id, AssistantGeneration generation, long currentTime) {
+      return ttl.toNanos();
+    }
+
+    @Override
+    public long expireAfterUpdate(UUID id, AssistantGeneration generation, long currentTime,
+        long currentDuration) {
+      return generation.getFinished().get() ? Math.min(currentDuration, completedTtl.toNanos()) : currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(UUID id, AssistantGeneration generation, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
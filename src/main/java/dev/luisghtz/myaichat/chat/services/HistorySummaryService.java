@@ -0,0 +1,66 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class HistorySummaryService {
+  private final MessageRepository messageRepository;
+  private final ChatService chatService;
+  private final AIService aiProviderService;
+
+  @Value("${app.chat.summary.enabled:true}")
+  private boolean enabled;
+  @Value("${app.chat.summary.min-messages:4}")
+  private int minMessages;
+  @Value("${app.chat.summary.max-messages:40}")
+  private int maxMessages;
+
+  /**
+   * Folds the messages that fell out of the context window into the running
+   * summary of the chat. Only the messages created after the last summarized one
+   * and before the window cutoff are sent to the provider, so the cost of each
+   * update is proportional to the delta and not to the whole history.
+   *
+   * @param chat   the chat whose summary should be updated
+   * @param cutoff creation date of the oldest message still in the context window
+   */
+  public void updateSummaryIfNeeded(Chat chat, Date cutoff) {
+    if (!enabled || cutoff == null)
+      return;
+
+    var summarizedUntil = chat.getHistorySummarizedUntil() != null ? chat.getHistorySummarizedUntil() : new Date(0);
+    if (!summarizedUntil.before(cutoff))
+      return;
+
+    var newMessages = messageRepository.findAllByChatIdAndCreatedAtAfterAndCreatedAtBeforeOrderByCreatedAtAsc(
+        chat.getId(), summarizedUntil, cutoff, PageRequest.of(0, maxMessages));
+    if (newMessages.size() < minMessages) {
+      log.debug("Skipping history summary for chat {}: {} pending messages", chat.getId(), newMessages.size());
+      return;
+    }
+
+    var summary = aiProviderService.summarizeHistory(chat, chat.getHistorySummary(), newMessages);
+    if (summary == null || summary.isBlank()) {
+      log.warn("Empty history summary returned for chat {}", chat.getId());
+      return;
+    }
+
+    var newSummarizedUntil = newMessages.get(newMessages.size() - 1).getCreatedAt();
+    chatService.updateHistorySummary(chat.getId(), summary, newSummarizedUntil);
+    chat.setHistorySummary(summary);
+    chat.setHistorySummarizedUntil(newSummarizedUntil);
+    log.info("History summary updated for chat {} with {} messages", chat.getId(), newMessages.size());
+  }
+}
@@ -0,0 +1,61 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.models.TitleGenerator;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * Asks the provider of the chat model for the title. Only the start of both
+ * messages is sent, a few hundred characters are enough for five words.
+ */
+@Component
+@RequiredArgsConstructor
+public class LlmTitleGenerator implements TitleGenerator {
+  private static final int MAX_CHARS = 100;
+
+  private final AIService aiService;
+  private final TitleBatcher titleBatcher;
+
+  @Value("${app.chat.title.max-user-chars:500}")
+  private int maxUserChars = 500;
+  @Value("${app.chat.title.max-assistant-chars:1000}")
+  private int maxAssistantChars = 1000;
+
+  /** One blocking call for this chat only. */
+  @Override
+  public String generateTitle(Chat chat, String userMessage, String assistantMessage) {
+    return clean(aiService.generateTitle(chat, prefix(userMessage, maxUserChars),
+        prefix(assistantMessage, maxAssistantChars)));
+  }
+
+  /** Batched with the titles requested around the same time, empty when the model gave none. */
+  public Mono<String> requestTitle(Chat chat, String userMessage, String assistantMessage) {
+    var request = new TitleRequest(prefix(userMessage, maxUserChars), prefix(assistantMessage, maxAssistantChars));
+    return titleBatcher.submit(chat.getModel(), request)
+        .mapNotNull(this::clean)
+        .filter(title -> !title.isBlank());
+  }
+
+  private String clean(String title) {
+    if (title == null)
+      return null;
+    // Models sometimes answer with quotes, markdown or a trailing line break
+    title = title.strip().lines().findFirst().orElse("")
+        .replaceAll("^[\"'*#\\s]+|[\"'*.\\s]+$", "");
+    return title.length() > MAX_CHARS ? title.substring(0, MAX_CHARS).strip() : title;
+  }
+
+  // Cut at the last space so the model doesn't see half a word
+  private String prefix(String text, int maxChars) {
+    if (text == null || text.length() <= maxChars)
+      return text;
+    var cut = text.lastIndexOf(' ', maxChars);
+    return (cut > maxChars / 2 ? text.substring(0, cut) : text.substring(0, maxChars)) + "…";
+  }
+}
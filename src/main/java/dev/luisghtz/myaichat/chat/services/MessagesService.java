@@ -1,12 +1,17 @@
 package dev.luisghtz.myaichat.chat.services;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
@@ -14,6 +19,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.ai.services.ResponseCache;
+import dev.luisghtz.myaichat.ai.services.StreamPermitService;
+import dev.luisghtz.myaichat.ai.utils.TokenEstimatorUtil;
 import dev.luisghtz.myaichat.auth.dtos.UserJwtDataDto;
 import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
 import dev.luisghtz.myaichat.chat.dtos.UserMessageResDto;
@@ -21,40 +29,57 @@ import dev.luisghtz.myaichat.chat.dtos.HistoryChatDto;
 import dev.luisghtz.myaichat.chat.dtos.NewMessageRequestDto;
 import dev.luisghtz.myaichat.chat.entities.Chat;
 import dev.luisghtz.myaichat.chat.models.AppMessageHistory;
-import dev.luisghtz.myaichat.chat.models.TokensSum;
+import dev.luisghtz.myaichat.chat.models.AssistantMessageDraft;
+import dev.luisghtz.myaichat.chat.models.ContextWindow;
 import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.utils.MessagesUtils;
-import dev.luisghtz.myaichat.file.providers.AwsS3Service;
+import dev.luisghtz.myaichat.file.FileCleanupService;
+import dev.luisghtz.myaichat.file.StoredFileService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
+import reactor.core.scheduler.Scheduler;
 
 @Service
 @RequiredArgsConstructor
 @Log4j2
 public class MessagesService {
   private final AIService aiProviderService;
+  private final StreamPermitService streamPermitService;
+  private final ResponseCache responseCache;
   private final ChatService chatService;
+  private final ChatTitleService chatTitleService;
   private final MessageRepository messageRepository;
-  private final AwsS3Service awsS3Service;
+  private final FileCleanupService fileCleanupService;
+  private final StoredFileService storedFileService;
+  private final ContextWindowService contextWindowService;
+  private final HistorySummaryService historySummaryService;
+  private final GenerationBufferService generationBufferService;
+  private final ChunkCoalescingService chunkCoalescingService;
+  private final Scheduler blockingTaskScheduler;
+  private final MeterRegistry meterRegistry;
 
   @Value("${cdn}")
   private String cdn;
+  @Value("${app.chat.checkpoint.interval-chars:4000}")
+  private int checkpointIntervalChars;
+  @Value("${app.chat.checkpoint.interval-ms:5000}")
+  private long checkpointIntervalMs;
 
   public HistoryChatDto getPreviousMessages(UUID id, Pageable pageable, UserJwtDataDto user) {
     var chat = chatService.findChatById(id);
     validateIfChatBelongsToUser(chat, user);
-    var tokens = getSumOfPromptAndCompletionTokensByChatId(id);
     var historyMessages = getChatPreviousMessages(chat, pageable);
     var appMessageHistory = HistoryChatDto.builder()
         .historyMessages(historyMessages)
         .model(chat.getModel())
-        .totalPromptTokens(tokens.getPromptTokens())
-        .totalCompletionTokens(tokens.getCompletionTokens())
+        .totalPromptTokens(valueOrZero(chat.getTotalPromptTokens()))
+        .totalCompletionTokens(valueOrZero(chat.getTotalCompletionTokens()))
         .maxOutputTokens(chat.getMaxOutputTokens())
         .isWebSearchMode(chat.getIsWebSearchMode())
         .build();
@@ -66,25 +91,40 @@ public class MessagesService {
     Chat chat = chatService.getChat(newMessageRequestDto, user.getId());
     boolean isNew = isChatNew(chat);
     AppMessage userMessage = MessagesUtils.processUserMessage(newMessageRequestDto, chat, fileUrl);
+    // The reference on the file was taken by the upload
     messageRepository.save(userMessage);
     var res = new UserMessageResDto(isNew, chat.getId().toString());
     return res;
   }
 
   public Flux<AssistantMessageResponseDto> getAssistantMessage(UUID chatId, UserJwtDataDto user) {
-    // Get the chat and validate ownership
-    Chat chat = chatService.findChatById(chatId);
+    // Get the chat with its custom prompt and validate ownership
+    Chat chat = chatService.findChatWithCustomPromptById(chatId);
     validateIfChatBelongsToUser(chat, user);
 
-    // Get all messages from the chat
-    List<AppMessage> messages = getMessagesFromChat(chat);
+    // Reject before doing any work when the provider streams are saturated, cached answers don't need one
+    String provider = aiProviderService.getProvider(chat.getModel());
+    boolean cacheable = responseCache.isCacheable(chat);
+    if (!cacheable)
+      streamPermitService.ensureCapacity(user.getId(), provider);
+
+    // Get the most recent messages that fit into the model prompt budget
+    ContextWindow contextWindow = contextWindowService.buildContextWindow(chat);
+    List<AppMessage> messages = contextWindow.getMessages();
+
+    // A cached answer is replayed without a permit and its usage, billed once already, isn't added to the chat
+    Optional<Flux<ChatResponse>> cachedAnswer = responseCache.lookup(messages, chat);
+    boolean billed = cachedAnswer.isEmpty();
+    if (cacheable && billed)
+      streamPermitService.ensureCapacity(user.getId(), provider);
 
     // Check if this is a new chat (no title yet)
     boolean isNewChat = chat.getTitle() == null || chat.getTitle().isEmpty();
 
-    StringBuilder contentBuilder = new StringBuilder();
+    // Sized for the longest answer the chat allows, the partial content is checkpointed while it streams
+    var draft = new AssistantMessageDraft(expectedAnswerChars(chat), System.currentTimeMillis());
     AtomicReference<AppMessage> lastUserMessage = new AtomicReference<>();
-    AtomicReference<Boolean> isLastChunk = new AtomicReference<>(false);
+    AtomicReference<Usage> lastChunkUsage = new AtomicReference<>();
 
     // Get the last user message to update with tokens later
     if (!messages.isEmpty()) {
@@ -101,111 +141,165 @@ public class MessagesService {
       log.warn("No user message found in chat: {}", chatId);
     }
 
-    // Get streaming response from AI service
-    return aiProviderService.getAssistantMessage(messages, chat)
-        .map(chatResponse -> {
-          // Extract content from response
-          String text = chatResponse.getResult().getOutput().getText();
-          String content = text != null ? text : "";
-          // Accumulate content FIRST (before checking if it's last chunk)
-          contentBuilder.append(content);
-
-          // Store usage metadata from the response (only available in last chunk)
-          var usage = chatResponse.getMetadata().getUsage();
-          if (usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0)
-            isLastChunk.set(true);
-
-          // If this is the last chunk, prepare complete response with all data
-          if (isLastChunk.get()) {
-            // Generate title synchronously if needed (for new chats)
-            String generatedTitle = null;
-
-            if (isNewChat) {
-              try {
-                generatedTitle = aiProviderService.generateTitle(chat, lastUserMessage.get().getContent(),
-                    contentBuilder.toString());
-                // Update chat title synchronously to ensure it's available in response
-                chat.setTitle(generatedTitle);
-                final String titleToSave = generatedTitle;
-                Mono.fromRunnable(() -> {
-                  try {
-                    chatService.updateChatTitle(chat.getId(), titleToSave);
-                    log.info("Title saved to database for chat: {}", chat.getId());
-                  } catch (Exception e) {
-                    log.error("Error updating chat title in database: ", e);
-                  }
-                }).subscribeOn(Schedulers.boundedElastic()).subscribe();
-              } catch (Exception e) {
-                log.error("Error generating chat title: ", e);
-              }
-            } else {
-              log.info("Skipping title generation - conditions not met");
-            }
-
-            // Save complete assistant message to database asynchronously (only once)
-            final String completeContent = contentBuilder.toString();
-            log.info("Saving complete assistant message with content length: {} characters", completeContent.length());
-            log.debug("Complete content: '{}'", completeContent);
-
-            Mono.fromRunnable(() -> {
-              try {
-                saveAssistantMessageAndUpdateTokensAsync(
-                    chat,
-                    completeContent,
-                    usage.getPromptTokens(),
-                    usage.getCompletionTokens(),
-                    usage.getTotalTokens(),
-                    lastUserMessage.get(),
-                    isNewChat);
-              } catch (Exception e) {
-                log.error("Error saving assistant message: ", e);
+    // Get streaming response from AI service, chunks are forwarded as they arrive.
+    // Checkpoints and the final save run in order on one worker of the blocking scheduler
+    Flux<AssistantMessageResponseDto> contentChunks = Flux.using(
+        blockingTaskScheduler::createWorker,
+        persistenceWorker -> cachedAnswer
+            .orElseGet(() -> responseCache.record(messages, chat, streamPermitService
+                .withPermit(user.getId(), provider, () -> aiProviderService.getAssistantMessage(messages, chat))))
+            .map(chatResponse -> {
+              // Extract content from response
+              String text = chatResponse.getResult().getOutput().getText();
+              String content = text != null ? text : "";
+              draft.append(content);
+
+              // Usage metadata is only available in the last chunk
+              var usage = chatResponse.getMetadata().getUsage();
+              if (usage == null || usage.getTotalTokens() == null || usage.getTotalTokens() <= 0) {
+                if (draft.isCheckpointDue(checkpointIntervalChars, checkpointIntervalMs, System.currentTimeMillis()))
+                  scheduleCheckpoint(persistenceWorker, draft, chat);
+                return AssistantMessageResponseDto.builder()
+                    .content(content)
+                    .isLastChunk(false)
+                    .build();
               }
-            }).subscribeOn(Schedulers.boundedElastic()).subscribe();
-
-            // Get total chat tokens
-            TokensSum tokens = getSumOfPromptAndCompletionTokensByChatId(chatId);
-
-            // Return complete response for last chunk
-            return AssistantMessageResponseDto.builder()
-                .content(content)
-                .isLastChunk(true)
-                .chatId(chat.getId())
-                .chatTitle(generatedTitle != null ? generatedTitle : chat.getTitle())
-                .promptTokens(usage.getPromptTokens())
-                .completionTokens(usage.getCompletionTokens())
-                .totalTokens(usage.getTotalTokens())
-                .totalChatPromptTokens(tokens != null ? tokens.getPromptTokens() : 0L)
-                .totalChatCompletionTokens(tokens != null ? tokens.getCompletionTokens() : 0L)
-                .build();
-          } else {
-            // Return chunk response for non-last chunks
-            return AssistantMessageResponseDto.builder()
-                .content(content)
-                .isLastChunk(false)
-                .build();
-          }
-        })
+
+              lastChunkUsage.set(usage);
+              // Save complete assistant message to database asynchronously (only once)
+              final String completeContent = draft.checkpoint(System.currentTimeMillis());
+              log.info("Saving complete assistant message with content length: {} characters",
+                  completeContent.length());
+              log.debug("Complete content: '{}'", completeContent);
+              persistenceWorker.schedule(() -> {
+                try {
+                  saveAssistantMessageAndUpdateTokensAsync(
+                      chat,
+                      draft,
+                      completeContent,
+                      usage.getPromptTokens(),
+                      usage.getCompletionTokens(),
+                      usage.getTotalTokens(),
+                      lastUserMessage.get(),
+                      isNewChat,
+                      billed,
+                      contextWindow.getCutoff());
+                } catch (Exception e) {
+                  log.error("Error saving assistant message: ", e);
+                }
+              });
+
+              return AssistantMessageResponseDto.builder()
+                  .content(content)
+                  .isLastChunk(false)
+                  .promptTokens(usage.getPromptTokens())
+                  .completionTokens(usage.getCompletionTokens())
+                  .totalTokens(usage.getTotalTokens())
+                  .build();
+            }),
+        persistenceWorker -> {
+          // The provider failed before the usage arrived, keep what was streamed so far
+          if (lastChunkUsage.get() == null && checkpointIntervalChars > 0 && draft.hasUncheckpointedContent())
+            scheduleCheckpoint(persistenceWorker, draft, chat);
+          persistenceWorker.schedule(persistenceWorker::dispose);
+        });
+
+    // Title and chat totals are sent as a follow-up event once the content is complete
+    Mono<AssistantMessageResponseDto> completionEvent = Mono.defer(() -> {
+      var usage = lastChunkUsage.get();
+      if (usage == null)
+        return Mono.empty();
+      return Mono.fromCallable(() -> buildCompletionEvent(chat, isNewChat, usage, billed,
+          lastUserMessage.get(), draft.getContent()))
+          .subscribeOn(blockingTaskScheduler);
+    });
+
+    Flux<AssistantMessageResponseDto> generationStream = Flux.defer(() -> {
+      Timer.Sample sample = Timer.start(meterRegistry);
+      return chunkCoalescingService.coalesce(contentChunks, chat.getModel())
+          .concatWith(completionEvent)
+          .doFinally(signal -> sample.stop(Timer.builder("myaichat.assistant.stream.latency")
+              .description("Time from the stream subscription until the completion event is sent")
+              .tag("model", String.valueOf(chat.getModel()))
+              .tag("outcome", signal.name().toLowerCase())
+              .register(meterRegistry)));
+    })
         .doOnError(error -> {
           log.error("Error during AI response generation: ", error);
         });
+
+    // The generation outlives the HTTP connection, clients can resume it with its ID
+    var generation = generationBufferService.register(chat.getId(), user.getId(), generationStream);
+    return generationBufferService.stream(generation);
   }
 
-  private void saveAssistantMessageAndUpdateTokensAsync(Chat chat, String content, Integer promptTokens,
-      Integer completionTokens, Integer totalTokens, AppMessage lastUserMessage, boolean isNewChat) {
+  public Flux<AssistantMessageResponseDto> resumeAssistantMessage(UUID chatId, UUID generationId, long lastIndex,
+      UserJwtDataDto user) {
+    return generationBufferService.resume(generationId, chatId, user.getId(), lastIndex);
+  }
 
-    log.info("Saving assistant message for chat: {} with content length: {}", chat.getId(), content.length());
+  private AssistantMessageResponseDto buildCompletionEvent(Chat chat, boolean isNewChat, Usage usage, boolean billed,
+      AppMessage lastUserMessage, String completeContent) {
+    String generatedTitle = null;
+    if (isNewChat && lastUserMessage != null) {
+      try {
+        generatedTitle = chatTitleService.titleNewChat(chat, lastUserMessage.getContent(), completeContent);
+        chat.setTitle(generatedTitle);
+      } catch (Exception e) {
+        log.error("Error generating chat title: ", e);
+      }
+    } else {
+      log.info("Skipping title generation - conditions not met");
+    }
 
-    // Create and save assistant message (complete content only)
-    AppMessage assistantMessage = AppMessage.builder()
-        .role("Assistant")
-        .content(content)
-        .createdAt(new java.util.Date())
-        .completionTokens(completionTokens)
-        .totalTokens(totalTokens)
-        .chat(chat)
+    // Chat totals loaded with the chat plus the billed usage of this response
+    long totalChatPromptTokens = valueOrZero(chat.getTotalPromptTokens())
+        + (billed ? valueOrZero(usage.getPromptTokens()) : 0);
+    long totalChatCompletionTokens = valueOrZero(chat.getTotalCompletionTokens())
+        + (billed ? valueOrZero(usage.getCompletionTokens()) : 0);
+
+    return AssistantMessageResponseDto.builder()
+        .content("")
+        .isLastChunk(true)
+        .chatId(chat.getId())
+        .chatTitle(generatedTitle != null ? generatedTitle : chat.getTitle())
+        .promptTokens(usage.getPromptTokens())
+        .completionTokens(usage.getCompletionTokens())
+        .totalTokens(usage.getTotalTokens())
+        .totalChatPromptTokens(totalChatPromptTokens)
+        .totalChatCompletionTokens(totalChatCompletionTokens)
         .build();
+  }
+
+  private void scheduleCheckpoint(Scheduler.Worker persistenceWorker, AssistantMessageDraft draft, Chat chat) {
+    final String partialContent = draft.checkpoint(System.currentTimeMillis());
+    persistenceWorker.schedule(() -> {
+      try {
+        var assistantMessage = draft.getMessage() != null ? draft.getMessage() : newAssistantMessage(chat);
+        assistantMessage.setContent(partialContent);
+        draft.setMessage(messageRepository.save(assistantMessage));
+        log.debug("Checkpointed {} characters of the assistant message for chat: {}", partialContent.length(),
+            chat.getId());
+      } catch (Exception e) {
+        log.error("Error checkpointing assistant message: ", e);
+      }
+    });
+  }
 
-    messageRepository.save(assistantMessage);
+  private void saveAssistantMessageAndUpdateTokensAsync(Chat chat, AssistantMessageDraft draft, String content,
+      Integer promptTokens, Integer completionTokens, Integer totalTokens, AppMessage lastUserMessage,
+      boolean isNewChat, boolean billed, Date contextCutoff) {
+
+    log.info("Saving assistant message for chat: {} with content length: {}", chat.getId(), content.length());
+
+    // Complete the checkpointed row, or create it for short answers
+    AppMessage assistantMessage = draft.getMessage() != null ? draft.getMessage() : newAssistantMessage(chat);
+    assistantMessage.setContent(content);
+    assistantMessage.setCompletionTokens(completionTokens);
+    assistantMessage.setTotalTokens(totalTokens);
+
+    assistantMessage = messageRepository.save(assistantMessage);
+    draft.setMessage(assistantMessage);
     log.info("Assistant message saved with ID: {}", assistantMessage.getId());
 
     // Update the last user message with prompt tokens
@@ -215,7 +309,28 @@ public class MessagesService {
       log.info("Updated user message with prompt tokens: {}", promptTokens);
     }
 
+    if (billed)
+      chatService.addTokenUsage(chat.getId(), promptTokens, completionTokens);
     log.info("Assistant message and token update completed for chat: {}", chat.getId());
+
+    // Fold the messages that no longer fit into the context window into the chat summary
+    try {
+      historySummaryService.updateSummaryIfNeeded(chat, contextCutoff);
+    } catch (Exception e) {
+      log.error("Error updating history summary for chat {}: ", chat.getId(), e);
+    }
+  }
+
+  private AppMessage newAssistantMessage(Chat chat) {
+    return AppMessage.builder()
+        .role("Assistant")
+        .createdAt(new Date())
+        .chat(chat)
+        .build();
+  }
+
+  private int expectedAnswerChars(Chat chat) {
+    return chat.getMaxOutputTokens() != null ? TokenEstimatorUtil.estimateChars(chat.getMaxOutputTokens()) : 0;
   }
 
   private boolean isChatNew(Chat chat) {
@@ -246,34 +361,32 @@ public class MessagesService {
 
   @Transactional
   public void deleteAllByChat(UUID id, UserJwtDataDto user) {
-    var chat = chatService.findChatById(id);
-    validateIfChatBelongsToUser(chat, user);
+    chatService.validateChatBelongsToUser(id, user);
     log.info("Deleting messages for chat with ID: '{}'", id);
     var messages = messageRepository.findAllByChatId(id);
-    var files = messages.stream()
+    var referencesByKey = messages.stream()
         .map(AppMessage::getFileUrl)
         .filter(fileUrl -> fileUrl != null && !fileUrl.isEmpty())
-        .distinct()
-        .collect(Collectors.toList());
-    files.forEach(this::removeFileFromS3);
+        .map(this::toFileKey)
+        .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    // Files are shared between chats, only the ones without references left are deleted.
+    // S3 is cleaned up in the background, only the outbox rows are written here
+    fileCleanupService.scheduleDeletion(storedFileService.release(referencesByKey));
     messageRepository.deleteAllByChatId(id);
   }
 
-  private List<AppMessage> getMessagesFromChat(Chat chat) {
-    var messages = chat.getMessages();
-    if (messages == null || messages.isEmpty()) {
-      return new ArrayList<>();
-    }
-    return messages;
+  /** Gives back the reference the upload took for a message that couldn't be saved. */
+  @Transactional
+  public void releaseUploadedFile(String fileUrl) {
+    fileCleanupService.scheduleDeletion(storedFileService.release(Map.of(toFileKey(fileUrl), 1L)));
   }
 
-  private TokensSum getSumOfPromptAndCompletionTokensByChatId(UUID chatId) {
-    return messageRepository.getSumOfPromptAndCompletionTokensByChatId(chatId);
+  private String toFileKey(String fileUrl) {
+    return fileUrl.replace(cdn, "");
   }
 
-  private void removeFileFromS3(String fileUrl) {
-    var cleanUrl = fileUrl.replace(cdn, "");
-    awsS3Service.deleteFile(cleanUrl);
+  private long valueOrZero(Number value) {
+    return value != null ? value.longValue() : 0L;
   }
 
   private void validateIfChatBelongsToUser(Chat chat, UserJwtDataDto user) {
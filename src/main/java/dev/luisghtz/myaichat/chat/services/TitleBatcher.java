@@ -0,0 +1,115 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.ai.services.AIService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Groups the title requests of each provider that arrive within
+ * {@code window-ms} into a single call, sent earlier when the batch reaches
+ * {@code max-size}. A window of 0 sends every request on its own.
+ */
+@Component
+@RequiredArgsConstructor
+@Log4j2
+public class TitleBatcher {
+  private final AIService aiService;
+  private final Scheduler blockingTaskScheduler;
+
+  @Value("${app.chat.title.batch.window-ms:200}")
+  private long windowMs;
+  @Value("${app.chat.title.batch.max-size:10}")
+  private int maxSize;
+
+  // Batch being filled per provider
+  private final Map<String, Batch> openBatches = new HashMap<>();
+
+  public Mono<String> submit(String model, TitleRequest request) {
+    return Mono.defer(() -> {
+      var title = Sinks.<String>one();
+      enqueue(model, new PendingTitle(request, title));
+      return title.asMono();
+    });
+  }
+
+  private void enqueue(String model, PendingTitle pendingTitle) {
+    var provider = aiService.getProvider(model);
+    Batch full = null;
+    synchronized (openBatches) {
+      var batch = openBatches.get(provider);
+      if (batch == null) {
+        batch = new Batch(model);
+        if (windowMs > 0) {
+          // The window runs on the parallel scheduler, the blocking one may not support delays
+          var opened = batch;
+          Mono.delay(Duration.ofMillis(windowMs)).subscribe(tick -> flush(provider, opened));
+          openBatches.put(provider, batch);
+        }
+      }
+      batch.titles.add(pendingTitle);
+      if (batch.titles.size() >= maxSize || windowMs <= 0) {
+        openBatches.remove(provider, batch);
+        full = batch;
+      }
+    }
+    if (full != null)
+      sendInBackground(full);
+  }
+
+  private void flush(String provider, Batch batch) {
+    synchronized (openBatches) {
+      // Already sent when it filled up before the window ended
+      if (!openBatches.remove(provider, batch))
+        return;
+    }
+    sendInBackground(batch);
+  }
+
+  private void sendInBackground(Batch batch) {
+    Mono.fromRunnable(() -> send(batch))
+        .subscribeOn(blockingTaskScheduler)
+        .subscribe(null, error -> batch.titles.forEach(pendingTitle -> pendingTitle.title().tryEmitError(error)));
+  }
+
+  private void send(Batch batch) {
+    var requests = batch.titles.stream().map(PendingTitle::request).toList();
+    try {
+      log.info("Generating {} titles with one {} request", requests.size(), batch.model);
+      var titles = aiService.generateTitles(batch.model, requests);
+      for (int i = 0; i < batch.titles.size(); i++) {
+        var title = i < titles.size() ? titles.get(i) : null;
+        if (title != null && !title.isBlank())
+          batch.titles.get(i).title().tryEmitValue(title);
+        else
+          batch.titles.get(i).title().tryEmitEmpty();
+      }
+    } catch (Exception e) {
+      batch.titles.forEach(pendingTitle -> pendingTitle.title().tryEmitError(e));
+    }
+  }
+
+  private record PendingTitle(TitleRequest request, Sinks.One<String> title) {
+  }
+
+  private static class Batch {
+    private final String model;
+    private final List<PendingTitle> titles = new ArrayList<>();
+
+    Batch(String model) {
+      this.model = model;
+    }
+  }
+}
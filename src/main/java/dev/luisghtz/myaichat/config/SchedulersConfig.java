@@ -0,0 +1,50 @@
+package dev.luisghtz.myaichat.config;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import lombok.extern.log4j.Log4j2;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+@EnableScheduling
+@Log4j2
+public class SchedulersConfig {
+
+  @Value("${app.scheduler.blocking.max-threads:8}")
+  private int maxThreads;
+  @Value("${app.scheduler.blocking.max-queued-tasks:1000}")
+  private int maxQueuedTasks;
+
+  /**
+   * Scheduler for the blocking work (JDBC, provider {@code call()}) triggered
+   * from the assistant streams, so it never runs on the threads that emit the
+   * chunks and it can't starve the shared Reactor schedulers. With
+   * {@code spring.threads.virtual.enabled} (Java 21+) every task gets its own
+   * virtual thread instead, the workers still run their tasks one at a time and
+   * in order because each assistant stream saves its checkpoints and its final
+   * message through a single worker.
+   */
+  @Bean(destroyMethod = "dispose")
+  Scheduler blockingTaskScheduler(Environment environment) {
+    if (Threading.VIRTUAL.isActive(environment)) {
+      log.info("Blocking task scheduler running on virtual threads");
+      return orderedWorkersScheduler(new VirtualThreadTaskExecutor("myaichat-blocking-"));
+    }
+    log.info("Blocking task scheduler with {} threads and {} queued tasks", maxThreads, maxQueuedTasks);
+    return Schedulers.newBoundedElastic(maxThreads, maxQueuedTasks, "myaichat-blocking");
+  }
+
+  // Trampolining: the tasks of a worker are queued and run one after the other on the executor
+  static Scheduler orderedWorkersScheduler(Executor executor) {
+    return Schedulers.fromExecutor(executor, true);
+  }
+}
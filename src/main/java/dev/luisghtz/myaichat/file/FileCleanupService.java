@@ -0,0 +1,134 @@
+package dev.luisghtz.myaichat.file;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.file.entities.PendingFileDeletion;
+import dev.luisghtz.myaichat.file.entities.StoredFile;
+import dev.luisghtz.myaichat.file.providers.AwsS3Service;
+import dev.luisghtz.myaichat.file.repositories.PendingFileDeletionRepository;
+import dev.luisghtz.myaichat.file.repositories.StoredFileRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Deletes S3 objects outside of the request that removed them. Callers only
+ * record the keys, the scheduled worker sends them to S3 in batches and
+ * retries the failed ones with an exponential backoff.
+ */
+@Service
+@RequiredArgsConstructor
+@Log4j2
+public class FileCleanupService {
+  private final PendingFileDeletionRepository pendingFileDeletionRepository;
+  private final StoredFileRepository storedFileRepository;
+  private final AwsS3Service awsS3Service;
+  private final MeterRegistry meterRegistry;
+
+  @Value("${app.files.cleanup.batch-size:500}")
+  private int batchSize;
+  @Value("${app.files.cleanup.max-attempts:10}")
+  private int maxAttempts;
+  @Value("${app.files.cleanup.base-backoff-seconds:30}")
+  private long baseBackoffSeconds;
+  @Value("${app.files.cleanup.max-backoff-seconds:3600}")
+  private long maxBackoffSeconds;
+  // Leaves time to a concurrent upload that found the object before it was released
+  @Value("${app.files.cleanup.grace-seconds:300}")
+  private long graceSeconds;
+
+  /**
+   * Records the keys for deletion. Must run inside the transaction that
+   * removes the rows referencing them, so both commit or roll back together.
+   */
+  @Transactional(Transactional.TxType.MANDATORY)
+  public void scheduleDeletion(Collection<String> fileKeys) {
+    if (fileKeys.isEmpty())
+      return;
+    var now = new Date();
+    var firstAttemptAt = new Date(now.getTime() + graceSeconds * 1000);
+    pendingFileDeletionRepository.saveAll(fileKeys.stream()
+        .distinct()
+        .map(fileKey -> PendingFileDeletion.builder()
+            .fileKey(fileKey)
+            .nextAttemptAt(firstAttemptAt)
+            .createdAt(now)
+            .build())
+        .toList());
+  }
+
+  @Scheduled(fixedDelayString = "${app.files.cleanup.interval-ms:30000}", initialDelayString = "${app.files.cleanup.interval-ms:30000}")
+  public void processPendingDeletions() {
+    List<PendingFileDeletion> batch;
+    do {
+      batch = pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+          maxAttempts, new Date(), PageRequest.of(0, batchSize));
+      if (batch.isEmpty())
+        return;
+      processBatch(batch);
+      // Failed rows move to the future, so a full batch always means there may be more due rows
+    } while (batch.size() == batchSize);
+  }
+
+  private void processBatch(List<PendingFileDeletion> candidates) {
+    // A new message may have referenced the file again since it was released
+    var referencedKeys = storedFileRepository
+        .findAllById(candidates.stream().map(PendingFileDeletion::getFileKey).distinct().toList())
+        .stream().map(StoredFile::getFileKey).collect(Collectors.toSet());
+    var referenced = candidates.stream().filter(pending -> referencedKeys.contains(pending.getFileKey())).toList();
+    if (!referenced.isEmpty())
+      pendingFileDeletionRepository.deleteAllInBatch(referenced);
+    var batch = candidates.stream().filter(pending -> !referencedKeys.contains(pending.getFileKey())).toList();
+    if (batch.isEmpty())
+      return;
+    var keys = batch.stream().map(PendingFileDeletion::getFileKey).distinct().toList();
+    Set<String> failedKeys = new HashSet<>();
+    String error;
+    try {
+      failedKeys.addAll(awsS3Service.deleteFiles(keys).join());
+      error = "S3 did not delete the object";
+    } catch (CompletionException e) {
+      log.warn("Could not delete {} files from S3", keys.size(), e.getCause());
+      failedKeys.addAll(keys);
+      error = String.valueOf(e.getCause());
+    }
+
+    var deleted = batch.stream().filter(pending -> !failedKeys.contains(pending.getFileKey())).toList();
+    var failed = batch.stream().filter(pending -> failedKeys.contains(pending.getFileKey())).toList();
+    pendingFileDeletionRepository.deleteAllInBatch(deleted);
+    for (var pending : failed)
+      scheduleRetry(pending, error);
+    pendingFileDeletionRepository.saveAll(failed);
+
+    meterRegistry.counter("myaichat.files.cleanup", "outcome", "deleted").increment(deleted.size());
+    meterRegistry.counter("myaichat.files.cleanup", "outcome", "failed").increment(failed.size());
+  }
+
+  private void scheduleRetry(PendingFileDeletion pending, String error) {
+    int attempts = pending.getAttempts() + 1;
+    pending.setAttempts(attempts);
+    pending.setLastError(error);
+    pending.setNextAttemptAt(new Date(System.currentTimeMillis() + backoff(attempts).toMillis()));
+    if (attempts >= maxAttempts)
+      log.error("Giving up deleting '{}' from S3 after {} attempts: {}", pending.getFileKey(), attempts, error);
+  }
+
+  // base, 2 * base, 4 * base... capped at the max backoff
+  private Duration backoff(int attempts) {
+    var seconds = baseBackoffSeconds << Math.min(attempts - 1, 20);
+    return Duration.ofSeconds(Math.min(seconds, maxBackoffSeconds));
+  }
+}
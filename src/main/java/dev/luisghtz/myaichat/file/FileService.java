@@ -1,46 +1,104 @@
 package dev.luisghtz.myaichat.file;
 
-import java.util.UUID;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import dev.luisghtz.myaichat.ai.models.AppModels;
 import dev.luisghtz.myaichat.file.providers.AwsS3Service;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
 
 @Service
 @RequiredArgsConstructor
+@Log4j2
 public class FileService {
   private final AwsS3Service awsS3Service;
+  private final ImageProcessingService imageProcessingService;
+  private final StoredFileService storedFileService;
   @Value("${cdn}")
   private String cdnUrl;
 
-  public String uploadFile(MultipartFile file) {
-    // Convert MultipartFile to byte array
-    var fileName = generateFileName(file);
-    byte[] fileContent = convertToByteArray(file);
+  /**
+   * Uploads the file, downscaled first when it's an image larger than what
+   * the model uses. Files are stored under the hash of their content, so the
+   * same file uploaded again reuses the existing object. The reference for
+   * the message using the URL is taken here, so the object can't be cleaned
+   * up before the message is saved.
+   *
+   * @param model the model of the chat, {@code null} uses the default limit
+   */
+  public String uploadFile(MultipartFile file, String model) {
+    var processedImage = imageProcessingService.process(file, AppModels.getMaxImageDimension(model));
+    if (processedImage.isPresent()) {
+      var image = processedImage.get();
+      // The extension must match the new format, providers get the MIME type from it
+      var fileName = generateFileName(sha256(new ByteArrayInputStream(image.content())), image.extension());
+      log.info("Image '{}' downscaled to {}x{}: {} -> {} bytes", file.getOriginalFilename(), image.width(),
+          image.height(), file.getSize(), image.content().length);
+      if (!storedFileService.isStored(fileName))
+        awsS3Service.uploadFile(fileName, () -> new ByteArrayInputStream(image.content()), image.content().length,
+            image.contentType());
+      storedFileService.acquire(fileName);
+      return cdnUrl + fileName;
+    }
 
-    awsS3Service.uploadFile(fileName, fileContent);
+    // One streamed pass to hash the content, the key has to be known before the upload
+    var fileName = generateFileName(sha256(openInputStream(file)), getExtension(file.getOriginalFilename()));
+    if (storedFileService.isStored(fileName))
+      log.info("File '{}' already stored as '{}'", file.getOriginalFilename(), fileName);
+    else
+      // Stream the multipart content (kept on disk by the container) instead of copying it into the heap
+      awsS3Service.uploadFile(fileName, () -> openInputStream(file), file.getSize(), file.getContentType());
+    storedFileService.acquire(fileName);
     return cdnUrl + fileName;
   }
 
-  private byte[] convertToByteArray(MultipartFile file) {
+  private InputStream openInputStream(MultipartFile file) {
     try {
-      return file.getBytes();
-    } catch (Exception e) {
-      throw new RuntimeException("Failed to convert file to byte array", e);
+      return file.getInputStream();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read the uploaded file", e);
+    }
+  }
+
+  private String sha256(InputStream content) {
+    try (var digestStream = new DigestInputStream(content, MessageDigest.getInstance("SHA-256"))) {
+      digestStream.transferTo(OutputStream.nullOutputStream());
+      return HexFormat.of().formatHex(digestStream.getMessageDigest().digest());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read the uploaded file", e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
     }
   }
 
   /**
-   * Generates a unique file name using UUID and the original file name.
+   * Generates the content addressed file name.
    *
-   * @param file the MultipartFile to generate the name for
+   * @param contentHash hex SHA-256 of the stored content
+   * @param extension   extension (with the dot) providers get the MIME type from
    * @return the generated file name
    */
-  private String generateFileName(MultipartFile file) {
-    var randomUUID = UUID.randomUUID().toString();
-    return "myaichat/" + randomUUID + "_" + file.getOriginalFilename();
+  private String generateFileName(String contentHash, String extension) {
+    return "myaichat/" + contentHash + extension;
+  }
+
+  private String getExtension(String fileName) {
+    if (fileName == null)
+      return "";
+    int dot = fileName.lastIndexOf('.');
+    return dot >= 0 ? fileName.substring(dot).toLowerCase(Locale.ROOT) : "";
   }
 }
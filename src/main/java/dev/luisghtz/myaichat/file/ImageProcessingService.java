@@ -0,0 +1,251 @@
+package dev.luisghtz.myaichat.file;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.luisghtz.myaichat.file.models.ProcessedImage;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Downscales uploaded images to the largest resolution the model uses, so
+ * neither S3 nor the provider fetching the image on every turn move pixels
+ * that are thrown away. The dimensions are read from the header first and
+ * large images are decoded with the largest subsampling that keeps them at or
+ * above the target resolution, and never above {@code max-decoded-pixels}, so
+ * a phone photo doesn't need its full resolution in the heap. The EXIF
+ * orientation of JPEG photos is applied to the pixels, the re-encoded file
+ * has no metadata left to say it.
+ */
+@Service
+@Log4j2
+public class ImageProcessingService {
+  private static final String JPEG = "image/jpeg";
+  private static final String PNG = "image/png";
+  // The EXIF segment comes right after the start of the file
+  private static final int EXIF_SCAN_BYTES = 64 * 1024;
+  private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+  @Value("${app.files.images.processing-enabled:true}")
+  private boolean enabled;
+  @Value("${app.files.images.jpeg-quality:0.85}")
+  private float jpegQuality;
+  // Rejects decompression bombs before allocating anything
+  @Value("${app.files.images.max-pixels:25000000}")
+  private long maxPixels;
+  // About 24 MB once decoded, the heap is 96 MB
+  @Value("${app.files.images.max-decoded-pixels:8000000}")
+  private long maxDecodedPixels;
+
+  /**
+   * @return the downscaled image in the same format (JPEG files are
+   *         normalized to {@code .jpg}), or empty when the original should be
+   *         uploaded as it is (small enough, GIF, not decodable or the
+   *         re-encoded image isn't smaller)
+   */
+  public Optional<ProcessedImage> process(MultipartFile file, int maxDimension) {
+    if (!enabled || !isSupported(file.getContentType()))
+      return Optional.empty();
+    boolean png = PNG.equals(file.getContentType());
+    try (InputStream input = file.getInputStream();
+        ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+      var readers = imageInput != null ? ImageIO.getImageReaders(imageInput) : null;
+      if (readers == null || !readers.hasNext())
+        return Optional.empty();
+      var reader = readers.next();
+      try {
+        reader.setInput(imageInput, true, true);
+        return downscale(reader, png, png ? 1 : readOrientation(file), file.getSize(), maxDimension);
+      } finally {
+        reader.dispose();
+      }
+    } catch (IOException | RuntimeException e) {
+      if (e instanceof ResponseStatusException responseStatusException)
+        throw responseStatusException;
+      log.warn("Could not process image '{}', uploading it as is: {}", file.getOriginalFilename(), e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  private Optional<ProcessedImage> downscale(ImageReader reader, boolean png, int orientation, long originalSize,
+      int maxDimension) throws IOException {
+    int width = reader.getWidth(0);
+    int height = reader.getHeight(0);
+    if ((long) width * height > maxPixels)
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Image resolution is too large");
+    int longestSide = Math.max(width, height);
+    if (longestSide <= maxDimension)
+      return Optional.empty();
+
+    double scale = (double) maxDimension / longestSide;
+    int targetWidth = Math.max(1, (int) Math.round(width * scale));
+    int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+    // The final step does the smooth resize from the subsampled image
+    var param = reader.getDefaultReadParam();
+    int subsampling = subsampling(width, height, maxDimension);
+    if (subsampling > 1)
+      param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    BufferedImage decoded = reader.read(0, param);
+
+    BufferedImage resized = resize(decoded, targetWidth, targetHeight, orientation,
+        decoded.getColorModel().hasAlpha());
+    decoded.flush();
+
+    // PNGs (screenshots, transparency) stay lossless, photos stay JPEG
+    byte[] content = png ? encodePng(resized) : encodeJpeg(resized);
+    resized.flush();
+    if (content.length >= originalSize)
+      return Optional.empty();
+    return Optional.of(new ProcessedImage(content, png ? PNG : JPEG, png ? ".png" : ".jpg", resized.getWidth(),
+        resized.getHeight()));
+  }
+
+  int subsampling(int width, int height, int maxDimension) {
+    int subsampling = Math.max(1, Math.max(width, height) / maxDimension);
+    while (decodedPixels(width, subsampling) * decodedPixels(height, subsampling) > maxDecodedPixels)
+      subsampling++;
+    return subsampling;
+  }
+
+  // Subsampling keeps the first pixel of every step, so the side is rounded up
+  private long decodedPixels(int side, int subsampling) {
+    return (side + subsampling - 1) / subsampling;
+  }
+
+  // Resizes and rotates in the same pass, orientations 5 to 8 swap the sides
+  private BufferedImage resize(BufferedImage source, int width, int height, int orientation, boolean hasAlpha) {
+    boolean transposed = orientation >= 5 && orientation <= 8;
+    var target = new BufferedImage(transposed ? height : width, transposed ? width : height,
+        hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = target.createGraphics();
+    try {
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.transform(orientationTransform(orientation, width, height));
+      graphics.drawImage(source, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return target;
+  }
+
+  // Maps the stored pixels to the displayed ones, width and height are the stored sides
+  static AffineTransform orientationTransform(int orientation, int width, int height) {
+    return switch (orientation) {
+      case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0); // Mirrored
+      case 3 -> new AffineTransform(-1, 0, 0, -1, width, height); // Upside down
+      case 4 -> new AffineTransform(1, 0, 0, -1, 0, height); // Mirrored vertically
+      case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0); // Transposed
+      case 6 -> new AffineTransform(0, 1, -1, 0, height, 0); // Rotated 90 degrees clockwise
+      case 7 -> new AffineTransform(0, -1, -1, 0, height, width); // Transversed
+      case 8 -> new AffineTransform(0, -1, 1, 0, 0, width); // Rotated 90 degrees counterclockwise
+      default -> new AffineTransform();
+    };
+  }
+
+  private int readOrientation(MultipartFile file) throws IOException {
+    try (InputStream input = file.getInputStream()) {
+      return readOrientation(input.readNBytes(EXIF_SCAN_BYTES));
+    }
+  }
+
+  /**
+   * Finds the orientation tag in the EXIF segment of a JPEG.
+   *
+   * @return 1 to 8, or 1 (as stored) when there is no valid tag
+   */
+  static int readOrientation(byte[] jpeg) {
+    if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != 0xD8)
+      return 1;
+    try {
+      var buffer = ByteBuffer.wrap(jpeg);
+      int position = 2;
+      // Walks the segments up to the image data, each one is a marker and its length
+      while (position + 4 <= jpeg.length && (jpeg[position] & 0xFF) == 0xFF) {
+        int marker = jpeg[position + 1] & 0xFF;
+        if (marker == 0xDA || marker == 0xD9)
+          return 1;
+        int length = buffer.getShort(position + 2) & 0xFFFF;
+        if (marker == 0xE1 && length > 14 && isExif(jpeg, position + 4))
+          return orientationFromTiff(buffer, position + 10, Math.min(jpeg.length, position + 2 + length));
+        position += 2 + length;
+      }
+    } catch (IndexOutOfBoundsException e) {
+      // Truncated or broken EXIF, keep the pixels as they are
+    }
+    return 1;
+  }
+
+  private static boolean isExif(byte[] jpeg, int position) {
+    return position + 6 <= jpeg.length && jpeg[position] == 'E' && jpeg[position + 1] == 'x'
+        && jpeg[position + 2] == 'i' && jpeg[position + 3] == 'f' && jpeg[position + 4] == 0
+        && jpeg[position + 5] == 0;
+  }
+
+  // The TIFF header gives the byte order and the offset of the first directory, relative to the header
+  private static int orientationFromTiff(ByteBuffer jpeg, int tiff, int end) {
+    var buffer = jpeg.duplicate().limit(end);
+    if (buffer.get(tiff) == 'I' && buffer.get(tiff + 1) == 'I')
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    else if (buffer.get(tiff) != 'M' || buffer.get(tiff + 1) != 'M')
+      return 1;
+    int directory = tiff + buffer.getInt(tiff + 4);
+    int entries = buffer.getShort(directory) & 0xFFFF;
+    for (int i = 0; i < entries; i++) {
+      int entry = directory + 2 + i * 12;
+      if ((buffer.getShort(entry) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+        int orientation = buffer.getShort(entry + 8) & 0xFFFF;
+        return orientation >= 1 && orientation <= 8 ? orientation : 1;
+      }
+    }
+    return 1;
+  }
+
+  private byte[] encodeJpeg(BufferedImage image) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    var output = new ByteArrayOutputStream();
+    try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+      writer.setOutput(imageOutput);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return output.toByteArray();
+  }
+
+  private byte[] encodePng(BufferedImage image) throws IOException {
+    var output = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", output);
+    return output.toByteArray();
+  }
+
+  // GIFs may be animated, re-encoding them would keep only the first frame
+  private boolean isSupported(String contentType) {
+    return JPEG.equals(contentType) || "image/jpg".equals(contentType) || PNG.equals(contentType);
+  }
+}
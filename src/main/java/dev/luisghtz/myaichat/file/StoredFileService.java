@@ -0,0 +1,57 @@
+package dev.luisghtz.myaichat.file;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+
+import dev.luisghtz.myaichat.file.repositories.StoredFileRepository;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reference counts of the content addressed files. An upload takes a
+ * reference for the message it's attached to, and the message gives it back
+ * when it's deleted; the S3 object is only deleted with the last reference.
+ */
+@Service
+@RequiredArgsConstructor
+public class StoredFileService {
+  private final StoredFileRepository storedFileRepository;
+
+  public boolean isStored(String fileKey) {
+    return storedFileRepository.existsById(fileKey);
+  }
+
+  @Transactional
+  public void acquire(String fileKey) {
+    if (storedFileRepository.addReferences(fileKey, 1) > 0)
+      return;
+    // The row is inserted by the first reference, the one that loses the race increments it instead
+    if (storedFileRepository.insertFirstReference(fileKey) == 0)
+      storedFileRepository.addReferences(fileKey, 1);
+  }
+
+  /**
+   * Gives back the references of the deleted messages.
+   *
+   * @param referencesByKey number of deleted messages per file key
+   * @return the keys nothing references anymore, including files uploaded
+   *         before the reference counting (they have no row)
+   */
+  @Transactional
+  public List<String> release(Map<String, Long> referencesByKey) {
+    if (referencesByKey.isEmpty())
+      return List.of();
+    List<String> unreferenced = new ArrayList<>();
+    referencesByKey.forEach((fileKey, count) -> {
+      if (storedFileRepository.addReferences(fileKey, -count) == 0)
+        unreferenced.add(fileKey);
+    });
+    var released = storedFileRepository.findAllByFileKeyInAndRefCountLessThanEqual(referencesByKey.keySet(), 0L);
+    storedFileRepository.deleteAllInBatch(released);
+    released.forEach(storedFile -> unreferenced.add(storedFile.getFileKey()));
+    return unreferenced;
+  }
+}
@@ -0,0 +1,44 @@
+package dev.luisghtz.myaichat.file.entities;
+
+import java.util.Date;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outbox row for an S3 object that has to be deleted. It's written in the
+ * same transaction that removes the rows referencing the file and drained
+ * by {@link dev.luisghtz.myaichat.file.FileCleanupService}.
+ */
+@Entity
+@Table(name = "pending_file_deletion", indexes = @Index(name = "idx_pending_file_deletion_next_attempt", columnList = "nextAttemptAt"))
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class PendingFileDeletion {
+  @Id
+  @GeneratedValue(strategy = GenerationType.UUID)
+  private UUID id;
+  @Column(nullable = false, length = 1024)
+  private String fileKey;
+  @Builder.Default
+  @Column(nullable = false)
+  private Integer attempts = 0;
+  @Column(nullable = false)
+  private Date nextAttemptAt;
+  @Column(updatable = false, nullable = false)
+  private Date createdAt;
+  @Column(columnDefinition = "TEXT")
+  private String lastError;
+}
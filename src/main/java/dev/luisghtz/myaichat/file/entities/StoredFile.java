@@ -0,0 +1,30 @@
+package dev.luisghtz.myaichat.file.entities;
+
+import java.util.Date;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * S3 object stored under the hash of its content, with the number of
+ * messages referencing it.
+ */
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StoredFile {
+  @Id
+  @Column(length = 1024)
+  private String fileKey;
+  @Column(nullable = false)
+  private Long refCount;
+  @Column(updatable = false, nullable = false)
+  private Date createdAt;
+}
@@ -0,0 +1,7 @@
+package dev.luisghtz.myaichat.file.models;
+
+/**
+ * Re-encoded image ready to be uploaded in place of the original file.
+ */
+public record ProcessedImage(byte[] content, String contentType, String extension, int width, int height) {
+}
@@ -1,21 +1,39 @@
 package dev.luisghtz.myaichat.file.providers;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.ContentStreamProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
 
 @Service
 @Log4j2
 public class AwsS3Service {
+  // Hard limit of a single DeleteObjects request
+  static final int MAX_KEYS_PER_DELETE = 1000;
 
   @Value("${aws.s3.access-key}")
   private String accessKey;
@@ -23,30 +41,58 @@ public class AwsS3Service {
   private String secretKey;
   @Value("${aws.s3.bucket-name}")
   private String bucketName;
+  // Points both clients to an S3 compatible server (MinIO, LocalStack) when set
+  @Value("${aws.s3.endpoint:}")
+  private String endpoint;
+  @Value("${aws.s3.async.max-concurrency:32}")
+  private int asyncMaxConcurrency;
 
   private S3Client s3Client;
+  private S3AsyncClient s3AsyncClient;
 
   @PostConstruct
   public void init() {
     if (accessKey == null || secretKey == null) {
       throw new RuntimeException("AWS credentials not found in environment variables.");
     }
+    var credentialsProvider = StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
     // Initialize the S3 client with the region and credentials
-    this.s3Client = S3Client.builder()
+    var builder = S3Client.builder()
         .region(Region.MX_CENTRAL_1)
-        .credentialsProvider(StaticCredentialsProvider.create(
-            AwsBasicCredentials.create(accessKey, secretKey)))
-        .build();
+        .credentialsProvider(credentialsProvider);
+    var asyncBuilder = S3AsyncClient.builder()
+        .region(Region.MX_CENTRAL_1)
+        .credentialsProvider(credentialsProvider)
+        .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(Math.max(asyncMaxConcurrency, 1))
+            .connectionAcquisitionTimeout(Duration.ofSeconds(30)));
+    if (endpoint != null && !endpoint.isBlank()) {
+      builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+      asyncBuilder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+    }
+    this.s3Client = builder.build();
+    this.s3AsyncClient = asyncBuilder.build();
   }
 
-  public void uploadFile(String fileName, byte[] fileContent) {
-    // Implement the logic to upload the file to S3 using the s3Client
-    // For example:
+  @PreDestroy
+  public void close() {
+    if (s3Client != null)
+      s3Client.close();
+    if (s3AsyncClient != null)
+      s3AsyncClient.close();
+  }
+
+  /**
+   * Streams the content to S3 with a known length, so the file is never held
+   * in memory. The provider is asked for a new stream if the SDK retries.
+   */
+  public void uploadFile(String fileName, ContentStreamProvider content, long contentLength, String contentType) {
     s3Client.putObject(PutObjectRequest.builder()
         .bucket(bucketName)
         .key(fileName)
         .contentDisposition("inline")
-        .build(), RequestBody.fromBytes(fileContent));
+        .build(), RequestBody.fromContentProvider(content, contentLength,
+            contentType != null ? contentType : MediaType.APPLICATION_OCTET_STREAM_VALUE));
   }
 
   public void deleteFile(String fileName) {
@@ -56,4 +102,42 @@ public class AwsS3Service {
         .build();
     s3Client.deleteObject(delObjectRequest);
   }
+
+  /**
+   * Deletes the keys with one {@code DeleteObjects} request per
+   * {@value #MAX_KEYS_PER_DELETE} keys, sent in parallel on the async client.
+   *
+   * @return the keys S3 reported as not deleted; the future fails if a whole
+   *         request fails
+   */
+  public CompletableFuture<List<String>> deleteFiles(Collection<String> fileNames) {
+    var keys = List.copyOf(fileNames);
+    if (keys.isEmpty())
+      return CompletableFuture.completedFuture(List.of());
+
+    List<CompletableFuture<List<String>>> batches = new ArrayList<>();
+    for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE)
+      batches.add(deleteBatch(keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()))));
+
+    return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> batches.stream()
+            .flatMap(batch -> batch.join().stream())
+            .toList());
+  }
+
+  private CompletableFuture<List<String>> deleteBatch(List<String> keys) {
+    var request = DeleteObjectsRequest.builder()
+        .bucket(bucketName)
+        .delete(Delete.builder()
+            .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList())
+            .quiet(true)
+            .build())
+        .build();
+    return s3AsyncClient.deleteObjects(request)
+        .thenApply(response -> {
+          response.errors().forEach(error -> log.warn("Could not delete '{}' from S3: {} {}", error.key(),
+              error.code(), error.message()));
+          return response.errors().stream().map(S3Error::key).toList();
+        });
+  }
 }
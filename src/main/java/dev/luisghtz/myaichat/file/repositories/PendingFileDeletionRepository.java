@@ -0,0 +1,16 @@
+package dev.luisghtz.myaichat.file.repositories;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import dev.luisghtz.myaichat.file.entities.PendingFileDeletion;
+
+public interface PendingFileDeletionRepository extends JpaRepository<PendingFileDeletion, UUID> {
+  // Rows that reached the attempts limit stay in the table for inspection, but are no longer picked
+  List<PendingFileDeletion> findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+      Integer maxAttempts, Date now, Pageable pageable);
+}
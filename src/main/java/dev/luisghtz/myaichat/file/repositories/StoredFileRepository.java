@@ -0,0 +1,25 @@
+package dev.luisghtz.myaichat.file.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import dev.luisghtz.myaichat.file.entities.StoredFile;
+
+public interface StoredFileRepository extends JpaRepository<StoredFile, String> {
+  @Modifying
+  @Query("UPDATE StoredFile s SET s.refCount = s.refCount + :count WHERE s.fileKey = :fileKey")
+  int addReferences(@Param("fileKey") String fileKey, @Param("count") long count);
+
+  // Inserts nothing when another upload inserted the row first, without aborting the transaction
+  @Modifying
+  @Query(value = "INSERT INTO stored_file (file_key, ref_count, created_at) VALUES (:fileKey, 1, CURRENT_TIMESTAMP) "
+      + "ON CONFLICT DO NOTHING", nativeQuery = true)
+  int insertFirstReference(@Param("fileKey") String fileKey);
+
+  List<StoredFile> findAllByFileKeyInAndRefCountLessThanEqual(Collection<String> fileKeys, Long refCount);
+}
@@ -43,4 +43,28 @@ public class AppModelsTest {
     });
     assertTrue(exception.getMessage().contains("Invalid model"));
   }
+
+  @Test
+  void testGetMaxContextTokensReturnsModelBudget() {
+    assertEquals(16_000, AppModels.getMaxContextTokens(AppModels.GPT_4O_MINI.getKey()));
+    assertEquals(32_000, AppModels.getMaxContextTokens(AppModels.GPT_4_1.getKey()));
+    assertEquals(32_000, AppModels.getMaxContextTokens(AppModels.GEMINI_FLASH_2_5_PRO.getKey()));
+  }
+
+  @Test
+  void testGetMaxContextTokensFallsBackToDefaultOnUnknownModel() {
+    assertEquals(16_000, AppModels.getMaxContextTokens("unknown-model"));
+  }
+
+  @Test
+  void testGetMaxImageDimensionReturnsModelLimit() {
+    assertEquals(2_048, AppModels.getMaxImageDimension(AppModels.GPT_4O.getKey()));
+    assertEquals(1_536, AppModels.getMaxImageDimension(AppModels.GEMINI_FLASH_2_5_FLASH.getKey()));
+  }
+
+  @Test
+  void testGetMaxImageDimensionFallsBackToDefault() {
+    assertEquals(2_048, AppModels.getMaxImageDimension(null));
+    assertEquals(2_048, AppModels.getMaxImageDimension("unknown-model"));
+  }
 }
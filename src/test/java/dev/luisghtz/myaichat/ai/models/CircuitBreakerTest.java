@@ -0,0 +1,101 @@
+package dev.luisghtz.myaichat.ai.models;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+  private AtomicLong clock;
+  private CircuitBreaker breaker;
+
+  @BeforeEach
+  void setUp() {
+    clock = new AtomicLong();
+    breaker = new CircuitBreaker(4, 4, 0.5, 0.75, TimeUnit.SECONDS.toNanos(30), 2, clock::get);
+  }
+
+  @Test
+  @DisplayName("Should stay closed until the minimum calls are recorded")
+  void staysClosedBelowMinimumCalls() {
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onFailure();
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(breaker.tryAcquire()).isTrue();
+  }
+
+  @Test
+  @DisplayName("Should open when the failure rate reaches the threshold and reject calls")
+  void opensOnFailureRate() {
+    breaker.onSuccess();
+    breaker.onSuccess();
+    breaker.onFailure();
+    breaker.onFailure();
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(breaker.tryAcquire()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should open when most calls are slow")
+  void opensOnSlowCallRate() {
+    breaker.onSuccess();
+    breaker.onSlowCall();
+    breaker.onSlowCall();
+    breaker.onSlowCall();
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  @DisplayName("Should close after the trial calls succeed once the open duration passed")
+  void closesAfterSuccessfulTrialCalls() {
+    openBreaker();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    assertThat(breaker.tryAcquire()).isTrue();
+    assertThat(breaker.tryAcquire()).isTrue();
+    assertThat(breaker.tryAcquire()).isFalse();
+    breaker.onSuccess();
+    breaker.onSuccess();
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  @DisplayName("Should open again when a trial call fails")
+  void reopensOnFailedTrialCall() {
+    openBreaker();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    breaker.tryAcquire();
+    breaker.onFailure();
+
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(breaker.tryAcquire()).isFalse();
+  }
+
+  @Test
+  @DisplayName("Should give back a trial call that was ignored")
+  void ignoredTrialCallIsGivenBack() {
+    openBreaker();
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+    breaker.tryAcquire();
+    breaker.tryAcquire();
+
+    breaker.onIgnored();
+
+    assertThat(breaker.tryAcquire()).isTrue();
+  }
+
+  private void openBreaker() {
+    for (int i = 0; i < 4; i++)
+      breaker.onFailure();
+  }
+}
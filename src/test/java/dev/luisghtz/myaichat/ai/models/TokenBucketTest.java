@@ -0,0 +1,61 @@
+package dev.luisghtz.myaichat.ai.models;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+  private static final long MAX_WAIT = TimeUnit.SECONDS.toNanos(30);
+
+  private AtomicLong clock;
+  private TokenBucket bucket;
+
+  @BeforeEach
+  void setUp() {
+    clock = new AtomicLong();
+    bucket = new TokenBucket(6_000, clock::get);
+  }
+
+  @Test
+  @DisplayName("reserve - Should not wait while there are tokens available")
+  void reserve_WithinCapacity() {
+    assertThat(bucket.reserve(4_000, MAX_WAIT)).isZero();
+    assertThat(bucket.getAvailable()).isEqualTo(2_000);
+  }
+
+  @Test
+  @DisplayName("reserve - Should return the time until the missing tokens are refilled")
+  void reserve_WaitsForRefill() {
+    bucket.reserve(6_000, MAX_WAIT);
+
+    // 100 tokens per second
+    assertThat(bucket.reserve(500, MAX_WAIT)).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    assertThat(bucket.getAvailable()).isZero();
+  }
+
+  @Test
+  @DisplayName("reserve - Should take nothing when the wait is too long")
+  void reserve_RejectsLongWait() {
+    bucket.reserve(6_000, MAX_WAIT);
+
+    assertThat(bucket.reserve(5_000, MAX_WAIT)).isEqualTo(-1);
+    assertThat(bucket.getAvailable()).isZero();
+  }
+
+  @Test
+  @DisplayName("adjust - Should refund unused tokens without exceeding the capacity")
+  void adjust_RefundsUpToCapacity() {
+    bucket.reserve(3_000, MAX_WAIT);
+    bucket.adjust(1_000);
+    assertThat(bucket.getAvailable()).isEqualTo(4_000);
+
+    bucket.adjust(10_000);
+    assertThat(bucket.getAvailable()).isEqualTo(6_000);
+  }
+}
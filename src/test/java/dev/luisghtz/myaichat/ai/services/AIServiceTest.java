@@ -1,19 +1,27 @@
 package dev.luisghtz.myaichat.ai.services;
 
+import dev.luisghtz.myaichat.ai.models.AIProvider;
+import dev.luisghtz.myaichat.ai.models.CircuitBreaker;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,8 +33,8 @@ class AIServiceTest {
   @Mock
   private VertexGeminiService vertexGeminiService;
 
-  @InjectMocks
   private AIService aiService;
+  private SimpleMeterRegistry meterRegistry;
 
   private Chat chat;
   private List<AppMessage> messages;
@@ -34,6 +42,13 @@ class AIServiceTest {
   @BeforeEach
   void setUp() {
     chat = new Chat();
+    when(openAIService.getProvider()).thenReturn(AIProvider.OPENAI);
+    when(vertexGeminiService.getProvider()).thenReturn(AIProvider.GEMINI);
+    var registry = new ModelRoutingRegistry(List.of(openAIService, vertexGeminiService));
+    // Rate limiting disabled, requests go straight to the provider services
+    meterRegistry = new SimpleMeterRegistry();
+    aiService = new AIService(registry, new ProviderRateLimiter(meterRegistry), providerCircuitBreakers(),
+        new StreamHedger(meterRegistry, false, 3000L, "", 0.1, 10), meterRegistry);
     messages = Collections.singletonList(new AppMessage());
   }
 
@@ -118,4 +133,102 @@ class AIServiceTest {
     verify(openAIService, never()).generateTitle(any(), any());
     verify(vertexGeminiService, never()).generateTitle(any(), any());
   }
+
+  @Test
+  void getProvider_shouldResolveTheProviderOfTheModel() {
+    assertEquals("openai", aiService.getProvider("gpt-4o-mini"));
+    assertEquals("openai", aiService.getProvider("o4-mini"));
+    assertEquals("gemini", aiService.getProvider("gemini-2.0-flash"));
+    assertThrows(UnsupportedOperationException.class, () -> aiService.getProvider("claude-3"));
+  }
+
+  @Test
+  void getAssistantMessage_withFallbackEnabled_shouldAnswerWithTheFallbackModel() {
+    ReflectionTestUtils.setField(aiService, "fallbackEnabled", true);
+    chat.setModel("gpt-4o-mini");
+    chat.setMaxOutputTokens((short) 2000);
+    ChatResponse response = mock(ChatResponse.class);
+    when(openAIService.getAssistantMessage(messages, chat)).thenReturn(Flux.error(new RuntimeException("503 - down")));
+    when(vertexGeminiService.getAssistantMessage(eq(messages), argThat(fallbackChat -> fallbackChat != null
+        && "gemini-2.0-flash".equals(fallbackChat.getModel())))).thenReturn(Flux.just(response));
+
+    var responses = aiService.getAssistantMessage(messages, chat).collectList().block();
+
+    assertEquals(List.of(response), responses);
+    assertEquals("gpt-4o-mini", chat.getModel());
+    assertEquals(1, meterRegistry.counter("myaichat.ai.fallback", "from", "gpt-4o-mini", "to", "gemini-2.0-flash")
+        .count());
+  }
+
+  @Test
+  void getAssistantMessage_withFallbackDisabled_shouldPropagateTheError() {
+    chat.setModel("gpt-4o-mini");
+    when(openAIService.getAssistantMessage(messages, chat)).thenReturn(Flux.error(new RuntimeException("503 - down")));
+
+    assertThrows(RuntimeException.class, () -> aiService.getAssistantMessage(messages, chat).blockLast());
+
+    verify(vertexGeminiService, never()).getAssistantMessage(any(), any());
+  }
+
+  @Test
+  void getAssistantMessage_afterTheFirstChunk_shouldNotFallback() {
+    ReflectionTestUtils.setField(aiService, "fallbackEnabled", true);
+    chat.setModel("gpt-4o-mini");
+    ChatResponse response = mock(ChatResponse.class);
+    when(openAIService.getAssistantMessage(messages, chat))
+        .thenReturn(Flux.concat(Flux.just(response), Flux.error(new RuntimeException("Connection reset"))));
+
+    assertThrows(RuntimeException.class, () -> aiService.getAssistantMessage(messages, chat).blockLast());
+
+    verify(vertexGeminiService, never()).getAssistantMessage(any(), any());
+  }
+
+  @Test
+  void getAssistantMessage_withHedgingOnTheSiblingProvider_shouldAnswerWithTheFastestModel() {
+    aiService = new AIService(new ModelRoutingRegistry(List.of(openAIService, vertexGeminiService)),
+        new ProviderRateLimiter(meterRegistry), providerCircuitBreakers(),
+        new StreamHedger(meterRegistry, true, 50L, "", 1.0, 1.0), meterRegistry);
+    ReflectionTestUtils.setField(aiService, "hedgeWithSiblingProvider", true);
+    chat.setModel("gpt-4o-mini");
+    ChatResponse slowResponse = mock(ChatResponse.class);
+    ChatResponse fastResponse = mock(ChatResponse.class);
+    when(openAIService.getAssistantMessage(messages, chat))
+        .thenReturn(Flux.just(slowResponse).delayElements(Duration.ofSeconds(5)));
+    when(vertexGeminiService.getAssistantMessage(eq(messages), argThat(hedgeChat -> hedgeChat != null
+        && "gemini-2.0-flash".equals(hedgeChat.getModel())))).thenReturn(Flux.just(fastResponse));
+
+    var responses = aiService.getAssistantMessage(messages, chat).collectList().block(Duration.ofSeconds(2));
+
+    assertEquals(List.of(fastResponse), responses);
+    assertEquals(1, meterRegistry.counter("myaichat.ai.hedge", "model", "gpt-4o-mini", "outcome", "won").count());
+  }
+
+  @Test
+  void getAssistantMessage_shouldNotCountTheRateLimitWaitAsASlowCall() {
+    var rateLimiter = new ProviderRateLimiter(meterRegistry);
+    ReflectionTestUtils.setField(rateLimiter, "enabled", true);
+    ReflectionTestUtils.setField(rateLimiter, "openAiTokensPerMinute", 30_000L);
+    ReflectionTestUtils.setField(rateLimiter, "openAiRequestsPerMinute", 600L);
+    ReflectionTestUtils.setField(rateLimiter, "maxWaitMs", 1_000L);
+    // A single slow call opens the breaker
+    var breakers = new ProviderCircuitBreakers(1, 1, 0.5, 0.5, 100L, 10_000L, 30L, 1);
+    aiService = new AIService(new ModelRoutingRegistry(List.of(openAIService, vertexGeminiService)), rateLimiter,
+        breakers, new StreamHedger(meterRegistry, false, 3000L, "", 0.1, 10), meterRegistry);
+    ChatResponse response = mock(ChatResponse.class);
+    when(openAIService.getAssistantMessage(any(), any())).thenReturn(Flux.just(response));
+
+    // The first request empties the token bucket, the second one waits about 200 ms for it
+    chat.setModel("gpt-4o-mini");
+    chat.setMaxOutputTokens((short) 30_000);
+    aiService.getAssistantMessage(messages, chat).blockLast(Duration.ofSeconds(2));
+    chat.setMaxOutputTokens((short) 100);
+    var responses = aiService.getAssistantMessage(messages, chat).collectList().block(Duration.ofSeconds(2));
+
+    assertEquals(List.of(response), responses);
+    assertEquals(CircuitBreaker.State.CLOSED, breakers.getState(AIProvider.OPENAI));
+  }
+
+  private ProviderCircuitBreakers providerCircuitBreakers() {
+    return new ProviderCircuitBreakers(10, 10, 0.5, 1.0, 10_000L, 10_000L, 30L, 1);
+  }
 }
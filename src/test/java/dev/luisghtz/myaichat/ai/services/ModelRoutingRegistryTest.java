@@ -0,0 +1,64 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.luisghtz.myaichat.ai.models.AIProvider;
+import dev.luisghtz.myaichat.ai.models.AIProviderService;
+import dev.luisghtz.myaichat.ai.models.AppModels;
+
+class ModelRoutingRegistryTest {
+  private AIProviderService openAIService;
+  private AIProviderService geminiService;
+  private ModelRoutingRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    openAIService = mock(AIProviderService.class);
+    geminiService = mock(AIProviderService.class);
+    when(openAIService.getProvider()).thenReturn(AIProvider.OPENAI);
+    when(geminiService.getProvider()).thenReturn(AIProvider.GEMINI);
+    registry = new ModelRoutingRegistry(List.of(openAIService, geminiService));
+  }
+
+  @Test
+  @DisplayName("route - Should route every offered model to the service of its provider")
+  void route_AllModels() {
+    for (var appModel : AppModels.all()) {
+      var route = registry.route(appModel.getKey());
+      var expected = appModel.getProvider() == AIProvider.OPENAI ? openAIService : geminiService;
+      assertThat(route.service()).isSameAs(expected);
+      assertThat(route.capabilities()).isEqualTo(appModel.getCapabilities());
+    }
+    assertThat(registry.route(AppModels.O4_MINI.getKey()).capabilities().temperature()).isFalse();
+  }
+
+  @Test
+  @DisplayName("route - Should keep answering chats of models that are no longer offered")
+  void route_LegacyModels() {
+    assertThat(registry.route("gpt-3.5-turbo").service()).isSameAs(openAIService);
+    assertThat(registry.route("o1-preview").service()).isSameAs(openAIService);
+    assertThat(registry.route("gemini-1.5-pro").service()).isSameAs(geminiService);
+    assertThat(registry.route("gpt-3.5-turbo")).isSameAs(registry.route("gpt-3.5-turbo"));
+  }
+
+  @Test
+  @DisplayName("route - Should reject unknown models")
+  void route_UnsupportedModel() {
+    assertThrows(UnsupportedOperationException.class, () -> registry.route("claude-3"));
+  }
+
+  @Test
+  @DisplayName("constructor - Should fail at startup when a provider has no service")
+  void constructor_MissingProviderService() {
+    assertThrows(IllegalStateException.class, () -> new ModelRoutingRegistry(List.of(openAIService)));
+  }
+}
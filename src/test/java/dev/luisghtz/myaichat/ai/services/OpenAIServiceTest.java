@@ -1,6 +1,7 @@
 package dev.luisghtz.myaichat.ai.services;
 
 import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
 import dev.luisghtz.myaichat.ai.utils.ChatClientToolsUtil;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
@@ -248,6 +249,23 @@ class OpenAIServiceTest {
     assertEquals(titleResponse.getText(), response);
   }
 
+  @Test
+  @DisplayName("generateTitles - Should return the titles of the batch in order with one call")
+  void generateTitles_ShouldReturnTitlesInOrder() {
+    // Arrange
+    var requests = List.of(new TitleRequest("Hi", "Hello!"), new TitleRequest("Paella?", "Rice and saffron."));
+    ChatResponse mockResponse = new ChatResponse(
+        List.of(new Generation(new AssistantMessage("1. Greeting\n2. Paella Recipe"))));
+    when(openAIChatClient.prompt()).thenReturn(new ChatClientRequestMock(new CallResponseMock(mockResponse)));
+
+    // Act
+    List<String> titles = openAIService.generateTitles(requests);
+
+    // Assert
+    assertEquals(List.of("Greeting", "Paella Recipe"), titles);
+    verify(openAIChatClient, times(1)).prompt();
+  }
+
   @Test
   @DisplayName("sendNewMessage - Should return chat response with web search mode enabled")
   void sendNewMessage_ShouldReturnChatResponseWithWebSearchModeEnabled() {
@@ -345,4 +363,20 @@ class OpenAIServiceTest {
       openAIService.sendNewMessage(messages, chat);
     });
   }
-}
\ No newline at end of file
+
+  @Test
+  @DisplayName("summarizeHistory - Should return the updated summary")
+  void summarizeHistory_ShouldReturnUpdatedSummary() {
+    List<AppMessage> newMessages = List.of(
+        AppMessage.builder().role("User").content("My name is Ana").build(),
+        AppMessage.builder().role("Assistant").content("Nice to meet you, Ana").build());
+    var summaryMessage = new AssistantMessage("The user is called Ana.");
+    ChatResponse mockResponse = new ChatResponse(List.of(new Generation(summaryMessage)));
+    ChatClientRequestMock mockRequest = new ChatClientRequestMock(new CallResponseMock(mockResponse));
+    when(openAIChatClient.prompt()).thenReturn(mockRequest);
+
+    String summary = openAIService.summarizeHistory(null, newMessages);
+
+    assertEquals("The user is called Ana.", summary);
+  }
+}
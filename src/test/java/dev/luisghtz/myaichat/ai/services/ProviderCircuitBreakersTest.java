@@ -0,0 +1,95 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.luisghtz.myaichat.ai.models.AIProvider;
+import dev.luisghtz.myaichat.ai.models.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class ProviderCircuitBreakersTest {
+  private ProviderCircuitBreakers breakers;
+
+  @BeforeEach
+  void setUp() {
+    breakers = new ProviderCircuitBreakers(2, 2, 0.5, 1.0, 10_000L, 100L, 30L, 1);
+  }
+
+  @Test
+  @DisplayName("protect - Should open after failures and reject without calling the provider")
+  void protect_OpensAndRejects() {
+    var calls = new AtomicInteger();
+    for (int i = 0; i < 2; i++)
+      assertThrows(RuntimeException.class, () -> breakers.protect(AIProvider.OPENAI, () -> {
+        calls.incrementAndGet();
+        return Flux.<String>error(new RuntimeException("500 - Internal error"));
+      }).blockLast());
+
+    var exception = assertThrows(ResponseStatusException.class, () -> breakers.protect(AIProvider.OPENAI, () -> {
+      calls.incrementAndGet();
+      return Flux.just("chunk");
+    }).blockLast());
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(calls.get()).isEqualTo(2);
+    assertThat(breakers.getState(AIProvider.GEMINI)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  @DisplayName("protect - Should fail a call whose first chunk doesn't arrive in time")
+  void protect_FirstChunkTimeout() {
+    var stream = breakers.protect(AIProvider.GEMINI, () -> Flux.just("late").delayElements(Duration.ofSeconds(5)));
+
+    var exception = assertThrows(RuntimeException.class, () -> stream.blockLast(Duration.ofSeconds(2)));
+
+    assertThat(exception).hasCauseInstanceOf(TimeoutException.class);
+  }
+
+  @Test
+  @DisplayName("protect - Should not count the rejections of our own limits as failures")
+  void protect_IgnoresOwnRejections() {
+    for (int i = 0; i < 3; i++)
+      assertThrows(ResponseStatusException.class, () -> breakers.protect(AIProvider.OPENAI,
+          () -> Flux.<String>error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS))).blockLast());
+
+    assertThat(breakers.getState(AIProvider.OPENAI)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  @DisplayName("protect - Should not count the quota and client errors of the provider as failures")
+  void protect_IgnoresProviderClientErrors() {
+    for (int i = 0; i < 3; i++)
+      assertThrows(WebClientResponseException.class, () -> breakers.protect(AIProvider.OPENAI,
+          () -> Flux.<String>error(WebClientResponseException.create(429, "Too Many Requests", null, null, null)))
+          .blockLast());
+    assertThrows(RuntimeException.class, () -> breakers.protect(AIProvider.OPENAI,
+        () -> Flux.<String>error(new RuntimeException("400 - Invalid image"))).blockLast());
+
+    assertThat(breakers.getState(AIProvider.OPENAI)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  @DisplayName("health - Should report the state of every provider")
+  void health_ReportsStates() {
+    breakers.bindTo(new SimpleMeterRegistry());
+
+    var health = breakers.health();
+
+    assertThat(health.getStatus()).isEqualTo(Status.UP);
+    assertThat(health.getDetails()).containsEntry("openai", CircuitBreaker.State.CLOSED)
+        .containsEntry("gemini", CircuitBreaker.State.CLOSED);
+  }
+}
@@ -0,0 +1,156 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class ProviderRateLimiterTest {
+  private SimpleMeterRegistry meterRegistry;
+  private ProviderRateLimiter providerRateLimiter;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    providerRateLimiter = new ProviderRateLimiter(meterRegistry);
+    ReflectionTestUtils.setField(providerRateLimiter, "enabled", true);
+    ReflectionTestUtils.setField(providerRateLimiter, "openAiTokensPerMinute", 10_000L);
+    ReflectionTestUtils.setField(providerRateLimiter, "openAiRequestsPerMinute", 100L);
+    ReflectionTestUtils.setField(providerRateLimiter, "maxWaitMs", 1_000L);
+    ReflectionTestUtils.setField(providerRateLimiter, "maxRetries", 2);
+    ReflectionTestUtils.setField(providerRateLimiter, "baseBackoffMs", 1L);
+    ReflectionTestUtils.setField(providerRateLimiter, "maxBackoffMs", 5L);
+  }
+
+  @Test
+  @DisplayName("limit - Should retry a 429 received before the first chunk")
+  void limit_RetriesRateLimitBeforeFirstChunk() {
+    var attempts = new AtomicInteger();
+    var chunk = usageChunk(100);
+
+    var responses = providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000, () -> attempts.incrementAndGet() < 3
+        ? Flux.error(tooManyRequests())
+        : Flux.just(chunk)).collectList().block();
+
+    assertThat(responses).containsExactly(chunk);
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(meterRegistry.counter("myaichat.ai.ratelimit.retries", "provider", "openai").count()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("limit - Should take a request from the bucket for every retry")
+  void limit_RetriesDrawFromTheBuckets() {
+    ReflectionTestUtils.setField(providerRateLimiter, "openAiRequestsPerMinute", 3L);
+    var attempts = new AtomicInteger();
+
+    providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000, () -> attempts.incrementAndGet() < 3
+        ? Flux.error(tooManyRequests())
+        : Flux.just(usageChunk(100))).blockLast();
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000, () -> Flux.<ChatResponse>empty()).blockLast());
+
+    assertThat(attempts.get()).isEqualTo(3);
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+  }
+
+  @Test
+  @DisplayName("limit - Should not retry once a chunk was emitted")
+  void limit_DoesNotRetryAfterFirstChunk() {
+    var attempts = new AtomicInteger();
+    var chunk = usageChunk(0);
+
+    assertThrows(WebClientResponseException.class, () -> providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000,
+        () -> {
+          attempts.incrementAndGet();
+          return Flux.concat(Flux.just(chunk), Flux.error(tooManyRequests()));
+        }).blockLast());
+
+    assertThat(attempts.get()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("limit - Should not retry errors other than 429")
+  void limit_DoesNotRetryOtherErrors() {
+    var attempts = new AtomicInteger();
+
+    assertThrows(IllegalStateException.class, () -> providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000,
+        () -> {
+          attempts.incrementAndGet();
+          return Flux.<ChatResponse>error(new IllegalStateException("Bad request"));
+        }).blockLast());
+
+    assertThat(attempts.get()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("limit - Should give back the reserved tokens the response didn't use")
+  void limit_ReconcilesWithUsage() {
+    var chunk = usageChunk(1_000);
+    providerRateLimiter.limit("openai", "gpt-4o-mini", 9_000, () -> Flux.just(chunk)).blockLast();
+
+    // 9000 reserved, 1000 used: a second request of 9000 fits without waiting
+    var start = System.nanoTime();
+    providerRateLimiter.limit("openai", "gpt-4o-mini", 9_000, () -> Flux.just(chunk)).blockLast();
+
+    assertThat(System.nanoTime() - start).isLessThan(500_000_000L);
+  }
+
+  @Test
+  @DisplayName("limit - Should reject with 429 when the quota frees up too late")
+  void limit_RejectsWhenQuotaExhausted() {
+    providerRateLimiter.limit("openai", "gpt-4o-mini", 10_000, () -> Flux.<ChatResponse>never()).subscribe();
+
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> providerRateLimiter.limit("openai", "gpt-4o-mini", 5_000, () -> Flux.<ChatResponse>empty()).blockLast());
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(meterRegistry.counter("myaichat.ai.ratelimit.rejected", "provider", "openai").count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("limit - Should call the provider directly when disabled")
+  void limit_Disabled() {
+    ReflectionTestUtils.setField(providerRateLimiter, "enabled", false);
+    var source = Flux.<ChatResponse>empty();
+
+    assertThat(providerRateLimiter.limit("openai", "gpt-4o-mini", 1_000_000, () -> source)).isSameAs(source);
+  }
+
+  @Test
+  @DisplayName("isRateLimited - Should recognize the 429 errors of the providers")
+  void isRateLimited_RecognizesProviderErrors() {
+    assertThat(ProviderRateLimiter.isRateLimited(new RuntimeException(tooManyRequests()))).isTrue();
+    assertThat(ProviderRateLimiter.isRateLimited(new RuntimeException("429 - Rate limit reached"))).isTrue();
+    assertThat(ProviderRateLimiter.isRateLimited(new RuntimeException("RESOURCE_EXHAUSTED: Quota exceeded")))
+        .isTrue();
+    assertThat(ProviderRateLimiter.isRateLimited(new RuntimeException("500 - Internal error"))).isFalse();
+  }
+
+  private WebClientResponseException tooManyRequests() {
+    return WebClientResponseException.create(429, "Too Many Requests", new HttpHeaders(), new byte[0],
+        StandardCharsets.UTF_8);
+  }
+
+  private ChatResponse usageChunk(int totalTokens) {
+    var chunk = mock(ChatResponse.class, Answers.RETURNS_DEEP_STUBS);
+    when(chunk.getMetadata().getUsage().getTotalTokens()).thenReturn(totalTokens);
+    return chunk;
+  }
+}
@@ -0,0 +1,139 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.prompts.entities.CustomPrompt;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class ResponseCacheTest {
+  private SimpleMeterRegistry meterRegistry;
+  private ResponseCache responseCache;
+  private Chat chat;
+  private AtomicInteger providerCalls;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    responseCache = new ResponseCache(meterRegistry, true, 10_000L, 60L, 1000, 4);
+    responseCache.bindTo(meterRegistry);
+    chat = Chat.builder().model("gpt-4o-mini").maxOutputTokens((short) 1000).isWebSearchMode(false).build();
+    providerCalls = new AtomicInteger();
+  }
+
+  @Test
+  @DisplayName("lookup - Should replay a repeated prompt in chunks with the original usage")
+  void lookup_ReplaysRepeatedPrompt() {
+    cached(messages("What is Java?"), chat, provider()).blockLast();
+
+    var replay = cached(messages("  What is \n Java? "), chat, provider()).collectList().block();
+
+    assertThat(providerCalls.get()).isEqualTo(1);
+    assertThat(replay).extracting(response -> response.getResult().getOutput().getText())
+        .containsExactly("A la", "ngua", "ge", "");
+    assertThat(replay.get(3).getMetadata().getUsage().getTotalTokens()).isEqualTo(15);
+    assertThat(replay.get(0).getMetadata().getUsage().getTotalTokens()).isZero();
+    assertThat(meterRegistry.counter("myaichat.ai.response-cache.tokens.saved", "model", "gpt-4o-mini").count())
+        .isEqualTo(15);
+    assertThat(meterRegistry.get("cache.gets").tag("cache", "ai.responses").tag("result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("lookup - Should not share answers between models or custom prompts")
+  void lookup_KeyIncludesModelAndPrompt() {
+    cached(messages("What is Java?"), chat, provider()).blockLast();
+    var otherModel = chat.toBuilder().model("gemini-2.0-flash").build();
+    var otherPrompt = chat.toBuilder()
+        .customPrompt(CustomPrompt.builder().content("Answer like a pirate").build()).build();
+
+    cached(messages("What is Java?"), otherModel, provider()).blockLast();
+    cached(messages("What is Java?"), otherPrompt, provider()).blockLast();
+
+    assertThat(providerCalls.get()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("lookup - Should keep the case of the prompt in the key")
+  void lookup_KeyKeepsCase() {
+    cached(messages("Is it in the US?"), chat, provider()).blockLast();
+    cached(messages("Is it in the us?"), chat, provider()).blockLast();
+
+    assertThat(providerCalls.get()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("lookup - Should not cache web search chats")
+  void lookup_SkipsWebSearch() {
+    chat.setIsWebSearchMode(true);
+
+    cached(messages("Latest news"), chat, provider()).blockLast();
+    cached(messages("Latest news"), chat, provider()).blockLast();
+
+    assertThat(providerCalls.get()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("lookup - Should not cache answers that failed before completing")
+  void lookup_SkipsFailedAnswers() {
+    Supplier<Flux<ChatResponse>> failing = () -> {
+      providerCalls.incrementAndGet();
+      return Flux.concat(Flux.just(chunk("A la")), Flux.error(new RuntimeException("Connection reset")));
+    };
+
+    assertThrows(RuntimeException.class, () -> cached(messages("Q"), chat, failing).blockLast());
+    cached(messages("Q"), chat, provider()).blockLast();
+
+    assertThat(providerCalls.get()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("lookup - Should call the provider directly when disabled")
+  void lookup_Disabled() {
+    responseCache = new ResponseCache(meterRegistry, false, 10_000L, 60L, 1000, 4);
+
+    cached(messages("What is Java?"), chat, provider()).blockLast();
+    cached(messages("What is Java?"), chat, provider()).blockLast();
+
+    assertThat(providerCalls.get()).isEqualTo(2);
+  }
+
+  // The provider is only called when the lookup misses, as MessagesService does
+  private Flux<ChatResponse> cached(List<AppMessage> messages, Chat chat, Supplier<Flux<ChatResponse>> provider) {
+    return responseCache.lookup(messages, chat)
+        .orElseGet(() -> responseCache.record(messages, chat, Flux.defer(provider)));
+  }
+
+  private Supplier<Flux<ChatResponse>> provider() {
+    return () -> {
+      providerCalls.incrementAndGet();
+      var usage = new DefaultUsage(5, 10, 15);
+      return Flux.just(chunk("A language"), new ChatResponse(List.of(new Generation(new AssistantMessage(""))),
+          ChatResponseMetadata.builder().usage(usage).build()));
+    };
+  }
+
+  private ChatResponse chunk(String text) {
+    return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+  }
+
+  private List<AppMessage> messages(String question) {
+    return List.of(AppMessage.builder().role("User").content(question).build());
+  }
+}
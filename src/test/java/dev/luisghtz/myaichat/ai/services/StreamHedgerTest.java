@@ -0,0 +1,119 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class StreamHedgerTest {
+  private static final String MODEL = "gpt-4o-mini";
+
+  private SimpleMeterRegistry meterRegistry;
+  private StreamHedger streamHedger;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    streamHedger = new StreamHedger(meterRegistry, true, 50L, "", 1.0, 1.0);
+  }
+
+  @Test
+  @DisplayName("hedge - Should not send the hedged request when the first chunk arrives in time")
+  void hedge_FastPrimary() {
+    var hedgeCalls = new AtomicInteger();
+
+    var chunks = streamHedger.hedge(MODEL, () -> Flux.just("a", "b"), () -> {
+      hedgeCalls.incrementAndGet();
+      return Flux.just("hedge");
+    }).collectList().block(Duration.ofSeconds(2));
+
+    assertThat(chunks).containsExactly("a", "b");
+    assertThat(hedgeCalls.get()).isZero();
+  }
+
+  @Test
+  @DisplayName("hedge - Should stream the hedged request and cancel the late one")
+  void hedge_HedgeWins() {
+    var primaryCancelled = new AtomicBoolean();
+
+    var chunks = streamHedger.hedge(MODEL,
+        () -> Flux.just("slow").delayElements(Duration.ofSeconds(5)).doOnCancel(() -> primaryCancelled.set(true)),
+        () -> Flux.just("fast", "answer"))
+        .collectList().block(Duration.ofSeconds(2));
+
+    assertThat(chunks).containsExactly("fast", "answer");
+    assertThat(primaryCancelled).isTrue();
+    assertThat(count("launched")).isEqualTo(1);
+    assertThat(count("won")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("hedge - Should keep the primary stream when it answers before the hedged request")
+  void hedge_PrimaryWinsAfterLaunch() {
+    var chunks = streamHedger.hedge(MODEL,
+        () -> Flux.just("primary").delayElements(Duration.ofMillis(150)),
+        () -> Flux.just("hedge").delayElements(Duration.ofSeconds(5)))
+        .collectList().block(Duration.ofSeconds(2));
+
+    assertThat(chunks).containsExactly("primary");
+    assertThat(count("lost")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("hedge - Should ignore the errors of the hedged request")
+  void hedge_HedgeErrorIgnored() {
+    var chunks = streamHedger.hedge(MODEL,
+        () -> Flux.just("primary").delayElements(Duration.ofMillis(150)),
+        () -> Flux.<String>error(new RuntimeException("503 - down")))
+        .collectList().block(Duration.ofSeconds(2));
+
+    assertThat(chunks).containsExactly("primary");
+  }
+
+  @Test
+  @DisplayName("hedge - Should propagate the errors of the primary request")
+  void hedge_PrimaryError() {
+    var stream = streamHedger.hedge(MODEL, () -> Flux.<String>error(new IllegalStateException("boom")),
+        () -> Flux.just("hedge"));
+
+    assertThrows(IllegalStateException.class, () -> stream.blockLast(Duration.ofSeconds(2)));
+  }
+
+  @Test
+  @DisplayName("hedge - Should skip the hedged request when the budget is spent")
+  void hedge_BudgetSpent() {
+    streamHedger = new StreamHedger(meterRegistry, true, 50L, "", 0.5, 1.0);
+    var hedgeCalls = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++)
+      streamHedger.hedge(MODEL, () -> Flux.just("slow").delayElements(Duration.ofMillis(150)), () -> {
+        hedgeCalls.incrementAndGet();
+        return Flux.just("hedge");
+      }).blockLast(Duration.ofSeconds(2));
+
+    assertThat(hedgeCalls.get()).isEqualTo(1);
+    assertThat(count("skipped")).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("isEnabled - Should only hedge the configured models")
+  void isEnabled_ConfiguredModels() {
+    streamHedger = new StreamHedger(meterRegistry, true, 50L, "gemini-2.0-flash, gpt-4o-mini", 1.0, 1.0);
+
+    assertThat(streamHedger.isEnabled("gpt-4o-mini")).isTrue();
+    assertThat(streamHedger.isEnabled("gpt-4.1")).isFalse();
+  }
+
+  private double count(String outcome) {
+    return meterRegistry.counter("myaichat.ai.hedge", "model", MODEL, "outcome", outcome).count();
+  }
+}
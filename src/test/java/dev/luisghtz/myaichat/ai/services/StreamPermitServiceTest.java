@@ -0,0 +1,139 @@
+package dev.luisghtz.myaichat.ai.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class StreamPermitServiceTest {
+  private SimpleMeterRegistry meterRegistry;
+  private StreamPermitService streamPermitService;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    streamPermitService = new StreamPermitService(meterRegistry);
+    ReflectionTestUtils.setField(streamPermitService, "globalMax", 2);
+    ReflectionTestUtils.setField(streamPermitService, "perUserMax", 1);
+    ReflectionTestUtils.setField(streamPermitService, "perProviderMax", 2);
+    ReflectionTestUtils.setField(streamPermitService, "maxQueueSize", 2);
+    ReflectionTestUtils.setField(streamPermitService, "maxWaitMs", 5_000L);
+    streamPermitService.bindTo(meterRegistry);
+  }
+
+  @Test
+  @DisplayName("acquire - Should grant a permit right away while under the limits")
+  void acquire_GrantsUnderLimits() {
+    var permit = streamPermitService.acquire("user-1", "openai").block();
+
+    assertThat(permit).isNotNull();
+    assertThat(meterRegistry.get("myaichat.ai.permits.active").gauge().value()).isEqualTo(1);
+    permit.release();
+    permit.release();
+    assertThat(streamPermitService.activePermits()).isZero();
+  }
+
+  @Test
+  @DisplayName("acquire - Should queue the user's next stream and grant it when the first one ends")
+  void acquire_QueuesOverUserLimit() {
+    var first = streamPermitService.acquire("user-1", "openai").block();
+    AtomicReference<StreamPermitService.Permit> second = new AtomicReference<>();
+
+    streamPermitService.acquire("user-1", "openai").subscribe(second::set);
+
+    assertThat(second.get()).isNull();
+    assertThat(meterRegistry.get("myaichat.ai.permits.queue.depth").gauge().value()).isEqualTo(1);
+    first.release();
+    assertThat(second.get()).isNotNull();
+    assertThat(streamPermitService.queueDepth()).isZero();
+  }
+
+  @Test
+  @DisplayName("acquire - Should not let a waiter blocked by its own limit hold back other users")
+  void acquire_SkipsWaitersBlockedByTheirLimit() {
+    var user1 = streamPermitService.acquire("user-1", "openai").block();
+    var user2 = streamPermitService.acquire("user-2", "openai").block();
+    AtomicReference<StreamPermitService.Permit> user1Queued = new AtomicReference<>();
+    AtomicReference<StreamPermitService.Permit> user3 = new AtomicReference<>();
+    streamPermitService.acquire("user-1", "openai").subscribe(user1Queued::set);
+    streamPermitService.acquire("user-3", "openai").subscribe(user3::set);
+
+    user2.release();
+
+    assertThat(user1Queued.get()).isNull();
+    assertThat(user3.get()).isNotNull();
+    user1.release();
+    assertThat(user1Queued.get()).isNotNull();
+  }
+
+  @Test
+  @DisplayName("acquire - Should reject with 429 when the user already has streams waiting")
+  void acquire_RejectsWhenSaturated() {
+    streamPermitService.acquire("user-1", "openai").block();
+    streamPermitService.acquire("user-1", "openai").subscribe();
+
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> streamPermitService.acquire("user-1", "openai").block());
+    var fastPath = assertThrows(ResponseStatusException.class,
+        () -> streamPermitService.ensureCapacity("user-1", "openai"));
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(fastPath.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(meterRegistry.counter("myaichat.ai.permits.rejected", "reason", "saturated").count())
+        .isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("acquire - Should reject with 429 and leave the queue when the wait times out")
+  void acquire_TimesOut() {
+    ReflectionTestUtils.setField(streamPermitService, "maxWaitMs", 50L);
+    streamPermitService.acquire("user-1", "openai").block();
+
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> streamPermitService.acquire("user-1", "openai").block(Duration.ofSeconds(1)));
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(streamPermitService.queueDepth()).isZero();
+    assertThat(meterRegistry.counter("myaichat.ai.permits.rejected", "reason", "timeout").count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("withPermit - Should release the permit when the stream completes or fails")
+  void withPermit_ReleasesOnTermination() {
+    streamPermitService.withPermit("user-1", "openai", () -> Flux.just("a", "b")).blockLast();
+    assertThrows(RuntimeException.class, () -> streamPermitService
+        .withPermit("user-1", "openai", () -> Flux.error(new RuntimeException("Provider failed"))).blockLast());
+
+    assertThat(streamPermitService.activePermits()).isZero();
+    assertThat(meterRegistry.timer("myaichat.ai.permits.wait").count()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("withPermit - Should not subscribe the source until the permit is granted")
+  void withPermit_WaitsForPermit() {
+    var first = streamPermitService.acquire("user-1", "openai").block();
+    var subscribed = new AtomicReference<Boolean>(false);
+
+    var disposable = streamPermitService.withPermit("user-1", "openai", () -> {
+      subscribed.set(true);
+      return Flux.<String>never();
+    }).subscribe();
+
+    assertThat(subscribed.get()).isFalse();
+    first.release();
+    assertThat(subscribed.get()).isTrue();
+    disposable.dispose();
+    assertThat(streamPermitService.activePermits()).isZero();
+  }
+}
@@ -1,6 +1,7 @@
 package dev.luisghtz.myaichat.ai.services;
 
 import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
 import dev.luisghtz.myaichat.ai.utils.ChatClientToolsUtil;
 import dev.luisghtz.myaichat.ai.utils.MessagesUtil;
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
@@ -353,6 +354,23 @@ class VertexGeminiServiceTest {
     assertEquals(expectedTitle, actualTitle);
   }
 
+  @Test
+  @DisplayName("generateTitles - Should return the titles of the batch in order with one call")
+  void generateTitles_ShouldReturnTitlesInOrder() {
+    // Arrange
+    var requests = List.of(new TitleRequest("Hi", "Hello!"), new TitleRequest("Paella?", "Rice and saffron."));
+    ChatResponse mockResponse = new ChatResponse(
+        List.of(new Generation(new AssistantMessage("1. Greeting\n2. Paella Recipe"))));
+    when(mockVertextAIChatClient.prompt()).thenReturn(new ChatClientRequestMock(new CallResponseMock(mockResponse)));
+
+    // Act
+    List<String> titles = vertexGeminiService.generateTitles(requests);
+
+    // Assert
+    assertEquals(List.of("Greeting", "Paella Recipe"), titles);
+    verify(mockVertextAIChatClient, times(1)).prompt();
+  }
+
   @Test
   @DisplayName("sendNewMessage - Should return chat response with web search mode enabled")
   void sendNewMessage_ShouldReturnChatResponseWithWebSearchModeEnabled() {
@@ -450,4 +468,20 @@ class VertexGeminiServiceTest {
       vertexGeminiService.sendNewMessage(messages, chat);
     });
   }
-}
\ No newline at end of file
+
+  @Test
+  @DisplayName("summarizeHistory - Should return the updated summary")
+  void summarizeHistory_ShouldReturnUpdatedSummary() {
+    List<AppMessage> newMessages = List.of(
+        AppMessage.builder().role("User").content("I live in Monterrey").build(),
+        AppMessage.builder().role("Assistant").content("Monterrey is a great city").build());
+    ChatResponse expectedChatResponse = new ChatResponse(
+        List.of(new Generation(new AssistantMessage("The user lives in Monterrey."))));
+    ChatClientRequestMock chatClientRequestMock = new ChatClientRequestMock(new CallResponseMock(expectedChatResponse));
+    when(mockVertextAIChatClient.prompt()).thenReturn(chatClientRequestMock);
+
+    String summary = vertexGeminiService.summarizeHistory("Previous summary", newMessages);
+
+    assertEquals("The user lives in Monterrey.", summary);
+  }
+}
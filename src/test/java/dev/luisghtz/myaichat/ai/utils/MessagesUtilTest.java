@@ -1,5 +1,7 @@
 package dev.luisghtz.myaichat.ai.utils;
 
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
 import dev.luisghtz.myaichat.prompts.entities.CustomPrompt;
 import dev.luisghtz.myaichat.prompts.entities.PromptMessage;
@@ -14,6 +16,7 @@ import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -152,4 +155,67 @@ class MessagesUtilTest {
       assertEquals("You are a helpful assistant.", text);
     }
   }
-}
\ No newline at end of file
+
+  @Nested
+  @DisplayName("History summary Tests")
+  class HistorySummaryTests {
+
+    @Test
+    @DisplayName("Should append the history summary to the system message when the chat has one")
+    void addSystemMessage_withHistorySummary_appendsSummary() {
+      chat.setHistorySummary("The user is planning a trip to Japan.");
+
+      MessagesUtil.addSystemMessage(chat, messages);
+
+      assertEquals(1, messages.size());
+      String text = messages.get(0).getText();
+      assertTrue(text.startsWith("You are a helpful assistant."));
+      assertTrue(text.contains("--- SUMMARY OF THE EARLIER CONVERSATION ---"));
+      assertTrue(text.contains("The user is planning a trip to Japan."));
+    }
+
+    @Test
+    @DisplayName("Should build the summary request with the current summary and the new messages")
+    void buildHistorySummaryRequest_includesSummaryAndTranscript() {
+      var request = MessagesUtil.buildHistorySummaryRequest("Old summary", List.of(
+          AppMessage.builder().role("User").content("Hi").build(),
+          AppMessage.builder().role("Assistant").content("Hello!").build()));
+
+      assertTrue(request.contains("Old summary"));
+      assertTrue(request.contains("User: Hi"));
+      assertTrue(request.contains("Assistant: Hello!"));
+    }
+
+    @Test
+    @DisplayName("Should use 'None' when there is no previous summary")
+    void buildHistorySummaryRequest_noSummary_usesNone() {
+      var request = MessagesUtil.buildHistorySummaryRequest(null, List.of());
+
+      assertTrue(request.contains("Current summary:\nNone"));
+    }
+  }
+
+  @Nested
+  @DisplayName("Title batch Tests")
+  class TitleBatchTests {
+
+    @Test
+    @DisplayName("Should number every conversation of the batch")
+    void buildTitlesRequest_numbersConversations() {
+      var request = MessagesUtil.buildTitlesRequest(List.of(
+          new TitleRequest("Hi", "Hello!"),
+          new TitleRequest("Paella?", "Rice and saffron.")));
+
+      assertTrue(request.startsWith("Conversation 1:\nUser: Hi\nAssistant: Hello!"));
+      assertTrue(request.contains("Conversation 2:\nUser: Paella?\nAssistant: Rice and saffron."));
+    }
+
+    @Test
+    @DisplayName("Should read the titles by number and leave the missing ones null")
+    void parseTitles_readsNumberedLines() {
+      var titles = MessagesUtil.parseTitles("Here are the titles:\n2) Paella Recipe\n1. Greeting\n7. Extra", 3);
+
+      assertEquals(Arrays.asList("Greeting", "Paella Recipe", null), titles);
+    }
+  }
+}
@@ -88,6 +88,12 @@ class TranscribeServiceTest {
     void transcribe_ShouldThrowRuntimeExceptionWhenMultipartFileThrowsIOException() throws Exception {
       // Arrange
       MultipartFile faultyFile = AudioTestMocks.createFaultyMockAudioFile();
+      // The model reads the audio resource when it builds the request
+      when(audioTranscriptionModel.call(any(AudioTranscriptionPrompt.class)))
+          .thenAnswer(invocation -> {
+            invocation.<AudioTranscriptionPrompt>getArgument(0).getInstructions().getContentAsByteArray();
+            return audioTranscriptionResponse;
+          });
 
       // Act & Assert
       RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -144,6 +150,7 @@ class TranscribeServiceTest {
         // Verify that the prompt contains our audio resource
         assertNotNull(prompt);
         assertNotNull(prompt.getInstructions());
+        assertEquals(mockAudioFile.getOriginalFilename(), prompt.getInstructions().getFilename());
         assertNotNull(prompt.getOptions());
         return true;
       }));
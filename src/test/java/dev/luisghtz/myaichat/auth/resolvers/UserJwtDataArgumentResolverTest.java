@@ -1,5 +1,7 @@
 package dev.luisghtz.myaichat.auth.resolvers;
 
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import dev.luisghtz.myaichat.auth.annotation.UserJwtData;
 import dev.luisghtz.myaichat.auth.dtos.UserJwtDataDto;
 import dev.luisghtz.myaichat.auth.services.JwtService;
@@ -13,6 +15,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.core.MethodParameter;
 import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.method.support.ModelAndViewContainer;
 import org.springframework.web.bind.support.WebDataBinderFactory;
 
@@ -79,7 +82,7 @@ class UserJwtDataArgumentResolverTest {
         @DisplayName("Should return null if JWT token is invalid")
         void shouldReturnNullIfJwtInvalid() {
             when(webRequest.getHeader("Authorization")).thenReturn("Bearer invalidtoken");
-            when(jwtService.validateToken("invalidtoken")).thenReturn(false);
+            when(jwtService.decodeToken("invalidtoken")).thenReturn(null);
             Object result = resolver.resolveArgument(methodParameter, mavContainer, webRequest, binderFactory);
             assertNull(result);
         }
@@ -88,11 +91,9 @@ class UserJwtDataArgumentResolverTest {
         @DisplayName("Should return UserJwtDataDto if JWT token is valid")
         void shouldReturnDtoIfJwtValid() {
             String token = "validtoken";
+            DecodedJWT decodedToken = mockDecodedToken();
             when(webRequest.getHeader("Authorization")).thenReturn("Bearer " + token);
-            when(jwtService.validateToken(token)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(token)).thenReturn("123");
-            when(jwtService.getUsernameFromToken(token)).thenReturn("testuser");
-            when(jwtService.getEmailFromToken(token)).thenReturn("test@example.com");
+            when(jwtService.decodeToken(token)).thenReturn(decodedToken);
 
             Object result = resolver.resolveArgument(methodParameter, mavContainer, webRequest, binderFactory);
             assertNotNull(result);
@@ -102,5 +103,32 @@ class UserJwtDataArgumentResolverTest {
             assertEquals("testuser", dto.getUsername());
             assertEquals("test@example.com", dto.getEmail());
         }
+
+        @Test
+        @DisplayName("Should reuse the token decoded by the authentication filter")
+        void shouldReuseDecodedTokenFromRequest() {
+            DecodedJWT decodedToken = mockDecodedToken();
+            when(webRequest.getHeader("Authorization")).thenReturn("Bearer validtoken");
+            when(webRequest.getAttribute(JwtService.DECODED_TOKEN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST))
+                    .thenReturn(decodedToken);
+
+            UserJwtDataDto dto = (UserJwtDataDto) resolver.resolveArgument(methodParameter, mavContainer, webRequest,
+                    binderFactory);
+
+            assertEquals("123", dto.getId());
+            verifyNoInteractions(jwtService);
+        }
+
+        private DecodedJWT mockDecodedToken() {
+            DecodedJWT decodedToken = mock(DecodedJWT.class);
+            Claim username = mock(Claim.class);
+            Claim email = mock(Claim.class);
+            when(decodedToken.getSubject()).thenReturn("123");
+            when(username.asString()).thenReturn("testuser");
+            when(email.asString()).thenReturn("test@example.com");
+            when(decodedToken.getClaim("username")).thenReturn(username);
+            when(decodedToken.getClaim("email")).thenReturn(email);
+            return decodedToken;
+        }
     }
 }
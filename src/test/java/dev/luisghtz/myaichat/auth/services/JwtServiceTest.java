@@ -1,5 +1,6 @@
 package dev.luisghtz.myaichat.auth.services;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import dev.luisghtz.myaichat.auth.entities.Role;
 import dev.luisghtz.myaichat.auth.entities.User;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,8 +9,12 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,9 +30,7 @@ class JwtServiceTest {
 
     @BeforeEach
     void setUp() {
-        jwtService = new JwtService();
-        ReflectionTestUtils.setField(jwtService, "jwtSecret", testSecret);
-        ReflectionTestUtils.setField(jwtService, "jwtExpiration", testExpiration);
+        jwtService = new JwtService(testSecret, testExpiration, 10000L, 300L);
 
         // Setup test user
         Role userRole = new Role();
@@ -215,9 +218,8 @@ class JwtServiceTest {
         @DisplayName("validateToken - Should return false for token with wrong signature")
         void testValidateToken_ShouldReturnFalseForTokenWithWrongSignature() {
             // Arrange
-            String token = jwtService.generateToken(testUser);
-            // Change the secret to simulate wrong signature
-            ReflectionTestUtils.setField(jwtService, "jwtSecret", "different-secret");
+            // Signed with another secret to simulate wrong signature
+            String token = new JwtService("different-secret", testExpiration, 10000L, 300L).generateToken(testUser);
 
             // Act
             boolean isValid = jwtService.validateToken(token);
@@ -231,11 +233,7 @@ class JwtServiceTest {
         void testValidateToken_ShouldReturnFalseForExpiredToken() {
             // Arrange
             // Set expiration to a negative value to create an expired token
-            ReflectionTestUtils.setField(jwtService, "jwtExpiration", -1000L);
-            String expiredToken = jwtService.generateToken(testUser);
-            
-            // Reset expiration to normal
-            ReflectionTestUtils.setField(jwtService, "jwtExpiration", testExpiration);
+            String expiredToken = new JwtService(testSecret, -1000L, 10000L, 300L).generateToken(testUser);
 
             // Act
             boolean isValid = jwtService.validateToken(expiredToken);
@@ -404,9 +402,7 @@ class JwtServiceTest {
             String token = jwtService.generateToken(testUser);
             
             // Create new service with different secret
-            JwtService differentSecretService = new JwtService();
-            ReflectionTestUtils.setField(differentSecretService, "jwtSecret", "different-secret");
-            ReflectionTestUtils.setField(differentSecretService, "jwtExpiration", testExpiration);
+            JwtService differentSecretService = new JwtService("different-secret", testExpiration, 10000L, 300L);
 
             // Act
             boolean isValid = differentSecretService.validateToken(token);
@@ -422,9 +418,7 @@ class JwtServiceTest {
             String token = jwtService.generateToken(testUser);
             
             // Create new service with different secret
-            JwtService differentSecretService = new JwtService();
-            ReflectionTestUtils.setField(differentSecretService, "jwtSecret", "different-secret");
-            ReflectionTestUtils.setField(differentSecretService, "jwtExpiration", testExpiration);
+            JwtService differentSecretService = new JwtService("different-secret", testExpiration, 10000L, 300L);
 
             // Act
             String extractedUserId = differentSecretService.getUserIdFromToken(token);
@@ -435,4 +429,78 @@ class JwtServiceTest {
             assertNull(extractedUsername);
         }
     }
+
+    @Nested
+    @DisplayName("Decoded Token Cache Tests")
+    class DecodedTokenCacheTests {
+
+        @BeforeEach
+        void setUpCache() {
+            jwtService = new JwtService(testSecret, testExpiration, 100L, 300L);
+        }
+
+        @Test
+        @DisplayName("decodeToken - Should verify the token once and reuse the decoded claims")
+        void testDecodeToken_ShouldReuseDecodedClaims() {
+            // Arrange
+            String token = jwtService.generateToken(testUser);
+
+            // Act
+            DecodedJWT first = jwtService.decodeToken(token);
+            DecodedJWT second = jwtService.decodeToken(token);
+
+            // Assert
+            assertNotNull(first);
+            assertSame(first, second);
+            assertEquals(testUser.getId().toString(), jwtService.getUserIdFromToken(token));
+        }
+
+        @Test
+        @DisplayName("decodeToken - Should not return a cached token once it expired")
+        void testDecodeToken_ShouldRejectExpiredCachedToken() {
+            // Arrange
+            // exp is stored in whole seconds, so keep at least one second of validity
+            var clock = new MutableClock();
+            jwtService = new JwtService(testSecret, 2000L, 100L, 300L, clock);
+            String token = jwtService.generateToken(testUser);
+            assertNotNull(jwtService.decodeToken(token));
+
+            // Act
+            clock.advance(Duration.ofMillis(2100));
+
+            // Assert
+            assertNull(jwtService.decodeToken(token));
+        }
+
+        @Test
+        @DisplayName("decodeToken - Should return null for null or empty tokens")
+        void testDecodeToken_ShouldReturnNullForMissingToken() {
+            assertNull(jwtService.decodeToken(null));
+            assertNull(jwtService.decodeToken(""));
+        }
+    }
+
+    // Moved forward by the tests instead of sleeping
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 }
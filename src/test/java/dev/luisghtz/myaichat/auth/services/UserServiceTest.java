@@ -10,10 +10,11 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -34,7 +35,6 @@ class UserServiceTest {
     @Mock
     private RoleRepository roleRepository;
 
-    @InjectMocks
     private UserService userService;
 
     private User testUser;
@@ -43,6 +43,8 @@ class UserServiceTest {
 
     @BeforeEach
     void setUp() {
+        userService = new UserService(userRepository, roleRepository, 100L, 60L);
+
         // Setup test data
         userRole = new Role();
         userRole.setId(1L);
@@ -332,6 +334,84 @@ class UserServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("Auth User Cache Tests")
+    class AuthUserCacheTests {
+
+        @Test
+        @DisplayName("findAuthUserById - Should query the repository only once for repeated lookups")
+        void testFindAuthUserById_ShouldServeRepeatedLookupsFromCache() {
+            // Arrange
+            when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+            // Act
+            Optional<User> first = userService.findAuthUserById(testUser.getId().toString());
+            Optional<User> second = userService.findAuthUserById(testUser.getId().toString());
+
+            // Assert
+            assertEquals(testUser, first.orElseThrow());
+            assertEquals(testUser, second.orElseThrow());
+            verify(userRepository, times(1)).findById(testUser.getId());
+        }
+
+        @Test
+        @DisplayName("findAuthUserById - Should not cache missing users")
+        void testFindAuthUserById_ShouldNotCacheMissingUsers() {
+            // Arrange
+            when(userRepository.findById(testUser.getId())).thenReturn(Optional.empty());
+
+            // Act
+            userService.findAuthUserById(testUser.getId().toString());
+            userService.findAuthUserById(testUser.getId().toString());
+
+            // Assert
+            verify(userRepository, times(2)).findById(testUser.getId());
+        }
+
+        @Test
+        @DisplayName("findAuthUserById - Should return empty for an invalid UUID")
+        void testFindAuthUserById_ShouldReturnEmptyForInvalidUuid() {
+            assertTrue(userService.findAuthUserById("invalid-uuid").isEmpty());
+            verify(userRepository, never()).findById(any(UUID.class));
+        }
+
+        @Test
+        @DisplayName("createOrUpdateUserFromGitHub - Should invalidate the cached user")
+        void testCreateOrUpdateUserFromGitHub_ShouldInvalidateCachedUser() {
+            // Arrange
+            when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+            when(userRepository.findByGithubId("123456")).thenReturn(Optional.of(testUser));
+            when(userRepository.save(testUser)).thenReturn(testUser);
+            userService.findAuthUserById(testUser.getId().toString());
+
+            // Act
+            userService.createOrUpdateUserFromGitHub(githubUserData);
+            userService.findAuthUserById(testUser.getId().toString());
+
+            // Assert
+            verify(userRepository, times(2)).findById(testUser.getId());
+        }
+
+        @Test
+        @DisplayName("bindTo - Should expose the cache hit and miss metrics")
+        void testBindTo_ShouldExposeCacheMetrics() {
+            // Arrange
+            var registry = new SimpleMeterRegistry();
+            userService.bindTo(registry);
+            when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+            // Act
+            userService.findAuthUserById(testUser.getId().toString());
+            userService.findAuthUserById(testUser.getId().toString());
+
+            // Assert
+            assertEquals(1.0, registry.get("cache.gets").tags("cache", "auth.users", "result", "hit")
+                    .functionCounter().count());
+            assertEquals(1.0, registry.get("cache.gets").tags("cache", "auth.users", "result", "miss")
+                    .functionCounter().count());
+        }
+    }
+
     @Nested
     @DisplayName("Generate Unique Username Tests")
     class GenerateUniqueUsernameTests {
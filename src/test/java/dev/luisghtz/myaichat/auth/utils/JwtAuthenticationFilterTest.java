@@ -1,5 +1,6 @@
 package dev.luisghtz.myaichat.auth.utils;
 
+import com.auth0.jwt.interfaces.DecodedJWT;
 import dev.luisghtz.myaichat.auth.entities.Role;
 import dev.luisghtz.myaichat.auth.entities.User;
 import dev.luisghtz.myaichat.auth.services.JwtService;
@@ -47,6 +48,9 @@ class JwtAuthenticationFilterTest {
     @Mock
     private FilterChain filterChain;
 
+    @Mock
+    private DecodedJWT decodedToken;
+
     @InjectMocks
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
@@ -85,9 +89,9 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldAuthenticateUserWhenValidTokenProvided() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -99,9 +103,10 @@ class JwtAuthenticationFilterTest {
             assertTrue(auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_USER")));
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(validToken);
-            verify(jwtService).getUserIdFromToken(validToken);
-            verify(userService).findById(testUser.getId().toString());
+            verify(jwtService).decodeToken(validToken);
+            verify(decodedToken).getSubject();
+            verify(userService).findAuthUserById(testUser.getId().toString());
+            verify(request).setAttribute(JwtService.DECODED_TOKEN_ATTRIBUTE, decodedToken);
         }
 
         @Test
@@ -143,7 +148,7 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldNotAuthenticateWhenTokenIsInvalid() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + invalidToken);
-            when(jwtService.validateToken(invalidToken)).thenReturn(false);
+            when(jwtService.decodeToken(invalidToken)).thenReturn(null);
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -153,7 +158,7 @@ class JwtAuthenticationFilterTest {
             assertNull(auth);
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(invalidToken);
+            verify(jwtService).decodeToken(invalidToken);
             verifyNoInteractions(userService);
         }
 
@@ -162,8 +167,8 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldNotAuthenticateWhenUserIdCannotBeExtracted() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(null);
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(null);
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -173,8 +178,8 @@ class JwtAuthenticationFilterTest {
             assertNull(auth);
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(validToken);
-            verify(jwtService).getUserIdFromToken(validToken);
+            verify(jwtService).decodeToken(validToken);
+            verify(decodedToken).getSubject();
             verifyNoInteractions(userService);
         }
 
@@ -183,9 +188,9 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldNotAuthenticateWhenUserNotFound() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.empty());
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.empty());
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -195,9 +200,9 @@ class JwtAuthenticationFilterTest {
             assertNull(auth);
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(validToken);
-            verify(jwtService).getUserIdFromToken(validToken);
-            verify(userService).findById(testUser.getId().toString());
+            verify(jwtService).decodeToken(validToken);
+            verify(decodedToken).getSubject();
+            verify(userService).findAuthUserById(testUser.getId().toString());
         }
 
         @Test
@@ -206,9 +211,9 @@ class JwtAuthenticationFilterTest {
             // Arrange
             testUser.setLocked(true);
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -226,9 +231,9 @@ class JwtAuthenticationFilterTest {
             // Arrange
             testUser.setDisabled(true);
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -255,9 +260,9 @@ class JwtAuthenticationFilterTest {
             testUser.setRole(adminRole);
 
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -276,9 +281,9 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldSetCorrectAuthoritiesForUserRole() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(testUser.getId().toString())).thenReturn(Optional.of(testUser));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -306,7 +311,7 @@ class JwtAuthenticationFilterTest {
             SecurityContextHolder.getContext().setAuthentication(existingAuth);
 
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -316,7 +321,7 @@ class JwtAuthenticationFilterTest {
             assertEquals(existingAuth, auth); // Should still be the existing auth
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(validToken);
+            verify(jwtService).decodeToken(validToken);
             verifyNoInteractions(userService);
         }
 
@@ -325,7 +330,7 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldClearSecurityContextWhenAuthenticationFails() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + invalidToken);
-            when(jwtService.validateToken(invalidToken)).thenReturn(false);
+            when(jwtService.decodeToken(invalidToken)).thenReturn(null);
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -347,7 +352,7 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldHandleJwtServiceExceptionGracefully() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenThrow(new RuntimeException("JWT processing error"));
+            when(jwtService.decodeToken(validToken)).thenThrow(new RuntimeException("JWT processing error"));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -357,7 +362,7 @@ class JwtAuthenticationFilterTest {
             assertNull(auth);
             
             verify(filterChain).doFilter(request, response);
-            verify(jwtService).validateToken(validToken);
+            verify(jwtService).decodeToken(validToken);
         }
 
         @Test
@@ -365,9 +370,9 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldHandleUserServiceExceptionGracefully() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenReturn(true);
-            when(jwtService.getUserIdFromToken(validToken)).thenReturn(testUser.getId().toString());
-            when(userService.findById(anyString())).thenThrow(new RuntimeException("Database error"));
+            when(jwtService.decodeToken(validToken)).thenReturn(decodedToken);
+            when(decodedToken.getSubject()).thenReturn(testUser.getId().toString());
+            when(userService.findAuthUserById(anyString())).thenThrow(new RuntimeException("Database error"));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
@@ -384,7 +389,7 @@ class JwtAuthenticationFilterTest {
         void testDoFilterInternal_ShouldContinueFilterChainEvenWhenExceptionOccurs() throws ServletException, IOException {
             // Arrange
             when(request.getHeader("Authorization")).thenReturn("Bearer " + validToken);
-            when(jwtService.validateToken(validToken)).thenThrow(new RuntimeException("Unexpected error"));
+            when(jwtService.decodeToken(validToken)).thenThrow(new RuntimeException("Unexpected error"));
 
             // Act
             jwtAuthenticationFilter.doFilterInternal(request, response, filterChain);
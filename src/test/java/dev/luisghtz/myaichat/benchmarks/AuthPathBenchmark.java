@@ -0,0 +1,89 @@
+package dev.luisghtz.myaichat.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import dev.luisghtz.myaichat.auth.entities.Role;
+import dev.luisghtz.myaichat.auth.entities.User;
+import dev.luisghtz.myaichat.auth.services.JwtService;
+
+/**
+ * JWT work done by the authentication filter and the {@code @UserJwtData}
+ * resolver for a single request.
+ *
+ * Run with:
+ * {@code ./mvnw test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test "-Dexec.args=-cp %classpath org.openjdk.jmh.Main AuthPathBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthPathBenchmark {
+  private static final String SECRET = "benchmark-secret-key-for-jwt-token-generation";
+
+  private JwtService cachedJwtService;
+  private JwtService uncachedJwtService;
+  private String token;
+
+  @Setup
+  public void setUp() {
+    cachedJwtService = jwtService(10_000);
+    uncachedJwtService = jwtService(0);
+    var role = new Role();
+    role.setName(Role.RoleName.USER);
+    var user = new User();
+    user.setId(UUID.randomUUID());
+    user.setUsername("benchmark");
+    user.setEmail("benchmark@example.com");
+    user.setRole(role);
+    token = cachedJwtService.generateToken(user);
+  }
+
+  // Previous behaviour: a new verifier per call and five verifications per request
+  @Benchmark
+  public void verifyOnEveryLookup(Blackhole blackhole) {
+    for (int i = 0; i < 5; i++) {
+      var verifier = JWT.require(Algorithm.HMAC256(SECRET.getBytes(StandardCharsets.UTF_8))).build();
+      blackhole.consume(verifier.verify(token).getSubject());
+    }
+  }
+
+  @Benchmark
+  public void decodeOncePerRequest(Blackhole blackhole) {
+    consumeClaims(uncachedJwtService.decodeToken(token), blackhole);
+  }
+
+  @Benchmark
+  public void decodeFromCache(Blackhole blackhole) {
+    consumeClaims(cachedJwtService.decodeToken(token), blackhole);
+  }
+
+  private void consumeClaims(DecodedJWT decodedToken, Blackhole blackhole) {
+    blackhole.consume(decodedToken.getSubject());
+    blackhole.consume(decodedToken.getClaim("username").asString());
+    blackhole.consume(decodedToken.getClaim("email").asString());
+  }
+
+  private JwtService jwtService(long cacheMaxSize) {
+    return new JwtService(SECRET, 86_400_000L, cacheMaxSize, 300L);
+  }
+}
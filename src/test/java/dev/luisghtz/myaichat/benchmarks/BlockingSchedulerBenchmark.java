@@ -0,0 +1,84 @@
+package dev.luisghtz.myaichat.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Blocking work of concurrent assistant streams on the two blocking task
+ * schedulers of {@code SchedulersConfig}: every stream saves its checkpoints
+ * and its final message in order through one worker, each save blocked on a
+ * simulated JDBC round trip. The virtual threads runs need a Java 21 runtime.
+ *
+ * Run with:
+ * {@code ./mvnw test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test "-Dexec.args=-cp %classpath org.openjdk.jmh.Main BlockingSchedulerBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockingSchedulerBenchmark {
+  private static final int SAVES_PER_STREAM = 3;
+  private static final long SAVE_MILLIS = 5;
+
+  @Param({ "50", "200" })
+  private int streams;
+  @Param({ "boundedElastic", "virtualThreads" })
+  private String scheduler;
+
+  private Scheduler blockingScheduler;
+
+  @Setup
+  public void setUp() {
+    // The defaults of app.scheduler.blocking, and the ordered workers of the virtual threads mode
+    blockingScheduler = "virtualThreads".equals(scheduler)
+        ? Schedulers.fromExecutor(new VirtualThreadTaskExecutor("benchmark-blocking-"), true)
+        : Schedulers.newBoundedElastic(8, 1000, "benchmark-blocking");
+  }
+
+  @TearDown
+  public void tearDown() {
+    blockingScheduler.dispose();
+  }
+
+  @Benchmark
+  public void concurrentStreams() throws InterruptedException {
+    var completed = new CountDownLatch(streams);
+    for (int i = 0; i < streams; i++) {
+      var worker = blockingScheduler.createWorker();
+      for (int save = 0; save < SAVES_PER_STREAM; save++)
+        worker.schedule(BlockingSchedulerBenchmark::save);
+      worker.schedule(() -> {
+        completed.countDown();
+        worker.dispose();
+      });
+    }
+    completed.await();
+  }
+
+  private static void save() {
+    try {
+      Thread.sleep(SAVE_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package dev.luisghtz.myaichat.benchmarks;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.file.ImageProcessingService;
+import dev.luisghtz.myaichat.file.models.ProcessedImage;
+
+/**
+ * Cost of downscaling an upload to the model resolution. The bytes saved for
+ * each case are printed once during the setup.
+ *
+ * Run with:
+ * {@code ./mvnw test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test "-Dexec.args=-cp %classpath org.openjdk.jmh.Main ImageProcessingBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageProcessingBenchmark {
+
+  // Phone photo and a large screenshot
+  @Param({ "jpeg:4032x3024", "png:2880x1800" })
+  private String image;
+
+  @Param({ "2048", "1536" })
+  private int maxDimension;
+
+  private ImageProcessingService imageProcessingService;
+  private MockMultipartFile file;
+
+  @Setup
+  public void setUp() throws IOException {
+    imageProcessingService = new ImageProcessingService();
+    ReflectionTestUtils.setField(imageProcessingService, "enabled", true);
+    ReflectionTestUtils.setField(imageProcessingService, "jpegQuality", 0.85f);
+    ReflectionTestUtils.setField(imageProcessingService, "maxPixels", 50_000_000L);
+
+    var format = image.substring(0, image.indexOf(':'));
+    var size = image.substring(image.indexOf(':') + 1).split("x");
+    var output = new ByteArrayOutputStream();
+    ImageIO.write(generate(Integer.parseInt(size[0]), Integer.parseInt(size[1])), format, output);
+    file = new MockMultipartFile("file", "upload." + format, "image/" + format, output.toByteArray());
+
+    var processed = imageProcessingService.process(file, maxDimension);
+    long processedSize = processed.map(result -> (long) result.content().length).orElse(file.getSize());
+    System.out.printf("%n%s -> %s: %d -> %d bytes (%.1f%% saved)%n", image,
+        processed.map(result -> result.width() + "x" + result.height()).orElse("unchanged"), file.getSize(),
+        processedSize, 100.0 * (file.getSize() - processedSize) / file.getSize());
+  }
+
+  @Benchmark
+  public ProcessedImage process() {
+    return imageProcessingService.process(file, maxDimension).orElse(null);
+  }
+
+  // Smooth gradients with some noise, closer to a photo than flat colors
+  private BufferedImage generate(int width, int height) {
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var random = new Random(7);
+    var graphics = image.createGraphics();
+    for (int y = 0; y < height; y += 4) {
+      graphics.setColor(new Color((y * 255) / height, 120 + random.nextInt(40), 255 - (y * 255) / height));
+      graphics.fillRect(0, y, width, 4);
+    }
+    for (int i = 0; i < 400; i++) {
+      graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+      graphics.fillOval(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(200),
+          20 + random.nextInt(200));
+    }
+    graphics.dispose();
+    return image;
+  }
+}
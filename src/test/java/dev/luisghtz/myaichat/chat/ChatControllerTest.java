@@ -416,6 +416,24 @@ public class ChatControllerTest {
       verify(messagesService, times(1)).userMessage(any(dev.luisghtz.myaichat.chat.dtos.NewMessageRequestDto.class), any(UserJwtDataDto.class), any());
     }
 
+    @Test
+    @DisplayName("POST /api/chat/send-user-message - Should give back the file reference when the message isn't saved")
+    public void testSendUserMessageReleasesFileOnFailure() throws Exception {
+      var file = new org.springframework.mock.web.MockMultipartFile("file", "photo.png", "image/png", new byte[] { 1 });
+      when(fileService.uploadFile(any(), any())).thenReturn("https://cdn.example.com/myaichat/abc.png");
+      when(messagesService.userMessage(any(), any(), any()))
+          .thenThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Chat not found"));
+
+      mockMvc.perform(multipart("/api/chat/send-user-message")
+          .file(file)
+          .param("content", "Describe this image")
+          .param("maxOutputTokens", "2000")
+          .header("Authorization", "Bearer test-user-id"))
+          .andExpect(status().isNotFound());
+
+      verify(messagesService).releaseUploadedFile("https://cdn.example.com/myaichat/abc.png");
+    }
+
     @Test
     @DisplayName("POST /api/chat/send-user-message - Should return BAD_REQUEST when content is missing")
     public void testSendUserMessageMissingContent() throws Exception {
@@ -0,0 +1,193 @@
+package dev.luisghtz.myaichat.chat.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.vertexai.gemini.VertexAiGeminiChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.ai.services.ResponseCache;
+import dev.luisghtz.myaichat.ai.services.StreamPermitService;
+import dev.luisghtz.myaichat.ai.utils.MessagesUtil;
+import dev.luisghtz.myaichat.auth.dtos.UserJwtDataDto;
+import dev.luisghtz.myaichat.auth.entities.User;
+import dev.luisghtz.myaichat.auth.services.JwtService;
+import dev.luisghtz.myaichat.auth.services.UserService;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.services.ChatService;
+import dev.luisghtz.myaichat.chat.services.ChatTitleService;
+import dev.luisghtz.myaichat.chat.services.ChunkCoalescingService;
+import dev.luisghtz.myaichat.chat.services.ContextWindowService;
+import dev.luisghtz.myaichat.chat.services.GenerationBufferService;
+import dev.luisghtz.myaichat.chat.services.HistorySummaryService;
+import dev.luisghtz.myaichat.chat.services.MessagesService;
+import dev.luisghtz.myaichat.file.FileCleanupService;
+import dev.luisghtz.myaichat.file.StoredFileService;
+import dev.luisghtz.myaichat.prompts.entities.CustomPrompt;
+import dev.luisghtz.myaichat.prompts.entities.PromptMessage;
+import dev.luisghtz.myaichat.prompts.services.CustomPromptService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Schedulers;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ChatRepositoryTest {
+
+  // Required by the ChatClient beans declared in the application class
+  @MockitoBean
+  private OpenAiChatModel openAiChatModel;
+  @MockitoBean
+  private VertexAiGeminiChatModel vertexAiGeminiChatModel;
+
+  @Autowired
+  private TestEntityManager entityManager;
+  @Autowired
+  private ChatRepository chatRepository;
+  @Autowired
+  private MessageRepository messageRepository;
+
+  private Statistics statistics;
+  private User user;
+  private Chat chat;
+
+  @BeforeEach
+  void setUp() {
+    user = new User();
+    user.setUsername("test-user");
+    user.setEmail("test@example.com");
+    entityManager.persist(user);
+
+    var prompt = CustomPrompt.builder()
+        .name("Translator")
+        .content("Translate everything to Spanish")
+        .createdAt(new Date())
+        .user(user)
+        .build();
+    entityManager.persist(prompt);
+    entityManager.persist(PromptMessage.builder().role("User").content("Hello").prompt(prompt).build());
+    entityManager.persist(PromptMessage.builder().role("Assistant").content("Hola").prompt(prompt).build());
+
+    chat = Chat.builder()
+        .createdAt(new Date())
+        .model("gpt-4o-mini")
+        .fav(false)
+        .isWebSearchMode(false)
+        .customPrompt(prompt)
+        .user(user)
+        .build();
+    entityManager.persist(chat);
+    for (int i = 0; i < 3; i++)
+      entityManager.persist(AppMessage.builder().role("User").content("Message " + i).createdAt(new Date())
+          .chat(chat).build());
+    entityManager.flush();
+    entityManager.clear();
+
+    statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class)
+        .getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  @DisplayName("findWithCustomPromptById - Should load the chat, its prompt and the prompt messages in one query")
+  void findWithCustomPromptById_LoadsPromptInOneQuery() {
+    var loaded = chatRepository.findWithCustomPromptById(chat.getId()).orElseThrow();
+
+    assertThat(loaded.getUser().getId()).isNotNull();
+    assertThat(loaded.getCustomPrompt().getMessages()).hasSize(2);
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Streaming path - Should read the chat, the prompt prefix and the context window in two queries")
+  void streamingPath_UsesTwoQueries() {
+    var loaded = chatRepository.findWithCustomPromptById(chat.getId()).orElseThrow();
+    List<Message> prefix = new ArrayList<>();
+    MessagesUtil.addSystemMessage(loaded, prefix);
+    MessagesUtil.addInitialMessagesFromCustomPromptIfExist(loaded, prefix);
+    var messages = messageRepository.findAllByChatIdOrderByCreatedAtDesc(loaded.getId(), PageRequest.of(0, 50));
+
+    assertThat(prefix).hasSize(3);
+    assertThat(messages).hasSize(3);
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("getAssistantMessage - Should run only the chat and context window queries before streaming")
+  void getAssistantMessage_UsesTwoQueriesBeforeStreaming() {
+    var aiService = mock(AIService.class);
+    when(aiService.getProvider("gpt-4o-mini")).thenReturn("openai");
+    var meterRegistry = new SimpleMeterRegistry();
+    var chatService = new ChatService(chatRepository, mock(CustomPromptService.class), mock(UserService.class),
+        aiService, mock(JwtService.class));
+    var contextWindowService = new ContextWindowService(messageRepository, meterRegistry);
+    ReflectionTestUtils.setField(contextWindowService, "maxMessages", 50);
+    var messagesService = new MessagesService(aiService, mock(StreamPermitService.class),
+        new ResponseCache(meterRegistry, false, 0L, 60L, 0, 64), chatService,
+        mock(ChatTitleService.class), messageRepository, mock(FileCleanupService.class),
+        mock(StoredFileService.class), contextWindowService, mock(HistorySummaryService.class),
+        new GenerationBufferService(meterRegistry, 1_000_000L, 60L, 60L, 60L, 100), mock(ChunkCoalescingService.class),
+        Schedulers.immediate(), meterRegistry);
+
+    // Not subscribed, only the work done before the provider is called
+    var stream = messagesService.getAssistantMessage(chat.getId(),
+        UserJwtDataDto.builder().id(user.getId().toString()).build());
+
+    assertThat(stream).isNotNull();
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    assertThat(statistics.getEntityUpdateCount()).isZero();
+  }
+
+  @Test
+  @DisplayName("save - Should only write the changed columns of a loaded chat")
+  void save_OnlyWritesChangedColumns() {
+    var loaded = chatRepository.findById(chat.getId()).orElseThrow();
+    // Counters updated by the stream while the request holds the chat
+    chatRepository.incrementTokenUsage(chat.getId(), 10, 20);
+
+    loaded.setIsWebSearchMode(true);
+    chatRepository.saveAndFlush(loaded);
+    entityManager.clear();
+
+    var reloaded = chatRepository.findById(chat.getId()).orElseThrow();
+    assertThat(reloaded.getIsWebSearchMode()).isTrue();
+    assertThat(reloaded.getTotalPromptTokens()).isEqualTo(10);
+    assertThat(reloaded.getTotalCompletionTokens()).isEqualTo(20);
+  }
+
+  @Test
+  @DisplayName("toggleFavByIdAndUserId - Should toggle the favorite flag only for the owner")
+  void toggleFavByIdAndUserId_OnlyUpdatesOwnedChat() {
+    assertThat(chatRepository.toggleFavByIdAndUserId(chat.getId(), UUID.randomUUID())).isZero();
+    assertThat(chatRepository.toggleFavByIdAndUserId(chat.getId(), user.getId())).isEqualTo(1);
+    entityManager.clear();
+
+    assertThat(chatRepository.findById(chat.getId()).orElseThrow().getFav()).isTrue();
+  }
+
+  @Test
+  @DisplayName("existsByIdAndUserId - Should check the ownership without loading the chat")
+  void existsByIdAndUserId_ChecksOwnership() {
+    assertThat(chatRepository.existsByIdAndUserId(chat.getId(), user.getId())).isTrue();
+    assertThat(chatRepository.existsByIdAndUserId(chat.getId(), UUID.randomUUID())).isFalse();
+    assertThat(statistics.getEntityLoadCount()).isZero();
+  }
+}
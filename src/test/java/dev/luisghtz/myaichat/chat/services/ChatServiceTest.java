@@ -2,6 +2,7 @@ package dev.luisghtz.myaichat.chat.services;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 import java.util.Arrays;
 import java.util.Date;
@@ -272,51 +273,52 @@ class ChatServiceTest {
   @Test
   void deleteChat_WithExistingId_ShouldDeleteChat() {
     // Given
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
+    when(chatRepository.deleteByIdAndUserId(testChatId, testUserId())).thenReturn(1);
 
     // When
     chatService.deleteChat(testChatId, testUser);
 
     // Then
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository).delete(testChat);
+    verify(chatRepository).deleteByIdAndUserId(testChatId, testUserId());
+    verify(chatRepository, never()).findById(any());
   }
 
   @Test
   void deleteChat_WithNonExistentId_ShouldThrowException() {
     // Given
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.empty());
+    when(chatRepository.deleteByIdAndUserId(testChatId, testUserId())).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(false);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
         () -> chatService.deleteChat(testChatId, testUser));
 
     assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).delete(any());
+    verify(chatRepository).existsById(testChatId);
   }
 
   @Test
   void renameChatTitleById_WithExistingId_ShouldRenameChatTitle() {
     // Given
     String newTitle = "New Chat Title";
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
-    when(chatRepository.renameChatTitleById(testChatId, newTitle)).thenReturn(1);
+    when(chatRepository.renameChatTitleByIdAndUserId(testChatId, testUserId(), newTitle)).thenReturn(1);
 
     // When
     int result = chatService.renameChatTitleById(testChatId, newTitle, testUser);
 
     // Then
     assertEquals(1, result);
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository).renameChatTitleById(testChatId, newTitle);
+    verify(chatRepository).renameChatTitleByIdAndUserId(testChatId, testUserId(), newTitle);
+    verify(chatRepository, never()).findById(any());
+    verify(chatRepository, never()).existsById(any());
   }
 
   @Test
   void renameChatTitleById_WithNonExistentId_ShouldThrowException() {
     // Given
     String newTitle = "New Chat Title";
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.empty());
+    when(chatRepository.renameChatTitleByIdAndUserId(testChatId, testUserId(), newTitle)).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(false);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -324,47 +326,42 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
     assertTrue(exception.getReason().contains("Chat not found with ID: " + testChatId));
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).renameChatTitleById(any(), any());
   }
 
   @Test
   void toggleChatFav_ShouldToggleFavoriteStatus() {
     // Given
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
-    boolean initialFavStatus = testChat.getFav();
+    when(chatRepository.toggleFavByIdAndUserId(testChatId, testUserId())).thenReturn(1);
 
     // When
     chatService.toggleChatFav(testChatId, testUser);
-    boolean updatedFavStatus = testChat.getFav();
-    verify(chatRepository).findById(testChatId);
 
     // Then
-    assertNotEquals(initialFavStatus, updatedFavStatus);
-    verify(chatRepository).setChatFav(testChatId, !initialFavStatus);
+    verify(chatRepository).toggleFavByIdAndUserId(testChatId, testUserId());
+    verify(chatRepository, never()).findById(any());
   }
 
   @Test
   void changeMaxOutputTokens_WithExistingId_ShouldChangeMaxOutputTokens() {
     // Given
     Short newMaxTokens = (short) 2000;
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
-    when(chatRepository.changeMaxTokens(testChatId, newMaxTokens)).thenReturn(1);
+    when(chatRepository.changeMaxTokensByIdAndUserId(testChatId, testUserId(), newMaxTokens)).thenReturn(1);
 
     // When
     int result = chatService.changeMaxOutputTokens(testChatId, newMaxTokens, testUser);
 
     // Then
     assertEquals(1, result);
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository).changeMaxTokens(testChatId, newMaxTokens);
+    verify(chatRepository).changeMaxTokensByIdAndUserId(testChatId, testUserId(), newMaxTokens);
+    verify(chatRepository, never()).findById(any());
   }
 
   @Test
   void changeMaxOutputTokens_WithNonExistentId_ShouldThrowException() {
     // Given
     Short newMaxTokens = (short) 2000;
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.empty());
+    when(chatRepository.changeMaxTokensByIdAndUserId(testChatId, testUserId(), newMaxTokens)).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(false);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -372,31 +369,29 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
     assertTrue(exception.getReason().contains("Chat not found with ID: " + testChatId));
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).changeMaxTokens(any(), any());
   }
 
   @Test
   void changeWebSearchMode_WithExistingId_ShouldChangeWebSearchMode() {
     // Given
     boolean newWebSearchMode = true;
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
-    when(chatRepository.changeWebSearchMode(testChatId, newWebSearchMode)).thenReturn(1);
+    when(chatRepository.changeWebSearchModeByIdAndUserId(testChatId, testUserId(), newWebSearchMode)).thenReturn(1);
 
     // When
     int result = chatService.changeIsWebSearchMode(testChatId, newWebSearchMode, testUser);
 
     // Then
     assertEquals(1, result);
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository).changeWebSearchMode(testChatId, newWebSearchMode);
+    verify(chatRepository).changeWebSearchModeByIdAndUserId(testChatId, testUserId(), newWebSearchMode);
+    verify(chatRepository, never()).findById(any());
   }
 
   @Test
   void changeWebSearchMode_WithNonExistentId_ShouldThrowException() {
     // Given
     boolean newWebSearchMode = true;
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.empty());
+    when(chatRepository.changeWebSearchModeByIdAndUserId(testChatId, testUserId(), newWebSearchMode)).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(false);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -404,19 +399,14 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
     assertTrue(exception.getReason().contains("Chat not found with ID: " + testChatId));
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).changeWebSearchMode(any(), any());
   }
 
   @Test
   void deleteChat_WithUnauthorizedUser_ShouldThrowForbiddenException() {
     // Given
-    UserJwtDataDto unauthorizedUser = new UserJwtDataDto();
-    unauthorizedUser.setId(UUID.randomUUID().toString());
-    unauthorizedUser.setEmail("unauthorized@example.com");
-    unauthorizedUser.setUsername("unauthorized");
-
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
+    UserJwtDataDto unauthorizedUser = createUnauthorizedUser();
+    when(chatRepository.deleteByIdAndUserId(testChatId, UUID.fromString(unauthorizedUser.getId()))).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(true);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -424,20 +414,16 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
     assertEquals("You don't have access to this chat", exception.getReason());
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).delete(any());
   }
 
   @Test
   void renameChatTitleById_WithUnauthorizedUser_ShouldThrowForbiddenException() {
     // Given
     String newTitle = "New Chat Title";
-    UserJwtDataDto unauthorizedUser = new UserJwtDataDto();
-    unauthorizedUser.setId(UUID.randomUUID().toString());
-    unauthorizedUser.setEmail("unauthorized@example.com");
-    unauthorizedUser.setUsername("unauthorized");
-
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
+    UserJwtDataDto unauthorizedUser = createUnauthorizedUser();
+    when(chatRepository.renameChatTitleByIdAndUserId(testChatId, UUID.fromString(unauthorizedUser.getId()), newTitle))
+        .thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(true);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -445,20 +431,16 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
     assertEquals("You don't have access to this chat", exception.getReason());
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).renameChatTitleById(any(), any());
   }
 
   @Test
   void changeMaxOutputTokens_WithUnauthorizedUser_ShouldThrowForbiddenException() {
     // Given
     Short newMaxTokens = (short) 2000;
-    UserJwtDataDto unauthorizedUser = new UserJwtDataDto();
-    unauthorizedUser.setId(UUID.randomUUID().toString());
-    unauthorizedUser.setEmail("unauthorized@example.com");
-    unauthorizedUser.setUsername("unauthorized");
-
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
+    UserJwtDataDto unauthorizedUser = createUnauthorizedUser();
+    when(chatRepository.changeMaxTokensByIdAndUserId(testChatId, UUID.fromString(unauthorizedUser.getId()),
+        newMaxTokens)).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(true);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -466,19 +448,14 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
     assertEquals("You don't have access to this chat", exception.getReason());
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).changeMaxTokens(any(), any());
   }
 
   @Test
   void toggleChatFav_WithUnauthorizedUser_ShouldThrowForbiddenException() {
     // Given
-    UserJwtDataDto unauthorizedUser = new UserJwtDataDto();
-    unauthorizedUser.setId(UUID.randomUUID().toString());
-    unauthorizedUser.setEmail("unauthorized@example.com");
-    unauthorizedUser.setUsername("unauthorized");
-
-    when(chatRepository.findById(testChatId)).thenReturn(Optional.of(testChat));
+    UserJwtDataDto unauthorizedUser = createUnauthorizedUser();
+    when(chatRepository.toggleFavByIdAndUserId(testChatId, UUID.fromString(unauthorizedUser.getId()))).thenReturn(0);
+    when(chatRepository.existsById(testChatId)).thenReturn(true);
 
     // When & Then
     ResponseStatusException exception = assertThrows(ResponseStatusException.class,
@@ -486,7 +463,76 @@ class ChatServiceTest {
 
     assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
     assertEquals("You don't have access to this chat", exception.getReason());
-    verify(chatRepository).findById(testChatId);
-    verify(chatRepository, never()).setChatFav(any(), any());
   }
-}
\ No newline at end of file
+
+  @Test
+  void validateChatBelongsToUser_WithOwner_ShouldOnlyRunExistsQuery() {
+    // Given
+    when(chatRepository.existsByIdAndUserId(testChatId, testUserId())).thenReturn(true);
+
+    // When
+    chatService.validateChatBelongsToUser(testChatId, testUser);
+
+    // Then
+    verify(chatRepository).existsByIdAndUserId(testChatId, testUserId());
+    verify(chatRepository, never()).findById(any());
+    verify(chatRepository, never()).existsById(any());
+  }
+
+  @Test
+  void validateChatBelongsToUser_WithUnauthorizedUser_ShouldThrowForbiddenException() {
+    // Given
+    UserJwtDataDto unauthorizedUser = createUnauthorizedUser();
+    when(chatRepository.existsByIdAndUserId(testChatId, UUID.fromString(unauthorizedUser.getId()))).thenReturn(false);
+    when(chatRepository.existsById(testChatId)).thenReturn(true);
+
+    // When & Then
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> chatService.validateChatBelongsToUser(testChatId, unauthorizedUser));
+
+    assertEquals(HttpStatus.FORBIDDEN, exception.getStatusCode());
+  }
+
+  @Test
+  void addTokenUsage_ShouldIncrementRunningCounters() {
+    // When
+    chatService.addTokenUsage(testChatId, 120, 45);
+
+    // Then
+    verify(chatRepository).incrementTokenUsage(testChatId, 120L, 45L);
+  }
+
+  @Test
+  void addTokenUsage_WithoutUsage_ShouldNotUpdateChat() {
+    // When
+    chatService.addTokenUsage(testChatId, null, 0);
+
+    // Then
+    verify(chatRepository, never()).incrementTokenUsage(any(), anyLong(), anyLong());
+  }
+
+  @Test
+  void findChatWithCustomPromptById_WithNonExistentId_ShouldThrowException() {
+    // Given
+    when(chatRepository.findWithCustomPromptById(testChatId)).thenReturn(Optional.empty());
+
+    // When & Then
+    ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+        () -> chatService.findChatWithCustomPromptById(testChatId));
+
+    assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+    verify(chatRepository, never()).findById(any());
+  }
+
+  private UUID testUserId() {
+    return UUID.fromString(testUser.getId());
+  }
+
+  private UserJwtDataDto createUnauthorizedUser() {
+    UserJwtDataDto unauthorizedUser = new UserJwtDataDto();
+    unauthorizedUser.setId(UUID.randomUUID().toString());
+    unauthorizedUser.setEmail("unauthorized@example.com");
+    unauthorizedUser.setUsername("unauthorized");
+    return unauthorizedUser;
+  }
+}
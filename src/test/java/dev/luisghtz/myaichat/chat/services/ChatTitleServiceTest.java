@@ -0,0 +1,97 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@ExtendWith(MockitoExtension.class)
+class ChatTitleServiceTest {
+  @Mock
+  private ExtractiveTitleGenerator extractiveTitleGenerator;
+  @Mock
+  private LlmTitleGenerator llmTitleGenerator;
+  @Mock
+  private ChatService chatService;
+
+  private ChatTitleService chatTitleService;
+  private Chat chat;
+
+  @BeforeEach
+  void setUp() {
+    chatTitleService = new ChatTitleService(extractiveTitleGenerator, llmTitleGenerator, chatService,
+        Schedulers.immediate());
+    ReflectionTestUtils.setField(chatTitleService, "strategy", "local");
+    ReflectionTestUtils.setField(chatTitleService, "llmRefinement", true);
+    chat = new Chat();
+    chat.setId(UUID.randomUUID());
+  }
+
+  @Test
+  @DisplayName("titleNewChat - Should answer with the local title and replace it with the model title afterwards")
+  void titleNewChat_LocalThenRefined() {
+    when(extractiveTitleGenerator.generateTitle(chat, "question", "answer")).thenReturn("Local title");
+    when(llmTitleGenerator.requestTitle(chat, "question", "answer")).thenReturn(Mono.just("Model title"));
+    when(chatService.replaceChatTitle(chat.getId(), "Local title", "Model title")).thenReturn(true);
+
+    var title = chatTitleService.titleNewChat(chat, "question", "answer");
+
+    assertThat(title).isEqualTo("Local title");
+    verify(chatService).updateChatTitle(chat.getId(), "Local title");
+    verify(chatService).replaceChatTitle(chat.getId(), "Local title", "Model title");
+  }
+
+  @Test
+  @DisplayName("titleNewChat - Should keep the local title when the model fails")
+  void titleNewChat_RefinementFails() {
+    when(extractiveTitleGenerator.generateTitle(chat, "question", "answer")).thenReturn("Local title");
+    when(llmTitleGenerator.requestTitle(chat, "question", "answer")).thenReturn(Mono.error(new RuntimeException("503")));
+
+    var title = chatTitleService.titleNewChat(chat, "question", "answer");
+
+    assertThat(title).isEqualTo("Local title");
+    verify(chatService).updateChatTitle(chat.getId(), "Local title");
+    verify(chatService, never()).replaceChatTitle(any(), any(), any());
+  }
+
+  @Test
+  @DisplayName("titleNewChat - Should not call the model when the refinement is disabled")
+  void titleNewChat_RefinementDisabled() {
+    ReflectionTestUtils.setField(chatTitleService, "llmRefinement", false);
+    when(extractiveTitleGenerator.generateTitle(chat, "question", "answer")).thenReturn("Local title");
+
+    chatTitleService.titleNewChat(chat, "question", "answer");
+
+    verify(llmTitleGenerator, never()).requestTitle(any(), any(), any());
+  }
+
+  @Test
+  @DisplayName("titleNewChat - Should ask the model directly with the llm strategy")
+  void titleNewChat_LlmStrategy() {
+    ReflectionTestUtils.setField(chatTitleService, "strategy", "llm");
+    when(llmTitleGenerator.generateTitle(chat, "question", "answer")).thenReturn("Model title");
+
+    var title = chatTitleService.titleNewChat(chat, "question", "answer");
+
+    assertThat(title).isEqualTo("Model title");
+    verify(extractiveTitleGenerator, never()).generateTitle(any(), any(), any());
+    verify(chatService).updateChatTitle(chat.getId(), "Model title");
+    verify(chatService, never()).replaceChatTitle(any(), any(), any());
+    verify(llmTitleGenerator, never()).requestTitle(any(), any(), any());
+  }
+}
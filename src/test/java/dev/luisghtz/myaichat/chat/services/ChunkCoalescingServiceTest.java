@@ -0,0 +1,83 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+
+class ChunkCoalescingServiceTest {
+  private SimpleMeterRegistry meterRegistry;
+  private ChunkCoalescingService chunkCoalescingService;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    chunkCoalescingService = new ChunkCoalescingService(meterRegistry);
+    ReflectionTestUtils.setField(chunkCoalescingService, "enabled", true);
+    ReflectionTestUtils.setField(chunkCoalescingService, "flushIntervalMs", 10_000L);
+    ReflectionTestUtils.setField(chunkCoalescingService, "maxChars", 4);
+  }
+
+  @Test
+  @DisplayName("coalesce - Should send the first chunk alone and then merge up to the max characters")
+  void coalesce_MergesByMaxChars() {
+    var chunks = chunkCoalescingService.coalesce(Flux.just(chunk("Hi"), chunk("a"), chunk("b"), chunk("cd"),
+        chunk("e"), usageChunk("f")), "gpt-4o-mini").collectList().block();
+
+    assertThat(chunks).extracting(AssistantMessageResponseDto::getContent).containsExactly("Hi", "abcd", "ef");
+    assertThat(chunks.get(2).getTotalTokens()).isEqualTo(30);
+  }
+
+  @Test
+  @DisplayName("coalesce - Should flush the pending content when the interval elapses")
+  void coalesce_FlushesOnInterval() {
+    ReflectionTestUtils.setField(chunkCoalescingService, "flushIntervalMs", 20L);
+    var source = Flux.concat(
+        Flux.just(chunk("a"), chunk("b")),
+        Flux.just(chunk("c")).delaySubscription(Duration.ofMillis(200)));
+
+    var chunks = chunkCoalescingService.coalesce(source, "gpt-4o-mini").collectList().block();
+
+    assertThat(chunks).extracting(AssistantMessageResponseDto::getContent).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  @DisplayName("coalesce - Should forward every chunk when disabled")
+  void coalesce_Disabled() {
+    ReflectionTestUtils.setField(chunkCoalescingService, "enabled", false);
+
+    var chunks = chunkCoalescingService.coalesce(Flux.just(chunk("a"), chunk("b"), chunk("c")), "gpt-4o-mini")
+        .collectList().block();
+
+    assertThat(chunks).hasSize(3);
+  }
+
+  @Test
+  @DisplayName("coalesce - Should record the chunks per response before and after coalescing")
+  void coalesce_RecordsMetrics() {
+    chunkCoalescingService.coalesce(Flux.just(chunk("a"), chunk("b"), chunk("c"), chunk("d")), "gpt-4o-mini")
+        .blockLast();
+
+    assertThat(meterRegistry.get("myaichat.assistant.stream.chunks").tag("stage", "provider").summary().totalAmount())
+        .isEqualTo(4);
+    assertThat(meterRegistry.get("myaichat.assistant.stream.chunks").tag("stage", "emitted").summary().totalAmount())
+        .isEqualTo(2);
+  }
+
+  private AssistantMessageResponseDto chunk(String content) {
+    return AssistantMessageResponseDto.builder().content(content).isLastChunk(false).build();
+  }
+
+  private AssistantMessageResponseDto usageChunk(String content) {
+    return AssistantMessageResponseDto.builder().content(content).isLastChunk(false)
+        .promptTokens(10).completionTokens(20).totalTokens(30).build();
+  }
+}
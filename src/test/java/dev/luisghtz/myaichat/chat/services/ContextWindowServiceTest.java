@@ -0,0 +1,135 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.models.ContextWindow;
+import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ContextWindowServiceTest {
+
+  @Mock
+  private MessageRepository messageRepository;
+
+  private SimpleMeterRegistry meterRegistry;
+  private ContextWindowService contextWindowService;
+  private Chat chat;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    contextWindowService = new ContextWindowService(messageRepository, meterRegistry);
+    ReflectionTestUtils.setField(contextWindowService, "maxMessages", 50);
+    chat = new Chat();
+    chat.setId(UUID.randomUUID());
+    chat.setModel(AppModels.GPT_4O_MINI.getKey());
+    chat.setIsWebSearchMode(false);
+  }
+
+  @Test
+  @DisplayName("Should return every loaded message oldest first when the history fits the budget")
+  void buildContextWindow_historyFitsBudget_returnsAllMessagesOldestFirst() {
+    var first = message("User", "Hello");
+    var second = message("Assistant", "Hi, how can I help?");
+    var third = message("User", "Tell me a joke");
+    when(messageRepository.findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+        .thenReturn(List.of(third, second, first));
+
+    ContextWindow window = contextWindowService.buildContextWindow(chat);
+
+    assertThat(window.getMessages()).containsExactly(first, second, third);
+    assertThat(window.getDroppedTokens()).isZero();
+    assertThat(window.getEstimatedTokens()).isPositive();
+  }
+
+  @Test
+  @DisplayName("Should keep only the newest messages that fit into the model budget")
+  void buildContextWindow_historyExceedsBudget_dropsOldestMessages() {
+    // Each message is ~6k tokens, the gpt-4o-mini budget is 16k
+    var longText = "a".repeat(24_000);
+    var oldUser = message("User", longText);
+    var oldAssistant = message("Assistant", longText);
+    var user = message("User", longText);
+    var assistant = message("Assistant", longText);
+    var lastUser = message("User", "Short question");
+    when(messageRepository.findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+        .thenReturn(List.of(lastUser, assistant, user, oldAssistant, oldUser));
+
+    ContextWindow window = contextWindowService.buildContextWindow(chat);
+
+    assertThat(window.getMessages()).containsExactly(user, assistant, lastUser);
+    assertThat(window.getEstimatedTokens()).isLessThanOrEqualTo(window.getBudgetTokens());
+    assertThat(window.getDroppedTokens()).isGreaterThan(12_000);
+    assertThat(meterRegistry.summary("myaichat.context.prompt.tokens.saved", "model", chat.getModel())
+        .totalAmount()).isEqualTo(window.getDroppedTokens());
+  }
+
+  @Test
+  @DisplayName("Should always include the latest message even when it exceeds the budget")
+  void buildContextWindow_latestMessageExceedsBudget_isStillIncluded() {
+    var hugeMessage = message("User", "b".repeat(100_000));
+    var previous = message("Assistant", "Previous answer");
+    when(messageRepository.findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+        .thenReturn(List.of(hugeMessage, previous));
+
+    ContextWindow window = contextWindowService.buildContextWindow(chat);
+
+    assertThat(window.getMessages()).containsExactly(hugeMessage);
+  }
+
+  @Test
+  @DisplayName("Should not start the window with an assistant message")
+  void buildContextWindow_windowStartsWithAssistant_dropsLeadingAssistantMessage() {
+    var longText = "c".repeat(80_000);
+    var user = message("User", longText);
+    var assistant = message("Assistant", "Answer");
+    var lastUser = message("User", "Follow up");
+    when(messageRepository.findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+        .thenReturn(List.of(lastUser, assistant, user));
+
+    ContextWindow window = contextWindowService.buildContextWindow(chat);
+
+    assertThat(window.getMessages()).containsExactly(lastUser);
+  }
+
+  @Test
+  @DisplayName("Should load only a bounded page of messages")
+  void buildContextWindow_loadsBoundedPage() {
+    ReflectionTestUtils.setField(contextWindowService, "maxMessages", 20);
+    when(messageRepository.findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), any(Pageable.class)))
+        .thenReturn(new ArrayList<>());
+
+    contextWindowService.buildContextWindow(chat);
+
+    var pageableCaptor = ArgumentCaptor.forClass(Pageable.class);
+    verify(messageRepository).findAllByChatIdOrderByCreatedAtDesc(eq(chat.getId()), pageableCaptor.capture());
+    assertThat(pageableCaptor.getValue().getPageNumber()).isZero();
+    assertThat(pageableCaptor.getValue().getPageSize()).isEqualTo(20);
+  }
+
+  private AppMessage message(String role, String content) {
+    return AppMessage.builder().role(role).content(content).chat(chat).build();
+  }
+}
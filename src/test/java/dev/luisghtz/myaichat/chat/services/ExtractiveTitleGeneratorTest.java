@@ -0,0 +1,67 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.luisghtz.myaichat.chat.entities.Chat;
+
+class ExtractiveTitleGeneratorTest {
+  private final ExtractiveTitleGenerator generator = new ExtractiveTitleGenerator();
+  private final Chat chat = new Chat();
+
+  @Test
+  @DisplayName("generateTitle - Should use a short question without the request phrases")
+  void generateTitle_ShortQuestion() {
+    var title = generator.generateTitle(chat, "Can you explain how recursion works?", "Recursion is...");
+
+    assertThat(title).isEqualTo("Explain how recursion works");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should skip the greetings of a Spanish question")
+  void generateTitle_SpanishQuestion() {
+    var title = generator.generateTitle(chat, "Hola, ¿me puedes ayudar con una receta de paella?",
+        "Claro, aquí tienes una receta de paella valenciana.");
+
+    assertThat(title).isEqualTo("Una receta de paella");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should join the main keywords when the question is long")
+  void generateTitle_LongQuestion() {
+    var title = generator.generateTitle(chat,
+        "I have a Spring Boot application and the Hibernate queries in the Spring Boot service are really slow, "
+            + "what should I check first to make the Hibernate queries faster",
+        "Start with the Hibernate statistics of the slow queries.");
+
+    assertThat(title).isEqualTo("Spring Boot Hibernate queries");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should ignore code blocks and links")
+  void generateTitle_IgnoresCodeAndLinks() {
+    var title = generator.generateTitle(chat, "```java\nclass A {}\n```\nFix this NullPointerException https://example.com/a",
+        "The field is null.");
+
+    assertThat(title).isEqualTo("Fix this NullPointerException");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should answer with the default title of the language when nothing is left")
+  void generateTitle_DefaultTitle() {
+    assertThat(generator.generateTitle(chat, "Hello!", "Hi, how can I help?")).isEqualTo("New chat");
+    assertThat(generator.generateTitle(chat, "¡Hola!", "¿En qué te puedo ayudar?")).isEqualTo("Nueva conversación");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should keep the title under the maximum length")
+  void generateTitle_MaxLength() {
+    var title = generator.generateTitle(chat, "Internationalization localization containerization orchestration",
+        "");
+
+    assertThat(title.length()).isLessThanOrEqualTo(60);
+    assertThat(title).startsWith("Internationalization localization");
+  }
+}
@@ -0,0 +1,206 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import dev.luisghtz.myaichat.chat.dtos.AssistantMessageResponseDto;
+import dev.luisghtz.myaichat.chat.models.AssistantGeneration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class GenerationBufferServiceTest {
+  private static final String USER_ID = "user-id";
+
+  private SimpleMeterRegistry meterRegistry;
+  private GenerationBufferService generationBufferService;
+  private UUID chatId;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    generationBufferService = new GenerationBufferService(meterRegistry, 1_000_000L, 60L, 60L, 60L, 3);
+    chatId = UUID.randomUUID();
+  }
+
+  @Test
+  @DisplayName("stream - Should number the chunks and tag them with the generation id")
+  void stream_NumbersChunks() {
+    var generation = generationBufferService.register(chatId, USER_ID, chunks("Hel", "lo"));
+
+    var chunks = generationBufferService.stream(generation).collectList().block();
+
+    assertThat(chunks).extracting(AssistantMessageResponseDto::getIndex).containsExactly(0L, 1L);
+    assertThat(chunks).allMatch(chunk -> generation.getId().equals(chunk.getGenerationId()));
+  }
+
+  @Test
+  @DisplayName("resume - Should replay only the chunks after the last received index")
+  void resume_ReplaysFromOffset() {
+    var generation = generationBufferService.register(chatId, USER_ID, chunks("a", "b", "c"));
+    generationBufferService.stream(generation).blockLast();
+
+    var chunks = generationBufferService.resume(generation.getId(), chatId, USER_ID, 0).collectList().block();
+
+    assertThat(chunks).extracting(AssistantMessageResponseDto::getContent).containsExactly("b", "c");
+    assertThat(meterRegistry.counter("myaichat.assistant.stream.resumed").count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("resume - Should keep the generation running after the client disconnects")
+  void resume_SourceOutlivesClient() {
+    Sinks.Many<AssistantMessageResponseDto> source = Sinks.many().unicast().onBackpressureBuffer();
+    var generation = generationBufferService.register(chatId, USER_ID, source.asFlux());
+
+    List<AssistantMessageResponseDto> received = new ArrayList<>();
+
+    var client = generationBufferService.stream(generation).subscribe(received::add);
+    source.tryEmitNext(chunk("first"));
+    client.dispose();
+    source.tryEmitNext(chunk("second"));
+    source.tryEmitComplete();
+    var resumed = generationBufferService.resume(generation.getId(), chatId, USER_ID, 0)
+        .collectList().block(Duration.ofSeconds(1));
+
+    assertThat(received).extracting(AssistantMessageResponseDto::getContent).containsExactly("first");
+    assertThat(resumed).extracting(AssistantMessageResponseDto::getContent).containsExactly("second");
+  }
+
+  @Test
+  @DisplayName("resume - Should fail with 410 when the requested chunks were dropped from the buffer")
+  void resume_ChunksNoLongerBuffered() {
+    var generation = generationBufferService.register(chatId, USER_ID, chunks("a", "b", "c", "d", "e"));
+    generationBufferService.stream(generation).blockLast();
+
+    var resumed = generationBufferService.resume(generation.getId(), chatId, USER_ID, 0);
+
+    var exception = assertThrows(ResponseStatusException.class, () -> resumed.blockLast());
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.GONE);
+  }
+
+  @Test
+  @DisplayName("resume - Should fail with 404 for an unknown generation or another chat")
+  void resume_NotFound() {
+    var generation = generationBufferService.register(chatId, USER_ID, chunks("a"));
+
+    var unknown = assertThrows(ResponseStatusException.class,
+        () -> generationBufferService.resume(UUID.randomUUID(), chatId, USER_ID, -1));
+    var otherChat = assertThrows(ResponseStatusException.class,
+        () -> generationBufferService.resume(generation.getId(), UUID.randomUUID(), USER_ID, -1));
+
+    assertThat(unknown.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    assertThat(otherChat.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+  }
+
+  @Test
+  @DisplayName("resume - Should fail with 403 when the generation belongs to another user")
+  void resume_Forbidden() {
+    var generation = generationBufferService.register(chatId, USER_ID, chunks("a"));
+
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> generationBufferService.resume(generation.getId(), chatId, "other-user", -1));
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+  }
+
+  @Test
+  @DisplayName("resume - Should drop a finished generation after the completed ttl")
+  void resume_FinishedGenerationExpires() {
+    generationBufferService = new GenerationBufferService(meterRegistry, 1_000_000L, 60L, 0L, 60L, 3);
+    var running = generationBufferService.register(chatId, USER_ID, Flux.never());
+    var finished = generationBufferService.register(chatId, USER_ID, chunks("a"));
+    generationBufferService.stream(running).subscribe();
+    generationBufferService.stream(finished).blockLast();
+
+    var exception = assertThrows(ResponseStatusException.class,
+        () -> generationBufferService.resume(finished.getId(), chatId, USER_ID, -1));
+
+    assertThat(exception.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    assertThat(generationBufferService.resume(running.getId(), chatId, USER_ID, -1)).isNotNull();
+  }
+
+  @Test
+  @DisplayName("register - Should evict generations once the buffered chunks exceed the size limit")
+  void register_BoundedBySize() throws InterruptedException {
+    generationBufferService = new GenerationBufferService(meterRegistry, 10_000L, 60L, 60L, 60L, 100);
+    var first = generationBufferService.register(chatId, USER_ID, chunks("a".repeat(3_000)));
+    generationBufferService.stream(first).blockLast();
+    var second = generationBufferService.register(chatId, USER_ID, chunks("b".repeat(3_000)));
+    generationBufferService.stream(second).blockLast();
+
+    // Caffeine evicts in the background
+    for (int i = 0; i < 50 && isBuffered(first) && isBuffered(second); i++)
+      Thread.sleep(20);
+
+    assertThat(first.getBufferedBytes().get()).isGreaterThan(6_000L);
+    assertThat(isBuffered(first) && isBuffered(second)).isFalse();
+  }
+
+  @Test
+  @DisplayName("stream - Should cancel the source when no client resumes it within the idle ttl")
+  void stream_CancelsAbandonedGeneration() throws InterruptedException {
+    generationBufferService = new GenerationBufferService(meterRegistry, 1_000_000L, 60L, 60L, 0L, 3);
+    var cancelled = new AtomicBoolean();
+    var generation = generationBufferService.register(chatId, USER_ID,
+        Flux.<AssistantMessageResponseDto>never().doOnCancel(() -> cancelled.set(true)));
+
+    generationBufferService.stream(generation).subscribe().dispose();
+    for (int i = 0; i < 50 && !cancelled.get(); i++)
+      Thread.sleep(20);
+
+    assertThat(cancelled).isTrue();
+    assertThat(isBuffered(generation)).isFalse();
+    assertThat(meterRegistry.counter("myaichat.assistant.stream.abandoned").count()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("register - Should cancel an evicted generation that no client is reading")
+  void register_CancelsEvictedGeneration() throws InterruptedException {
+    generationBufferService = new GenerationBufferService(meterRegistry, 10_000L, 60L, 60L, 60L, 100);
+    var cancelled = new AtomicBoolean();
+    Sinks.Many<AssistantMessageResponseDto> source = Sinks.many().unicast().onBackpressureBuffer();
+    var abandoned = generationBufferService.register(chatId, USER_ID,
+        source.asFlux().doOnCancel(() -> cancelled.set(true)));
+    generationBufferService.stream(abandoned).subscribe().dispose();
+    // Alone over the size limit
+    source.tryEmitNext(chunk("a".repeat(6_000)));
+
+    // Caffeine evicts in the background
+    for (int i = 0; i < 50 && !cancelled.get(); i++)
+      Thread.sleep(20);
+
+    assertThat(cancelled).isTrue();
+    assertThat(isBuffered(abandoned)).isFalse();
+  }
+
+  private boolean isBuffered(AssistantGeneration generation) {
+    try {
+      generationBufferService.resume(generation.getId(), chatId, USER_ID, -1);
+      return true;
+    } catch (ResponseStatusException e) {
+      return false;
+    }
+  }
+
+  private Flux<AssistantMessageResponseDto> chunks(String... contents) {
+    return Flux.fromArray(contents).map(this::chunk);
+  }
+
+  private AssistantMessageResponseDto chunk(String content) {
+    var chunk = new AssistantMessageResponseDto();
+    chunk.setContent(content);
+    return chunk;
+  }
+}
@@ -0,0 +1,126 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.chat.entities.AppMessage;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
+
+@ExtendWith(MockitoExtension.class)
+class HistorySummaryServiceTest {
+
+  @Mock
+  private MessageRepository messageRepository;
+  @Mock
+  private ChatService chatService;
+  @Mock
+  private AIService aiProviderService;
+
+  private HistorySummaryService historySummaryService;
+  private Chat chat;
+
+  @BeforeEach
+  void setUp() {
+    historySummaryService = new HistorySummaryService(messageRepository, chatService, aiProviderService);
+    ReflectionTestUtils.setField(historySummaryService, "enabled", true);
+    ReflectionTestUtils.setField(historySummaryService, "minMessages", 2);
+    ReflectionTestUtils.setField(historySummaryService, "maxMessages", 40);
+    chat = new Chat();
+    chat.setId(UUID.randomUUID());
+  }
+
+  @Test
+  @DisplayName("Should not summarize when every message fits into the context window")
+  void updateSummaryIfNeeded_noCutoff_doesNothing() {
+    historySummaryService.updateSummaryIfNeeded(chat, null);
+
+    verifyNoInteractions(messageRepository, chatService, aiProviderService);
+  }
+
+  @Test
+  @DisplayName("Should not summarize when the history is already summarized up to the cutoff")
+  void updateSummaryIfNeeded_alreadySummarized_doesNothing() {
+    var cutoff = new Date(1_000);
+    chat.setHistorySummarizedUntil(new Date(2_000));
+
+    historySummaryService.updateSummaryIfNeeded(chat, cutoff);
+
+    verifyNoInteractions(messageRepository, chatService, aiProviderService);
+  }
+
+  @Test
+  @DisplayName("Should wait until enough messages are pending")
+  void updateSummaryIfNeeded_notEnoughPendingMessages_skipsProviderCall() {
+    var cutoff = new Date(10_000);
+    when(messageRepository.findAllByChatIdAndCreatedAtAfterAndCreatedAtBeforeOrderByCreatedAtAsc(eq(chat.getId()),
+        any(Date.class), eq(cutoff), any(Pageable.class)))
+        .thenReturn(List.of(message("User", "Hi", 1_000)));
+
+    historySummaryService.updateSummaryIfNeeded(chat, cutoff);
+
+    verify(aiProviderService, never()).summarizeHistory(any(), any(), anyList());
+    verifyNoInteractions(chatService);
+  }
+
+  @Test
+  @DisplayName("Should summarize only the delta since the last summary and persist the new state")
+  void updateSummaryIfNeeded_pendingMessages_updatesSummary() {
+    var summarizedUntil = new Date(1_000);
+    var cutoff = new Date(10_000);
+    chat.setHistorySummary("Old summary");
+    chat.setHistorySummarizedUntil(summarizedUntil);
+    var pending = List.of(message("User", "Question", 2_000), message("Assistant", "Answer", 3_000));
+    when(messageRepository.findAllByChatIdAndCreatedAtAfterAndCreatedAtBeforeOrderByCreatedAtAsc(eq(chat.getId()),
+        eq(summarizedUntil), eq(cutoff), any(Pageable.class)))
+        .thenReturn(pending);
+    when(aiProviderService.summarizeHistory(chat, "Old summary", pending)).thenReturn("New summary");
+
+    historySummaryService.updateSummaryIfNeeded(chat, cutoff);
+
+    verify(chatService).updateHistorySummary(chat.getId(), "New summary", new Date(3_000));
+    assertThat(chat.getHistorySummary()).isEqualTo("New summary");
+    assertThat(chat.getHistorySummarizedUntil()).isEqualTo(new Date(3_000));
+  }
+
+  @Test
+  @DisplayName("Should keep the previous summary when the provider returns nothing")
+  void updateSummaryIfNeeded_blankSummary_keepsPreviousSummary() {
+    var cutoff = new Date(10_000);
+    chat.setHistorySummary("Old summary");
+    var pending = List.of(message("User", "Question", 2_000), message("Assistant", "Answer", 3_000));
+    when(messageRepository.findAllByChatIdAndCreatedAtAfterAndCreatedAtBeforeOrderByCreatedAtAsc(eq(chat.getId()),
+        any(Date.class), eq(cutoff), any(Pageable.class)))
+        .thenReturn(pending);
+    when(aiProviderService.summarizeHistory(chat, "Old summary", pending)).thenReturn(" ");
+
+    historySummaryService.updateSummaryIfNeeded(chat, cutoff);
+
+    verifyNoInteractions(chatService);
+    assertThat(chat.getHistorySummary()).isEqualTo("Old summary");
+  }
+
+  private AppMessage message(String role, String content, long createdAt) {
+    return AppMessage.builder().role(role).content(content).createdAt(new Date(createdAt)).chat(chat).build();
+  }
+}
@@ -0,0 +1,69 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.chat.entities.Chat;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+class LlmTitleGeneratorTest {
+  @Mock
+  private AIService aiService;
+  @Mock
+  private TitleBatcher titleBatcher;
+  @InjectMocks
+  private LlmTitleGenerator generator;
+
+  private Chat chat;
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(generator, "maxUserChars", 20);
+    ReflectionTestUtils.setField(generator, "maxAssistantChars", 20);
+    chat = new Chat();
+    chat.setModel("gpt-4o-mini");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should remove the quotes, markdown and extra lines of the model answer")
+  void generateTitle_CleansModelAnswer() {
+    when(aiService.generateTitle(chat, "question", "answer")).thenReturn("**\"Paella Recipe\"**\n\nHope it helps");
+
+    assertThat(generator.generateTitle(chat, "question", "answer")).isEqualTo("Paella Recipe");
+  }
+
+  @Test
+  @DisplayName("generateTitle - Should only send the start of long messages")
+  void generateTitle_SendsPrefixes() {
+    when(aiService.generateTitle(chat, "How do I cook a…", "Start by heating the…")).thenReturn("Cooking");
+
+    generator.generateTitle(chat, "How do I cook a paella for ten people", "Start by heating the oil in a large pan");
+
+    verify(aiService).generateTitle(chat, "How do I cook a…", "Start by heating the…");
+  }
+
+  @Test
+  @DisplayName("requestTitle - Should submit the shortened messages to the batcher")
+  void requestTitle_UsesBatcher() {
+    when(titleBatcher.submit(eq("gpt-4o-mini"), eq(new TitleRequest("Short question", "How do I cook a…"))))
+        .thenReturn(Mono.just("\"Paella\""));
+
+    var title = generator.requestTitle(chat, "Short question", "How do I cook a paella").block();
+
+    assertThat(title).isEqualTo("Paella");
+  }
+}
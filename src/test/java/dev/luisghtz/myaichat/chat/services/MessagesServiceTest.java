@@ -1,18 +1,22 @@
 package dev.luisghtz.myaichat.chat.services;
 
 import dev.luisghtz.myaichat.ai.services.AIService;
+import dev.luisghtz.myaichat.ai.services.ResponseCache;
+import dev.luisghtz.myaichat.ai.services.StreamPermitService;
 import dev.luisghtz.myaichat.auth.dtos.UserJwtDataDto;
 import dev.luisghtz.myaichat.auth.entities.User;
 
 import dev.luisghtz.myaichat.chat.dtos.HistoryChatDto;
+import dev.luisghtz.myaichat.chat.dtos.NewMessageRequestDto;
 
 import dev.luisghtz.myaichat.chat.entities.AppMessage;
 import dev.luisghtz.myaichat.chat.entities.Chat;
-import dev.luisghtz.myaichat.chat.models.TokensSum;
+import dev.luisghtz.myaichat.chat.models.ContextWindow;
 import dev.luisghtz.myaichat.chat.repositories.ChatRepository;
 import dev.luisghtz.myaichat.chat.repositories.MessageRepository;
 
-import dev.luisghtz.myaichat.file.providers.AwsS3Service;
+import dev.luisghtz.myaichat.file.FileCleanupService;
+import dev.luisghtz.myaichat.file.StoredFileService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -25,8 +29,13 @@ import org.mockito.quality.Strictness;
 
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Schedulers;
+
 import java.util.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -43,11 +52,21 @@ class MessagesServiceTest {
   @Mock
   private ChatService chatService;
   @Mock
+  private ChatTitleService chatTitleService;
+  @Mock
   private MessageRepository messageRepository;
   @Mock
-  private AwsS3Service awsS3Service;
+  private FileCleanupService fileCleanupService;
+  @Mock
+  private StoredFileService storedFileService;
   @Mock
   private ChatRepository chatRepository;
+  @Mock
+  private ContextWindowService contextWindowService;
+  @Mock
+  private HistorySummaryService historySummaryService;
+
+  private SimpleMeterRegistry meterRegistry;
 
   @InjectMocks
   private MessagesService messagesService;
@@ -62,6 +81,22 @@ class MessagesServiceTest {
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    meterRegistry = new SimpleMeterRegistry();
+    ReflectionTestUtils.setField(messagesService, "blockingTaskScheduler", Schedulers.immediate());
+    ReflectionTestUtils.setField(messagesService, "meterRegistry", meterRegistry);
+    var generationBufferService = new GenerationBufferService(meterRegistry, 10_000_000L, 60L, 60L, 60L, 1000);
+    ReflectionTestUtils.setField(messagesService, "generationBufferService", generationBufferService);
+    // Coalescing is disabled so the provider chunks are forwarded one to one
+    ReflectionTestUtils.setField(messagesService, "chunkCoalescingService", new ChunkCoalescingService(meterRegistry));
+    var streamPermitService = new StreamPermitService(meterRegistry);
+    ReflectionTestUtils.setField(streamPermitService, "globalMax", 10);
+    ReflectionTestUtils.setField(streamPermitService, "perUserMax", 10);
+    ReflectionTestUtils.setField(streamPermitService, "perProviderMax", 10);
+    ReflectionTestUtils.setField(streamPermitService, "maxQueueSize", 10);
+    ReflectionTestUtils.setField(streamPermitService, "maxWaitMs", 1000L);
+    ReflectionTestUtils.setField(messagesService, "streamPermitService", streamPermitService);
+    ReflectionTestUtils.setField(messagesService, "responseCache",
+        new ResponseCache(meterRegistry, false, 0L, 60L, 0, 64));
   }
 
   @Nested
@@ -77,16 +112,19 @@ class MessagesServiceTest {
 
       // Prepare chat and messages
       Chat chat = mock(Chat.class);
-      when(chatService.findChatById(chatId)).thenReturn(chat);
+      when(chatService.findChatWithCustomPromptById(chatId)).thenReturn(chat);
       when(chat.getUser()).thenReturn(new User() {{ setId(userId); }});
       when(chat.getModel()).thenReturn("gpt-3");
       when(chat.getTitle()).thenReturn(null); // new chat
       when(chat.getId()).thenReturn(chatId);
+      when(chat.getTotalPromptTokens()).thenReturn(10L);
+      when(chat.getTotalCompletionTokens()).thenReturn(20L);
 
       AppMessage userMsg = mock(AppMessage.class);
       when(userMsg.getRole()).thenReturn("User");
       when(userMsg.getContent()).thenReturn("Hello");
-      when(chat.getMessages()).thenReturn(List.of(userMsg));
+      when(contextWindowService.buildContextWindow(chat))
+          .thenReturn(ContextWindow.builder().messages(List.of(userMsg)).build());
 
       // Build two ChatResponse-like mocks: first chunk (not last), second chunk (last with usage)
   var chunk1 = mock(org.springframework.ai.chat.model.ChatResponse.class, Answers.RETURNS_DEEP_STUBS);
@@ -104,10 +142,7 @@ class MessagesServiceTest {
           reactor.core.publisher.Flux.just(chunk1, chunk2)
       );
 
-  lenient().when(aiProviderService.generateTitle(eq(chat), anyString(), anyString())).thenReturn("Generated Title");
-
-  // Stub token sums repository call used after save
-  lenient().when(messageRepository.getSumOfPromptAndCompletionTokensByChatId(chatId)).thenReturn(new TokensSum(1L, 2L));
+  lenient().when(chatTitleService.titleNewChat(chat, "Hello", "Hello world")).thenReturn("Generated Title");
 
   // Capture repository saves
   lenient().when(messageRepository.save(any(AppMessage.class))).thenAnswer(invocation -> invocation.getArgument(0));
@@ -115,17 +150,28 @@ class MessagesServiceTest {
       var responses = messagesService.getAssistantMessage(chatId, userJwt).collectList().block();
 
       assertThat(responses).isNotNull();
-      assertThat(responses).hasSize(2);
-  assertThat(responses.get(0).getIsLastChunk()).isFalse();
-  assertThat(responses.get(1).getIsLastChunk()).isTrue();
+      assertThat(responses).hasSize(3);
+      assertThat(responses.get(0).getIsLastChunk()).isFalse();
+      // The last content chunk is emitted as is, title and totals arrive in a follow-up event
+      assertThat(responses.get(1).getIsLastChunk()).isFalse();
       assertThat(responses.get(1).getContent()).isEqualTo("world");
-      assertThat(responses.get(1).getChatTitle()).isEqualTo("Generated Title");
+      assertThat(responses.get(1).getTotalTokens()).isEqualTo(3);
+      assertThat(responses.get(1).getChatTitle()).isNull();
+      assertThat(responses.get(2).getIsLastChunk()).isTrue();
+      assertThat(responses.get(2).getContent()).isEmpty();
+      assertThat(responses.get(2).getChatTitle()).isEqualTo("Generated Title");
+      assertThat(responses.get(2).getTotalChatPromptTokens()).isEqualTo(11L);
+      assertThat(responses.get(2).getTotalChatCompletionTokens()).isEqualTo(22L);
+      assertThat(meterRegistry.find("myaichat.assistant.stream.latency").tag("outcome", "on_complete").timer())
+          .isNotNull()
+          .extracting(timer -> timer.count()).isEqualTo(1L);
 
       // Allow asynchronous DB saves and title update to run
       Thread.sleep(200);
 
       verify(messageRepository, atLeastOnce()).save(any(AppMessage.class));
-      verify(chatService, atLeastOnce()).updateChatTitle(eq(chatId), eq("Generated Title"));
+      verify(chatTitleService).titleNewChat(chat, "Hello", "Hello world");
+      verify(chatService).addTokenUsage(chatId, 1, 2);
     }
 
     @Test
@@ -136,12 +182,13 @@ class MessagesServiceTest {
       var userJwt = createUserJwtData(userId.toString());
 
       Chat chat = mock(Chat.class);
-      when(chatService.findChatById(chatId)).thenReturn(chat);
+      when(chatService.findChatWithCustomPromptById(chatId)).thenReturn(chat);
       when(chat.getUser()).thenReturn(new User() {{ setId(userId); }});
       when(chat.getModel()).thenReturn("gpt-3");
       when(chat.getTitle()).thenReturn("Existing Title");
       when(chat.getId()).thenReturn(chatId);
-      when(chat.getMessages()).thenReturn(Collections.emptyList());
+      when(contextWindowService.buildContextWindow(chat))
+          .thenReturn(ContextWindow.builder().messages(Collections.emptyList()).build());
 
   var chunk = mock(org.springframework.ai.chat.model.ChatResponse.class, Answers.RETURNS_DEEP_STUBS);
   when(chunk.getResult().getOutput().getText()).thenReturn("Only");
@@ -150,15 +197,137 @@ class MessagesServiceTest {
   when(chunk.getMetadata().getUsage().getCompletionTokens()).thenReturn(1);
 
   when(aiProviderService.getAssistantMessage(anyList(), any())).thenReturn(reactor.core.publisher.Flux.just(chunk));
-  lenient().when(messageRepository.getSumOfPromptAndCompletionTokensByChatId(chatId)).thenReturn(new TokensSum(0L, 1L));
   lenient().when(messageRepository.save(any(AppMessage.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
       var responses = messagesService.getAssistantMessage(chatId, userJwt).collectList().block();
 
       assertThat(responses).isNotNull();
-      assertThat(responses).hasSize(1);
-  assertThat(responses.get(0).getIsLastChunk()).isTrue();
-      assertThat(responses.get(0).getChatTitle()).isEqualTo("Existing Title");
+      assertThat(responses).hasSize(2);
+      assertThat(responses.get(0).getContent()).isEqualTo("Only");
+      assertThat(responses.get(1).getIsLastChunk()).isTrue();
+      assertThat(responses.get(1).getChatTitle()).isEqualTo("Existing Title");
+    }
+
+    @Test
+    @DisplayName("getAssistantMessage - Should checkpoint the partial answer and complete the same row")
+    void testGetAssistantMessage_CheckpointsPartialContent() {
+      ReflectionTestUtils.setField(messagesService, "checkpointIntervalChars", 5);
+      ReflectionTestUtils.setField(messagesService, "checkpointIntervalMs", 60_000L);
+      UUID chatId = UUID.randomUUID();
+      var userId = UUID.randomUUID();
+      var chat = mockExistingChat(chatId, userId);
+      var firstChunk = contentChunk("Hello ");
+      var lastChunk = usageChunk("world");
+      when(aiProviderService.getAssistantMessage(anyList(), any()))
+          .thenReturn(reactor.core.publisher.Flux.just(firstChunk, lastChunk));
+      List<String> savedContents = new ArrayList<>();
+      when(messageRepository.save(any(AppMessage.class))).thenAnswer(invocation -> {
+        AppMessage message = invocation.getArgument(0);
+        savedContents.add(message.getContent());
+        return message;
+      });
+
+      messagesService.getAssistantMessage(chatId, createUserJwtData(userId.toString())).blockLast();
+
+      var captor = ArgumentCaptor.forClass(AppMessage.class);
+      verify(messageRepository, times(2)).save(captor.capture());
+      assertThat(savedContents).containsExactly("Hello ", "Hello world");
+      assertThat(captor.getAllValues().get(0)).isSameAs(captor.getAllValues().get(1));
+      assertThat(captor.getValue().getCompletionTokens()).isEqualTo(2);
+      verify(chatService).addTokenUsage(chat.getId(), 1, 2);
+    }
+
+    @Test
+    @DisplayName("getAssistantMessage - Should keep the partial answer when the provider fails")
+    void testGetAssistantMessage_KeepsPartialContentOnError() {
+      ReflectionTestUtils.setField(messagesService, "checkpointIntervalChars", 100);
+      ReflectionTestUtils.setField(messagesService, "checkpointIntervalMs", 60_000L);
+      UUID chatId = UUID.randomUUID();
+      var userId = UUID.randomUUID();
+      mockExistingChat(chatId, userId);
+      var partialChunk = contentChunk("Partial");
+      when(aiProviderService.getAssistantMessage(anyList(), any())).thenReturn(reactor.core.publisher.Flux.concat(
+          reactor.core.publisher.Flux.just(partialChunk),
+          reactor.core.publisher.Flux.error(new RuntimeException("Provider failed"))));
+      when(messageRepository.save(any(AppMessage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+      var stream = messagesService.getAssistantMessage(chatId, createUserJwtData(userId.toString()));
+
+      assertThrows(RuntimeException.class, stream::blockLast);
+      var captor = ArgumentCaptor.forClass(AppMessage.class);
+      verify(messageRepository).save(captor.capture());
+      assertThat(captor.getValue().getContent()).isEqualTo("Partial");
+      assertThat(captor.getValue().getRole()).isEqualTo("Assistant");
+      verify(chatService, never()).addTokenUsage(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("getAssistantMessage - Should replay a cached answer without a permit or adding its usage to the chat")
+    void testGetAssistantMessage_CachedAnswerIsNotBilledAgain() {
+      ReflectionTestUtils.setField(messagesService, "responseCache",
+          new ResponseCache(meterRegistry, true, 10_000L, 60L, 1000, 64));
+      // No stream can start, only a cached answer can be sent
+      var streamPermitService = new StreamPermitService(meterRegistry);
+      ReflectionTestUtils.setField(streamPermitService, "globalMax", 0);
+      ReflectionTestUtils.setField(streamPermitService, "maxQueueSize", 0);
+      UUID chatId = UUID.randomUUID();
+      var userId = UUID.randomUUID();
+      var userJwt = createUserJwtData(userId.toString());
+      var chat = mockExistingChat(chatId, userId);
+      when(chat.getTotalPromptTokens()).thenReturn(10L);
+      when(chat.getTotalCompletionTokens()).thenReturn(20L);
+      when(aiProviderService.getAssistantMessage(anyList(), any()))
+          .thenAnswer(invocation -> reactor.core.publisher.Flux.just(usageResponse("Cached answer")));
+      when(messageRepository.save(any(AppMessage.class))).thenAnswer(invocation -> invocation.getArgument(0));
+      messagesService.getAssistantMessage(chatId, userJwt).blockLast();
+      ReflectionTestUtils.setField(messagesService, "streamPermitService", streamPermitService);
+
+      var responses = messagesService.getAssistantMessage(chatId, userJwt).collectList().block();
+
+      assertThat(responses).extracting(response -> response.getContent()).containsExactly("Cached answer", "", "");
+      assertThat(responses.get(2).getIsLastChunk()).isTrue();
+      assertThat(responses.get(2).getTotalChatPromptTokens()).isEqualTo(10L);
+      assertThat(responses.get(2).getTotalChatCompletionTokens()).isEqualTo(20L);
+      verify(aiProviderService, times(1)).getAssistantMessage(anyList(), any());
+      verify(chatService, times(1)).addTokenUsage(chatId, 1, 2);
+    }
+
+    private Chat mockExistingChat(UUID chatId, UUID userId) {
+      Chat chat = mock(Chat.class);
+      when(chatService.findChatWithCustomPromptById(chatId)).thenReturn(chat);
+      when(chat.getUser()).thenReturn(new User() {{ setId(userId); }});
+      when(chat.getModel()).thenReturn("gpt-4o-mini");
+      when(chat.getTitle()).thenReturn("Existing Title");
+      when(chat.getId()).thenReturn(chatId);
+      when(chat.getMaxOutputTokens()).thenReturn((short) 2000);
+      when(contextWindowService.buildContextWindow(chat))
+          .thenReturn(ContextWindow.builder().messages(Collections.emptyList()).build());
+      return chat;
+    }
+
+    private org.springframework.ai.chat.model.ChatResponse contentChunk(String text) {
+      var chunk = mock(org.springframework.ai.chat.model.ChatResponse.class, Answers.RETURNS_DEEP_STUBS);
+      when(chunk.getResult().getOutput().getText()).thenReturn(text);
+      when(chunk.getMetadata().getUsage().getTotalTokens()).thenReturn(0);
+      return chunk;
+    }
+
+    // A real response, the cache replays the text and usage it recorded
+    private org.springframework.ai.chat.model.ChatResponse usageResponse(String text) {
+      return new org.springframework.ai.chat.model.ChatResponse(
+          List.of(new org.springframework.ai.chat.model.Generation(
+              new org.springframework.ai.chat.messages.AssistantMessage(text))),
+          org.springframework.ai.chat.metadata.ChatResponseMetadata.builder()
+              .usage(new org.springframework.ai.chat.metadata.DefaultUsage(1, 2, 3)).build());
+    }
+
+    private org.springframework.ai.chat.model.ChatResponse usageChunk(String text) {
+      var chunk = mock(org.springframework.ai.chat.model.ChatResponse.class, Answers.RETURNS_DEEP_STUBS);
+      when(chunk.getResult().getOutput().getText()).thenReturn(text);
+      when(chunk.getMetadata().getUsage().getTotalTokens()).thenReturn(3);
+      when(chunk.getMetadata().getUsage().getPromptTokens()).thenReturn(1);
+      when(chunk.getMetadata().getUsage().getCompletionTokens()).thenReturn(2);
+      return chunk;
     }
   }
 
@@ -180,16 +349,13 @@ class MessagesServiceTest {
       var userJwt = createUserJwtData(userId.toString());
       var userChat = new User();
       userChat.setId(userId);
-      when(chatService.findChatById(chatId)).thenReturn(mock(Chat.class));
-      when(messageRepository.getSumOfPromptAndCompletionTokensByChatId(chatId))
-          .thenReturn(new TokensSum(5L, 10L));
       Pageable pageable = PageRequest.of(0, 10);
       Chat chat = mock(Chat.class);
-      TokensSum tokensSum = new TokensSum(5L, 10L);
       List<AppMessage> messages = List.of(mock(AppMessage.class));
 
       when(chatService.findChatById(chatId)).thenReturn(chat);
-      when(messageRepository.getSumOfPromptAndCompletionTokensByChatId(chatId)).thenReturn(tokensSum);
+      when(chat.getTotalPromptTokens()).thenReturn(5L);
+      when(chat.getTotalCompletionTokens()).thenReturn(10L);
       when(messageRepository.findAllByChatOrderByCreatedAtDesc(chat, pageable)).thenReturn(messages);
       when(chat.getModel()).thenReturn("gpt-3");
       Short maxOutputTokens = 100;
@@ -224,6 +390,50 @@ class MessagesServiceTest {
     }
   }
 
+  @Nested
+  @DisplayName("UserMessage Method")
+  class UserMessageTests {
+
+    @Test
+    @DisplayName("userMessage - Should not take another reference on the file the upload acquired")
+    void testUserMessage_KeepsTheUploadReference() {
+      var userJwt = createUserJwtData(UUID.randomUUID().toString());
+      var request = new NewMessageRequestDto();
+      request.setContent("Describe this image");
+      var chat = Chat.builder().id(UUID.randomUUID()).build();
+      when(chatService.getChat(request, userJwt.getId())).thenReturn(chat);
+
+      messagesService.userMessage(request, userJwt, "https://cdn.example.com/myaichat/abc.png");
+
+      verify(messageRepository).save(any(AppMessage.class));
+      verifyNoInteractions(storedFileService);
+    }
+
+    @Test
+    @DisplayName("releaseUploadedFile - Should give back the upload reference and schedule the unreferenced file")
+    void testReleaseUploadedFile() {
+      when(storedFileService.release(Map.of("myaichat/abc.png", 1L))).thenReturn(List.of("myaichat/abc.png"));
+
+      messagesService.releaseUploadedFile("https://cdn.example.com/myaichat/abc.png");
+
+      verify(fileCleanupService).scheduleDeletion(List.of("myaichat/abc.png"));
+    }
+
+    @Test
+    @DisplayName("userMessage - Should not take references without a file")
+    void testUserMessage_WithoutFile() {
+      var userJwt = createUserJwtData(UUID.randomUUID().toString());
+      var request = new NewMessageRequestDto();
+      request.setContent("Hello");
+      var chat = Chat.builder().id(UUID.randomUUID()).build();
+      when(chatService.getChat(request, userJwt.getId())).thenReturn(chat);
+
+      messagesService.userMessage(request, userJwt, null);
+
+      verifyNoInteractions(storedFileService);
+    }
+  }
+
   @Nested
   @DisplayName("SaveAll Method")
   class SaveAllTests {
@@ -254,26 +464,21 @@ class MessagesServiceTest {
       UUID chatId = UUID.randomUUID();
       var userId = UUID.randomUUID();
       var userJwt = createUserJwtData(userId.toString());
-      var userChat = new User();
-      userChat.setId(userId);
 
-      Chat chat = mock(Chat.class);
       AppMessage msg1 = mock(AppMessage.class);
       AppMessage msg2 = mock(AppMessage.class);
 
-      when(chatService.findChatById(chatId)).thenReturn(chat);
-      when(chat.getUser()).thenReturn(userChat);
       when(messageRepository.findAllByChatId(chatId)).thenReturn(List.of(msg1, msg2));
       when(msg1.getFileUrl()).thenReturn("https://cdn.example.com/image1.png");
       when(msg2.getFileUrl()).thenReturn(null);
 
-      doNothing().when(awsS3Service).deleteFile("image1.png");
       doNothing().when(messageRepository).deleteAllByChatId(chatId);
+      when(storedFileService.release(Map.of("image1.png", 1L))).thenReturn(List.of("image1.png"));
 
       messagesService.deleteAllByChat(chatId, userJwt);
 
-      verify(chatService).findChatById(chatId);
-      verify(awsS3Service).deleteFile("image1.png");
+      verify(chatService).validateChatBelongsToUser(chatId, userJwt);
+      verify(fileCleanupService).scheduleDeletion(List.of("image1.png"));
       verify(messageRepository).deleteAllByChatId(chatId);
     }
 
@@ -283,18 +488,11 @@ class MessagesServiceTest {
       UUID chatId = UUID.randomUUID();
       var userId = UUID.randomUUID();
       var userJwt = createUserJwtData(userId.toString());
-      var userChat = new User();
-      userChat.setId(UUID.randomUUID()); // Different user ID
-
-      Chat chat = mock(Chat.class);
-
-      when(chatService.findChatById(chatId)).thenReturn(chat);
-      when(chat.getUser()).thenReturn(userChat);
+      doThrow(new ResponseStatusException(HttpStatus.FORBIDDEN, "You don't have access to this chat"))
+          .when(chatService).validateChatBelongsToUser(chatId, userJwt);
 
       assertThrows(ResponseStatusException.class, () -> messagesService.deleteAllByChat(chatId, userJwt));
 
-      verify(chatService).findChatById(chatId);
-      verify(messageRepository, never()).findAllByChatId(any());
       verify(messageRepository, never()).deleteAllByChatId(any());
     }
   }
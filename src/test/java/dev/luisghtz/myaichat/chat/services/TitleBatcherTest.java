@@ -0,0 +1,111 @@
+package dev.luisghtz.myaichat.chat.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.ai.models.TitleRequest;
+import dev.luisghtz.myaichat.ai.services.AIService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@ExtendWith(MockitoExtension.class)
+class TitleBatcherTest {
+  private static final TitleRequest FIRST = new TitleRequest("first question", "first answer");
+  private static final TitleRequest SECOND = new TitleRequest("second question", "second answer");
+
+  @Mock
+  private AIService aiService;
+
+  private ExecutorService executor;
+  private Scheduler scheduler;
+  private TitleBatcher titleBatcher;
+
+  @BeforeEach
+  void setUp() {
+    // Like the virtual-thread scheduler, it can't schedule delayed tasks
+    executor = Executors.newCachedThreadPool();
+    scheduler = Schedulers.fromExecutor(executor, true);
+    titleBatcher = new TitleBatcher(aiService, scheduler);
+    ReflectionTestUtils.setField(titleBatcher, "windowMs", 100L);
+    ReflectionTestUtils.setField(titleBatcher, "maxSize", 10);
+    when(aiService.getProvider(any())).thenReturn("openai");
+  }
+
+  @AfterEach
+  void tearDown() {
+    scheduler.dispose();
+    executor.shutdownNow();
+  }
+
+  @Test
+  @DisplayName("submit - Should send the titles requested within the window in one call")
+  void submit_BatchesWithinWindow() {
+    when(aiService.generateTitles("gpt-4o-mini", List.of(FIRST, SECOND))).thenReturn(List.of("First", "Second"));
+
+    var titles = Mono.zip(titleBatcher.submit("gpt-4o-mini", FIRST), titleBatcher.submit("gpt-4.1", SECOND))
+        .block(Duration.ofSeconds(2));
+
+    assertThat(titles.getT1()).isEqualTo("First");
+    assertThat(titles.getT2()).isEqualTo("Second");
+    verify(aiService, times(1)).generateTitles(any(), anyList());
+  }
+
+  @Test
+  @DisplayName("submit - Should send the batch right away when it is full")
+  void submit_SendsFullBatch() {
+    ReflectionTestUtils.setField(titleBatcher, "windowMs", 60_000L);
+    ReflectionTestUtils.setField(titleBatcher, "maxSize", 2);
+    when(aiService.generateTitles("gpt-4o-mini", List.of(FIRST, SECOND))).thenReturn(List.of("First", "Second"));
+
+    var titles = Mono.zip(titleBatcher.submit("gpt-4o-mini", FIRST), titleBatcher.submit("gpt-4o-mini", SECOND))
+        .block(Duration.ofSeconds(2));
+
+    assertThat(titles.getT2()).isEqualTo("Second");
+  }
+
+  @Test
+  @DisplayName("submit - Should complete empty for the conversations the model skipped")
+  void submit_MissingTitle() {
+    when(aiService.generateTitles(eq("gpt-4o-mini"), anyList())).thenReturn(Arrays.asList("First", null));
+
+    var first = titleBatcher.submit("gpt-4o-mini", FIRST).cache();
+    var second = titleBatcher.submit("gpt-4o-mini", SECOND).cache();
+    first.subscribe();
+    second.subscribe();
+
+    assertThat(first.block(Duration.ofSeconds(2))).isEqualTo("First");
+    assertThat(second.block(Duration.ofSeconds(2))).isNull();
+  }
+
+  @Test
+  @DisplayName("submit - Should fail every title of the batch when the call fails")
+  void submit_CallFails() {
+    when(aiService.generateTitles(eq("gpt-4o-mini"), anyList())).thenThrow(new RuntimeException("503"));
+
+    var title = titleBatcher.submit("gpt-4o-mini", FIRST);
+
+    assertThrows(RuntimeException.class, () -> title.block(Duration.ofSeconds(2)));
+  }
+}
@@ -0,0 +1,76 @@
+package dev.luisghtz.myaichat.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.mock.env.MockEnvironment;
+
+import reactor.core.scheduler.Scheduler;
+
+class SchedulersConfigTest {
+
+  @Test
+  @DisplayName("orderedWorkersScheduler - Should run the checkpoints, the final save and the dispose of a worker in order")
+  void orderedWorkersScheduler_RunsWorkerTasksInOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      assertCheckpointsRunInOrder(SchedulersConfig.orderedWorkersScheduler(executor));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @EnabledForJreRange(min = JRE.JAVA_21)
+  @DisplayName("blockingTaskScheduler - Should keep the worker tasks in order on virtual threads")
+  void blockingTaskScheduler_VirtualThreads_RunsWorkerTasksInOrder() throws Exception {
+    var environment = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+    var scheduler = new SchedulersConfig().blockingTaskScheduler(environment);
+    try {
+      assertCheckpointsRunInOrder(scheduler);
+    } finally {
+      scheduler.dispose();
+    }
+  }
+
+  // Same pattern as the persistence worker of an assistant stream
+  private void assertCheckpointsRunInOrder(Scheduler scheduler) throws InterruptedException {
+    List<Integer> saves = new CopyOnWriteArrayList<>();
+    var disposed = new CountDownLatch(1);
+    var worker = scheduler.createWorker();
+    for (int i = 0; i < 50; i++) {
+      final int save = i;
+      worker.schedule(() -> {
+        sleepUpTo(3);
+        saves.add(save);
+      });
+    }
+    worker.schedule(() -> {
+      worker.dispose();
+      disposed.countDown();
+    });
+
+    assertThat(disposed.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(saves).containsExactlyElementsOf(IntStream.range(0, 50).boxed().toList());
+  }
+
+  private void sleepUpTo(int millis) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextInt(millis + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
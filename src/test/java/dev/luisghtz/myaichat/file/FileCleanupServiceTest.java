@@ -0,0 +1,175 @@
+package dev.luisghtz.myaichat.file;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import dev.luisghtz.myaichat.file.entities.PendingFileDeletion;
+import dev.luisghtz.myaichat.file.entities.StoredFile;
+import dev.luisghtz.myaichat.file.providers.AwsS3Service;
+import dev.luisghtz.myaichat.file.repositories.PendingFileDeletionRepository;
+import dev.luisghtz.myaichat.file.repositories.StoredFileRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class FileCleanupServiceTest {
+
+  @Mock
+  private PendingFileDeletionRepository pendingFileDeletionRepository;
+  @Mock
+  private StoredFileRepository storedFileRepository;
+  @Mock
+  private AwsS3Service awsS3Service;
+
+  private SimpleMeterRegistry meterRegistry;
+  private FileCleanupService fileCleanupService;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    fileCleanupService = new FileCleanupService(pendingFileDeletionRepository, storedFileRepository, awsS3Service,
+        meterRegistry);
+    ReflectionTestUtils.setField(fileCleanupService, "batchSize", 2);
+    ReflectionTestUtils.setField(fileCleanupService, "maxAttempts", 3);
+    ReflectionTestUtils.setField(fileCleanupService, "baseBackoffSeconds", 30L);
+    ReflectionTestUtils.setField(fileCleanupService, "maxBackoffSeconds", 3600L);
+    ReflectionTestUtils.setField(fileCleanupService, "graceSeconds", 300L);
+  }
+
+  @Test
+  @DisplayName("scheduleDeletion - Should store one pending row per distinct key")
+  @SuppressWarnings("unchecked")
+  void scheduleDeletion_StoresDistinctKeys() {
+    long before = System.currentTimeMillis();
+    fileCleanupService.scheduleDeletion(List.of("a.png", "b.png", "a.png"));
+
+    ArgumentCaptor<List<PendingFileDeletion>> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingFileDeletionRepository).saveAll(captor.capture());
+    assertEquals(List.of("a.png", "b.png"), captor.getValue().stream().map(PendingFileDeletion::getFileKey).toList());
+    assertTrue(captor.getValue().stream().allMatch(pending -> pending.getAttempts() == 0));
+    // First attempt after the grace period
+    assertTrue(captor.getValue().get(0).getNextAttemptAt().getTime() >= before + 300_000);
+  }
+
+  @Test
+  @DisplayName("scheduleDeletion - Should not write anything without keys")
+  void scheduleDeletion_SkipsEmptyKeys() {
+    fileCleanupService.scheduleDeletion(List.of());
+
+    verifyNoInteractions(pendingFileDeletionRepository);
+  }
+
+  @Test
+  @DisplayName("processPendingDeletions - Should delete the rows of the removed files and keep draining full batches")
+  void processPendingDeletions_DeletesRowsOfRemovedFiles() {
+    var first = List.of(pending("a.png", 0), pending("b.png", 0));
+    var second = List.of(pending("c.png", 0));
+    when(pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+        eq(3), any(Date.class), any(Pageable.class))).thenReturn(first, second);
+    when(awsS3Service.deleteFiles(any())).thenReturn(CompletableFuture.completedFuture(List.of()));
+
+    fileCleanupService.processPendingDeletions();
+
+    verify(awsS3Service).deleteFiles(List.of("a.png", "b.png"));
+    verify(awsS3Service).deleteFiles(List.of("c.png"));
+    verify(pendingFileDeletionRepository).deleteAllInBatch(first);
+    verify(pendingFileDeletionRepository).deleteAllInBatch(second);
+    assertEquals(3.0, meterRegistry.get("myaichat.files.cleanup").tag("outcome", "deleted").counter().count());
+  }
+
+  @Test
+  @DisplayName("processPendingDeletions - Should reschedule the files S3 could not delete with a backoff")
+  @SuppressWarnings("unchecked")
+  void processPendingDeletions_ReschedulesFailedFiles() {
+    var deleted = pending("a.png", 0);
+    var failed = pending("b.png", 1);
+    when(pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+        anyInt(), any(Date.class), any(Pageable.class))).thenReturn(List.of(deleted, failed), List.of());
+    when(awsS3Service.deleteFiles(any())).thenReturn(CompletableFuture.completedFuture(List.of("b.png")));
+    long before = System.currentTimeMillis();
+
+    fileCleanupService.processPendingDeletions();
+
+    verify(pendingFileDeletionRepository).deleteAllInBatch(List.of(deleted));
+    ArgumentCaptor<List<PendingFileDeletion>> captor = ArgumentCaptor.forClass(List.class);
+    verify(pendingFileDeletionRepository).saveAll(captor.capture());
+    assertEquals(List.of(failed), captor.getValue());
+    assertEquals(2, failed.getAttempts());
+    // Second attempt waits twice the base backoff
+    assertTrue(failed.getNextAttemptAt().getTime() >= before + 60_000);
+    assertNotNull(failed.getLastError());
+  }
+
+  @Test
+  @DisplayName("processPendingDeletions - Should reschedule the whole batch when the S3 request fails")
+  void processPendingDeletions_ReschedulesBatchWhenRequestFails() {
+    var batch = new ArrayList<>(List.of(pending("a.png", 0)));
+    when(pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+        anyInt(), any(Date.class), any(Pageable.class))).thenReturn(batch);
+    when(awsS3Service.deleteFiles(any()))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+
+    fileCleanupService.processPendingDeletions();
+
+    verify(pendingFileDeletionRepository).deleteAllInBatch(List.of());
+    verify(pendingFileDeletionRepository).saveAll(batch);
+    assertEquals(1, batch.get(0).getAttempts());
+    assertTrue(batch.get(0).getLastError().contains("S3 unavailable"));
+    assertEquals(1.0, meterRegistry.get("myaichat.files.cleanup").tag("outcome", "failed").counter().count());
+  }
+
+  @Test
+  @DisplayName("processPendingDeletions - Should keep the files referenced again since they were released")
+  void processPendingDeletions_SkipsReferencedFiles() {
+    var referenced = pending("shared.png", 0);
+    var released = pending("old.png", 0);
+    when(pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+        anyInt(), any(Date.class), any(Pageable.class))).thenReturn(List.of(referenced, released), List.of());
+    when(storedFileRepository.findAllById(List.of("shared.png", "old.png")))
+        .thenReturn(List.of(StoredFile.builder().fileKey("shared.png").refCount(1L).build()));
+    when(awsS3Service.deleteFiles(any())).thenReturn(CompletableFuture.completedFuture(List.of()));
+
+    fileCleanupService.processPendingDeletions();
+
+    verify(pendingFileDeletionRepository).deleteAllInBatch(List.of(referenced));
+    verify(awsS3Service).deleteFiles(List.of("old.png"));
+    verify(pendingFileDeletionRepository).deleteAllInBatch(List.of(released));
+  }
+
+  @Test
+  @DisplayName("processPendingDeletions - Should do nothing when there are no due rows")
+  void processPendingDeletions_NoDueRows() {
+    when(pendingFileDeletionRepository.findAllByAttemptsLessThanAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+        anyInt(), any(Date.class), any(Pageable.class))).thenReturn(List.of());
+
+    fileCleanupService.processPendingDeletions();
+
+    verifyNoInteractions(awsS3Service);
+  }
+
+  private PendingFileDeletion pending(String fileKey, int attempts) {
+    return PendingFileDeletion.builder()
+        .fileKey(fileKey)
+        .attempts(attempts)
+        .nextAttemptAt(new Date())
+        .createdAt(new Date())
+        .build();
+  }
+}
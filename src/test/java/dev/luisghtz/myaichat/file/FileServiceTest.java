@@ -8,6 +8,18 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.http.ContentStreamProvider;
+
+import dev.luisghtz.myaichat.ai.models.AppModels;
+import dev.luisghtz.myaichat.file.models.ProcessedImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -17,58 +29,114 @@ class FileServiceTest {
   @Mock
   private AwsS3Service awsS3Service;
 
+  @Mock
+  private ImageProcessingService imageProcessingService;
+
+  @Mock
+  private StoredFileService storedFileService;
+
   @Mock
   private MultipartFile multipartFile;
 
   @InjectMocks
   private FileService fileService;
 
+  private final byte[] fileBytes = "test-file-content".getBytes();
+
   @BeforeEach
   void setUp() {
     ReflectionTestUtils.setField(fileService, "cdnUrl", "https://cdn.example.com/");
   }
 
   @Test
-  void uploadFile_ShouldUploadFileAndReturnCdnUrl() throws Exception {
-    byte[] fileBytes = "test-file-content".getBytes();
-    String originalFileName = "test.png";
+  void uploadFile_ShouldUploadFileUnderItsContentHashAndReturnCdnUrl() throws Exception {
+    when(multipartFile.getOriginalFilename()).thenReturn("Test.PNG");
+    when(multipartFile.getSize()).thenReturn((long) fileBytes.length);
+    when(multipartFile.getContentType()).thenReturn("image/png");
+    when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(fileBytes));
+
+    String result = fileService.uploadFile(multipartFile, null);
+
+    String expectedKey = "myaichat/" + sha256(fileBytes) + ".png";
+    assertEquals("https://cdn.example.com/" + expectedKey, result);
+    verify(awsS3Service, times(1)).uploadFile(eq(expectedKey), any(ContentStreamProvider.class),
+        eq((long) fileBytes.length), eq("image/png"));
+    verify(storedFileService).acquire(expectedKey);
+  }
+
+  @Test
+  void uploadFile_ShouldReuseAnAlreadyStoredFile() throws Exception {
+    when(multipartFile.getOriginalFilename()).thenReturn("test.png");
+    when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(fileBytes));
+    String expectedKey = "myaichat/" + sha256(fileBytes) + ".png";
+    when(storedFileService.isStored(expectedKey)).thenReturn(true);
+
+    String result = fileService.uploadFile(multipartFile, null);
+
+    assertEquals("https://cdn.example.com/" + expectedKey, result);
+    verifyNoInteractions(awsS3Service);
+    verify(storedFileService).acquire(expectedKey);
+  }
+
+  @Test
+  void uploadFile_ShouldStreamTheMultipartContentWithoutReadingItIntoMemory() throws Exception {
+    when(multipartFile.getOriginalFilename()).thenReturn("test.png");
+    when(multipartFile.getSize()).thenReturn((long) fileBytes.length);
+    when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(fileBytes));
 
-    when(multipartFile.getBytes()).thenReturn(fileBytes);
-    when(multipartFile.getOriginalFilename()).thenReturn(originalFileName);
+    fileService.uploadFile(multipartFile, null);
 
-    String result = fileService.uploadFile(multipartFile);
+    ArgumentCaptor<ContentStreamProvider> providerCaptor = ArgumentCaptor.forClass(ContentStreamProvider.class);
+    verify(awsS3Service).uploadFile(anyString(), providerCaptor.capture(), eq((long) fileBytes.length), any());
+    assertArrayEquals(fileBytes, providerCaptor.getValue().newStream().readAllBytes());
+    verify(multipartFile, never()).getBytes();
+  }
+
+  @Test
+  void uploadFile_ShouldThrowUncheckedIOException_WhenFileCannotBeRead() throws Exception {
+    when(multipartFile.getInputStream()).thenThrow(new IOException("IO Error"));
 
-    assertNotNull(result);
-    assertTrue(result.startsWith("https://cdn.example.com/myaichat/"));
-    assertTrue(result.endsWith("_" + originalFileName));
-    verify(awsS3Service, times(1)).uploadFile(anyString(), eq(fileBytes));
+    UncheckedIOException ex = assertThrows(UncheckedIOException.class,
+        () -> fileService.uploadFile(multipartFile, null));
+    assertTrue(ex.getMessage().contains("Failed to read the uploaded file"));
+    verifyNoInteractions(awsS3Service);
   }
 
   @Test
-  void uploadFile_ShouldThrowRuntimeException_WhenFileConversionFails() throws Exception {
-    when(multipartFile.getBytes()).thenThrow(new RuntimeException("IO Error"));
-    when(multipartFile.getOriginalFilename()).thenReturn("fail.png");
+  void uploadFile_ShouldUploadTheDownscaledImageWithTheNewExtension() throws Exception {
+    byte[] processed = { 1, 2, 3 };
+    when(multipartFile.getOriginalFilename()).thenReturn("screenshot.png");
+    when(imageProcessingService.process(multipartFile, 1_536))
+        .thenReturn(Optional.of(new ProcessedImage(processed, "image/jpeg", ".jpg", 1536, 864)));
 
-    RuntimeException ex = assertThrows(RuntimeException.class, () -> fileService.uploadFile(multipartFile));
-    assertTrue(ex.getMessage().contains("Failed to convert file to byte array"));
-    verify(awsS3Service, never()).uploadFile(anyString(), any());
+    String result = fileService.uploadFile(multipartFile, AppModels.GEMINI_FLASH_2_5_FLASH.getKey());
+
+    String expectedKey = "myaichat/" + sha256(processed) + ".jpg";
+    assertEquals("https://cdn.example.com/" + expectedKey, result);
+    ArgumentCaptor<ContentStreamProvider> providerCaptor = ArgumentCaptor.forClass(ContentStreamProvider.class);
+    verify(awsS3Service).uploadFile(eq(expectedKey), providerCaptor.capture(), eq(3L), eq("image/jpeg"));
+    assertArrayEquals(processed, providerCaptor.getValue().newStream().readAllBytes());
+    verify(multipartFile, never()).getInputStream();
   }
 
   @Test
-  void generateFileName_ShouldContainOriginalFileName() {
+  void uploadFile_ShouldUseTheDefaultImageLimitWithoutModel() throws Exception {
     when(multipartFile.getOriginalFilename()).thenReturn("photo.jpg");
-    // Use reflection to access private method
-    String name = ReflectionTestUtils.invokeMethod(fileService, "generateFileName", multipartFile);
-    assertNotNull(name);
-    assertTrue(name.startsWith("myaichat/"));
-    assertTrue(name.endsWith("_photo.jpg"));
+    when(multipartFile.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(fileBytes));
+
+    fileService.uploadFile(multipartFile, null);
+
+    verify(imageProcessingService).process(multipartFile, AppModels.getMaxImageDimension(null));
   }
 
   @Test
-  void convertToByteArray_ShouldReturnFileBytes() throws Exception {
-    byte[] expected = { 1, 2, 3 };
-    when(multipartFile.getBytes()).thenReturn(expected);
-    byte[] actual = ReflectionTestUtils.invokeMethod(fileService, "convertToByteArray", multipartFile);
-    assertArrayEquals(expected, actual);
+  void generateFileName_ShouldUseTheContentHash() {
+    // Use reflection to access private method
+    String name = ReflectionTestUtils.invokeMethod(fileService, "generateFileName", "abc123", ".jpg");
+    assertEquals("myaichat/abc123.jpg", name);
+  }
+
+  private String sha256(byte[] content) throws Exception {
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
   }
 }
@@ -0,0 +1,201 @@
+package dev.luisghtz.myaichat.file;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+class ImageProcessingServiceTest {
+
+  private ImageProcessingService imageProcessingService;
+
+  @BeforeEach
+  void setUp() {
+    imageProcessingService = new ImageProcessingService();
+    ReflectionTestUtils.setField(imageProcessingService, "enabled", true);
+    ReflectionTestUtils.setField(imageProcessingService, "jpegQuality", 0.85f);
+    ReflectionTestUtils.setField(imageProcessingService, "maxPixels", 25_000_000L);
+    ReflectionTestUtils.setField(imageProcessingService, "maxDecodedPixels", 8_000_000L);
+  }
+
+  @Test
+  @DisplayName("process - Should downscale a large image to the max dimension keeping the aspect ratio")
+  void process_DownscalesLargeImage() throws IOException {
+    var file = imageFile("photo.jpeg", "image/jpeg", image(4000, 2000, false), "jpeg");
+
+    var processed = imageProcessingService.process(file, 2048).orElseThrow();
+
+    assertEquals(2048, processed.width());
+    assertEquals(1024, processed.height());
+    assertEquals("image/jpeg", processed.contentType());
+    assertEquals(".jpg", processed.extension());
+    assertTrue(processed.content().length < file.getSize());
+    var decoded = ImageIO.read(new ByteArrayInputStream(processed.content()));
+    assertEquals(2048, decoded.getWidth());
+    assertEquals(1024, decoded.getHeight());
+  }
+
+  @Test
+  @DisplayName("process - Should keep PNGs lossless, including their transparency")
+  void process_KeepsPngs() throws IOException {
+    var file = imageFile("logo.png", "image/png", image(3000, 3000, true), "png");
+
+    var processed = imageProcessingService.process(file, 1536).orElseThrow();
+
+    assertEquals("image/png", processed.contentType());
+    assertEquals(".png", processed.extension());
+    assertTrue(ImageIO.read(new ByteArrayInputStream(processed.content())).getColorModel().hasAlpha());
+  }
+
+  @Test
+  @DisplayName("process - Should leave images within the limit untouched")
+  void process_LeavesSmallImagesUntouched() throws IOException {
+    var file = imageFile("small.jpg", "image/jpeg", image(800, 600, false), "jpeg");
+
+    assertTrue(imageProcessingService.process(file, 2048).isEmpty());
+  }
+
+  @Test
+  @DisplayName("process - Should not touch GIFs, they may be animated")
+  void process_SkipsGifs() throws IOException {
+    var file = imageFile("anim.gif", "image/gif", image(3000, 3000, false), "gif");
+
+    assertTrue(imageProcessingService.process(file, 2048).isEmpty());
+  }
+
+  @Test
+  @DisplayName("process - Should upload the original when the file can't be decoded")
+  void process_ReturnsEmptyForInvalidImages() {
+    var file = new MockMultipartFile("file", "broken.png", "image/png", "not an image".getBytes());
+
+    assertTrue(imageProcessingService.process(file, 2048).isEmpty());
+  }
+
+  @Test
+  @DisplayName("process - Should reject images over the pixel limit before decoding them")
+  void process_RejectsTooManyPixels() throws IOException {
+    ReflectionTestUtils.setField(imageProcessingService, "maxPixels", 1_000_000L);
+    var file = imageFile("huge.png", "image/png", image(2000, 1000, false), "png");
+
+    assertThrows(ResponseStatusException.class, () -> imageProcessingService.process(file, 2048));
+  }
+
+  @Test
+  @DisplayName("process - Should do nothing when disabled")
+  void process_DisabledReturnsEmpty() throws IOException {
+    ReflectionTestUtils.setField(imageProcessingService, "enabled", false);
+    var file = imageFile("photo.jpg", "image/jpeg", image(4000, 2000, false), "jpeg");
+
+    assertTrue(imageProcessingService.process(file, 2048).isEmpty());
+  }
+
+  @Test
+  @DisplayName("process - Should apply the EXIF orientation to the pixels of a rotated photo")
+  void process_AppliesExifOrientation() throws IOException {
+    var image = image(4000, 2000, false);
+    var graphics = image.createGraphics();
+    graphics.setColor(Color.RED);
+    graphics.fillRect(0, 0, 400, 2000);
+    graphics.setColor(Color.BLUE);
+    graphics.fillRect(3600, 0, 400, 2000);
+    graphics.dispose();
+    var output = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpeg", output);
+    // Stored in landscape, shown rotated 90 degrees clockwise
+    var file = new MockMultipartFile("file", "photo.jpg", "image/jpeg", withOrientation(output.toByteArray(), 6));
+
+    var processed = imageProcessingService.process(file, 2048).orElseThrow();
+
+    var decoded = ImageIO.read(new ByteArrayInputStream(processed.content()));
+    assertEquals(1024, processed.width());
+    assertEquals(2048, processed.height());
+    assertEquals(1024, decoded.getWidth());
+    assertTrue(new Color(decoded.getRGB(512, 50)).getRed() > 200);
+    assertTrue(new Color(decoded.getRGB(512, 2000)).getBlue() > 200);
+  }
+
+  @Test
+  @DisplayName("readOrientation - Should read the tag in both byte orders and ignore files without it")
+  void readOrientation_ParsesExif() throws IOException {
+    var output = new ByteArrayOutputStream();
+    ImageIO.write(image(10, 10, false), "jpeg", output);
+    var jpeg = output.toByteArray();
+
+    assertEquals(6, ImageProcessingService.readOrientation(withOrientation(jpeg, 6)));
+    var littleEndian = withOrientation(jpeg, 8);
+    // II header, offset 8 and one entry: tag 0x0112, type 3, count 1, value 8
+    byte[] tiff = { 'I', 'I', 0x2A, 0, 8, 0, 0, 0, 1, 0, 0x12, 0x01, 3, 0, 1, 0, 0, 0, 8, 0, 0, 0 };
+    System.arraycopy(tiff, 0, littleEndian, 12, tiff.length);
+    assertEquals(8, ImageProcessingService.readOrientation(littleEndian));
+    assertEquals(1, ImageProcessingService.readOrientation(jpeg));
+    assertEquals(1, ImageProcessingService.readOrientation("not an image".getBytes()));
+    assertEquals(1, ImageProcessingService.readOrientation(Arrays.copyOf(withOrientation(jpeg, 6), 20)));
+  }
+
+  // Adds an APP1 segment with a big endian TIFF directory holding only the orientation
+  private byte[] withOrientation(byte[] jpeg, int orientation) {
+    byte[] app1 = { (byte) 0xFF, (byte) 0xE1, 0, 34, 'E', 'x', 'i', 'f', 0, 0,
+        'M', 'M', 0, 0x2A, 0, 0, 0, 8,
+        0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+        0, 0, 0, 0 };
+    var result = new byte[jpeg.length + app1.length];
+    System.arraycopy(jpeg, 0, result, 0, 2);
+    System.arraycopy(app1, 0, result, 2, app1.length);
+    System.arraycopy(jpeg, 2, result, 2 + app1.length, jpeg.length - 2);
+    return result;
+  }
+
+  private MockMultipartFile imageFile(String name, String contentType, BufferedImage image, String format)
+      throws IOException {
+    var output = new ByteArrayOutputStream();
+    ImageIO.write(image, format, output);
+    return new MockMultipartFile("file", name, contentType, output.toByteArray());
+  }
+
+  // Noisy content so the encoders can't compress the original to almost nothing
+  private BufferedImage image(int width, int height, boolean alpha) {
+    var image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    var random = new Random(42);
+    var graphics = image.createGraphics();
+    for (int i = 0; i < 200; i++) {
+      graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256),
+          alpha ? random.nextInt(256) : 255));
+      graphics.fillOval(random.nextInt(width), random.nextInt(height), width / 5, height / 5);
+    }
+    graphics.dispose();
+    return image;
+  }
+
+  @Test
+  @DisplayName("subsampling - Should decode at or above the target resolution with the largest step")
+  void subsampling_KeepsTargetResolution() {
+    assertEquals(1, imageProcessingService.subsampling(2500, 1500, 2048));
+    assertEquals(2, imageProcessingService.subsampling(6000, 4000, 2048));
+    // 48 MP phone photo: 2667x2000 decoded instead of 8000x6000
+    assertEquals(3, imageProcessingService.subsampling(8000, 6000, 2048));
+    assertEquals(5, imageProcessingService.subsampling(8000, 6000, 1536));
+  }
+
+  @Test
+  @DisplayName("subsampling - Should keep the decoded image under the decoded pixels budget")
+  void subsampling_KeepsDecodedBudget() {
+    int subsampling = imageProcessingService.subsampling(4000, 4000, 2048);
+
+    assertEquals(2, subsampling);
+    assertTrue((4000 / subsampling) * (4000 / subsampling) <= 8_000_000);
+  }
+}
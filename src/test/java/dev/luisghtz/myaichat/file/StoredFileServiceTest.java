@@ -0,0 +1,89 @@
+package dev.luisghtz.myaichat.file;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.luisghtz.myaichat.file.entities.StoredFile;
+import dev.luisghtz.myaichat.file.repositories.StoredFileRepository;
+
+@ExtendWith(MockitoExtension.class)
+class StoredFileServiceTest {
+
+  @Mock
+  private StoredFileRepository storedFileRepository;
+
+  @InjectMocks
+  private StoredFileService storedFileService;
+
+  @Test
+  @DisplayName("acquire - Should increment the references of a stored file")
+  void acquire_IncrementsStoredFile() {
+    when(storedFileRepository.addReferences("myaichat/a.png", 1)).thenReturn(1);
+
+    storedFileService.acquire("myaichat/a.png");
+
+    verify(storedFileRepository, never()).insertFirstReference(any());
+  }
+
+  @Test
+  @DisplayName("acquire - Should insert the first reference of a new file")
+  void acquire_InsertsNewFile() {
+    when(storedFileRepository.addReferences("myaichat/a.png", 1)).thenReturn(0);
+    when(storedFileRepository.insertFirstReference("myaichat/a.png")).thenReturn(1);
+
+    storedFileService.acquire("myaichat/a.png");
+
+    verify(storedFileRepository, times(1)).addReferences("myaichat/a.png", 1);
+  }
+
+  @Test
+  @DisplayName("acquire - Should increment the row a concurrent upload inserted first")
+  void acquire_LosesInsertRace() {
+    when(storedFileRepository.addReferences("myaichat/a.png", 1)).thenReturn(0, 1);
+    when(storedFileRepository.insertFirstReference("myaichat/a.png")).thenReturn(0);
+
+    storedFileService.acquire("myaichat/a.png");
+
+    verify(storedFileRepository, times(2)).addReferences("myaichat/a.png", 1);
+  }
+
+  @Test
+  @DisplayName("release - Should return the files without references and the files without a row")
+  void release_ReturnsUnreferencedFiles() {
+    Map<String, Long> references = new LinkedHashMap<>();
+    references.put("myaichat/shared.png", 2L);
+    references.put("myaichat/last.png", 1L);
+    references.put("myaichat/legacy_photo.png", 1L);
+    when(storedFileRepository.addReferences("myaichat/shared.png", -2)).thenReturn(1);
+    when(storedFileRepository.addReferences("myaichat/last.png", -1)).thenReturn(1);
+    when(storedFileRepository.addReferences("myaichat/legacy_photo.png", -1)).thenReturn(0);
+    var released = List.of(StoredFile.builder().fileKey("myaichat/last.png").refCount(0L).build());
+    when(storedFileRepository.findAllByFileKeyInAndRefCountLessThanEqual(references.keySet(), 0L))
+        .thenReturn(released);
+
+    List<String> unreferenced = storedFileService.release(references);
+
+    assertEquals(Set.of("myaichat/last.png", "myaichat/legacy_photo.png"), Set.copyOf(unreferenced));
+    verify(storedFileRepository).deleteAllInBatch(released);
+  }
+
+  @Test
+  @DisplayName("release - Should do nothing without files")
+  void release_EmptyReferences() {
+    assertTrue(storedFileService.release(Map.of()).isEmpty());
+    verifyNoInteractions(storedFileRepository);
+  }
+}
@@ -1,5 +1,13 @@
 package dev.luisghtz.myaichat.file.providers;
 
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,10 +17,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.util.ReflectionTestUtils;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -20,6 +33,8 @@ class AwsS3ServiceTest {
 
   @Mock
   private S3Client mockS3Client;
+  @Mock
+  private S3AsyncClient mockS3AsyncClient;
   @InjectMocks
   private AwsS3Service awsS3Service;
 
@@ -29,6 +44,7 @@ class AwsS3ServiceTest {
     ReflectionTestUtils.setField(awsS3Service, "secretKey", "test-secret-key");
     ReflectionTestUtils.setField(awsS3Service, "bucketName", "test-bucket");
     ReflectionTestUtils.setField(awsS3Service, "s3Client", mockS3Client);
+    ReflectionTestUtils.setField(awsS3Service, "s3AsyncClient", mockS3AsyncClient);
   }
 
   @Test
@@ -52,6 +68,24 @@ class AwsS3ServiceTest {
 
     S3Client s3Client = (S3Client) ReflectionTestUtils.getField(service, "s3Client");
     assertNotNull(s3Client);
+    assertNotNull(ReflectionTestUtils.getField(service, "s3AsyncClient"));
+    service.close();
+  }
+
+  @Test
+  void testInitUsesEndpointOverride() {
+    AwsS3Service service = new AwsS3Service();
+    ReflectionTestUtils.setField(service, "accessKey", "a");
+    ReflectionTestUtils.setField(service, "secretKey", "b");
+    ReflectionTestUtils.setField(service, "endpoint", "http://localhost:9000");
+    ReflectionTestUtils.setField(service, "asyncMaxConcurrency", 4);
+
+    service.init();
+
+    S3AsyncClient asyncClient = (S3AsyncClient) ReflectionTestUtils.getField(service, "s3AsyncClient");
+    assertEquals(URI.create("http://localhost:9000"),
+        asyncClient.serviceClientConfiguration().endpointOverride().orElseThrow());
+    service.close();
   }
 
   @Test
@@ -59,7 +93,7 @@ class AwsS3ServiceTest {
     String fileName = "test.txt";
     byte[] content = "hello".getBytes();
 
-    awsS3Service.uploadFile(fileName, content);
+    awsS3Service.uploadFile(fileName, () -> new ByteArrayInputStream(content), content.length, "text/plain");
 
     ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
     ArgumentCaptor<RequestBody> bodyCaptor = ArgumentCaptor.forClass(RequestBody.class);
@@ -67,6 +101,8 @@ class AwsS3ServiceTest {
     verify(mockS3Client).putObject(requestCaptor.capture(), bodyCaptor.capture());
     assertEquals("test-bucket", requestCaptor.getValue().bucket());
     assertEquals(fileName, requestCaptor.getValue().key());
+    assertEquals(Optional.of((long) content.length), bodyCaptor.getValue().optionalContentLength());
+    assertEquals("text/plain", bodyCaptor.getValue().contentType());
   }
 
   @Test
@@ -79,4 +115,46 @@ class AwsS3ServiceTest {
         .build();
     verify(mockS3Client).deleteObject(delObjectRequest);
   }
+
+  @Test
+  void testDeleteFilesSendsOneRequestPerThousandKeys() {
+    List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "file-" + i).toList();
+    when(mockS3AsyncClient.deleteObjects(any(DeleteObjectsRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(DeleteObjectsResponse.builder().build()));
+
+    List<String> failed = awsS3Service.deleteFiles(keys).join();
+
+    ArgumentCaptor<DeleteObjectsRequest> requestCaptor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+    verify(mockS3AsyncClient, times(3)).deleteObjects(requestCaptor.capture());
+    assertEquals(List.of(1000, 1000, 500), requestCaptor.getAllValues().stream()
+        .map(request -> request.delete().objects().size()).toList());
+    assertEquals("test-bucket", requestCaptor.getValue().bucket());
+    assertTrue(failed.isEmpty());
+  }
+
+  @Test
+  void testDeleteFilesReturnsTheKeysS3CouldNotDelete() {
+    when(mockS3AsyncClient.deleteObjects(any(DeleteObjectsRequest.class)))
+        .thenReturn(CompletableFuture.completedFuture(DeleteObjectsResponse.builder()
+            .errors(S3Error.builder().key("b.png").code("AccessDenied").message("Access Denied").build())
+            .build()));
+
+    List<String> failed = awsS3Service.deleteFiles(List.of("a.png", "b.png")).join();
+
+    assertEquals(List.of("b.png"), failed);
+  }
+
+  @Test
+  void testDeleteFilesSkipsEmptyInput() {
+    assertTrue(awsS3Service.deleteFiles(List.of()).join().isEmpty());
+    verifyNoInteractions(mockS3AsyncClient);
+  }
+
+  @Test
+  void testDeleteFilesFailsWhenTheRequestFails() {
+    when(mockS3AsyncClient.deleteObjects(any(DeleteObjectsRequest.class)))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("S3 unavailable")));
+
+    assertThrows(CompletionException.class, () -> awsS3Service.deleteFiles(List.of("a.png")).join());
+  }
 }
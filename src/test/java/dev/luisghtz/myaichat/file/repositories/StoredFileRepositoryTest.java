@@ -0,0 +1,59 @@
+package dev.luisghtz.myaichat.file.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.vertexai.gemini.VertexAiGeminiChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import dev.luisghtz.myaichat.file.StoredFileService;
+import dev.luisghtz.myaichat.file.entities.StoredFile;
+
+// The native insert runs against H2 in PostgreSQL mode, the plain embedded database doesn't know ON CONFLICT
+@DataJpaTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:storedfiles;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=" })
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class StoredFileRepositoryTest {
+
+  // Required by the ChatClient beans declared in the application class
+  @MockitoBean
+  private OpenAiChatModel openAiChatModel;
+  @MockitoBean
+  private VertexAiGeminiChatModel vertexAiGeminiChatModel;
+
+  @Autowired
+  private TestEntityManager entityManager;
+  @Autowired
+  private StoredFileRepository storedFileRepository;
+
+  @Test
+  @DisplayName("acquire - Should insert the first reference and increment it after")
+  void acquire_InsertsThenIncrements() {
+    var storedFileService = new StoredFileService(storedFileRepository);
+
+    storedFileService.acquire("myaichat/a.png");
+    storedFileService.acquire("myaichat/a.png");
+    entityManager.clear();
+
+    assertThat(entityManager.find(StoredFile.class, "myaichat/a.png").getRefCount()).isEqualTo(2L);
+  }
+
+  @Test
+  @DisplayName("insertFirstReference - Should insert nothing when the file is already stored")
+  void insertFirstReference_IgnoresExistingFile() {
+    assertThat(storedFileRepository.insertFirstReference("myaichat/b.png")).isEqualTo(1);
+    assertThat(storedFileRepository.insertFirstReference("myaichat/b.png")).isZero();
+    entityManager.clear();
+
+    assertThat(entityManager.find(StoredFile.class, "myaichat/b.png").getRefCount()).isEqualTo(1L);
+  }
+}
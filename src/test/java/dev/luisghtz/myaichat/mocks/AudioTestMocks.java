@@ -4,6 +4,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.mock.web.MockMultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Mock utilities for audio-related testing
@@ -39,7 +40,7 @@ public class AudioTestMocks {
     }
 
     /**
-     * Creates a mock MultipartFile that throws IOException when accessing bytes
+     * Creates a mock MultipartFile that throws IOException when accessing its content
      */
     public static MultipartFile createFaultyMockAudioFile() {
         return new MockMultipartFile("audio", "faulty.wav", "audio/wav", "content".getBytes()) {
@@ -47,6 +48,11 @@ public class AudioTestMocks {
             public byte[] getBytes() throws IOException {
                 throw new IOException("Mock IO Exception");
             }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("Mock IO Exception");
+            }
         };
     }
 }